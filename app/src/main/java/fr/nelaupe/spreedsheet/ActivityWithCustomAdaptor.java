@@ -27,29 +27,36 @@ public class ActivityWithCustomAdaptor extends MainActivity {
             cellAdaptor.add(generateDummyData(i));
         }
         spreadSheetView.setAdaptor(cellAdaptor);
+        spreadSheetView.warmUp(30);
     }
 
-    private View inflateTextView(String text) {
-        LayoutInflater inflater = (LayoutInflater) getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        View view = inflater.inflate(R.layout.cell_textview, null, false);
+    // Static, the adaptor is retained across rotations and must not keep the activity
+    private static class CustomCellAdaptor extends SimpleTextAdaptor {
 
-        TextView textView = (TextView) view.findViewById(R.id.text);
-        textView.setText(text);
+        private static final int TYPE_TEXT = 0;
+        private static final int TYPE_CHECKBOX = 1;
 
-        return view;
-    }
+        public CustomCellAdaptor(Context context) {
+            super(context);
+        }
 
-    private View inflateCheckbox(Boolean bool) {
-        CheckBox checkBox = new CheckBox(ActivityWithCustomAdaptor.this);
-        checkBox.setChecked(bool);
-        checkBox.setEnabled(false);
-        return checkBox;
-    }
+        @Override
+        public int getCellViewType(CellInformation cell, Object object) {
+            return object instanceof Boolean ? TYPE_CHECKBOX : TYPE_TEXT;
+        }
+
+        @Override
+        public boolean bindCellView(View view, CellInformation cell, Object object) {
+            if (view instanceof CheckBox && object instanceof Boolean) {
+                ((CheckBox) view).setChecked((Boolean) object);
+                return true;
+            }
 
-    private class CustomCellAdaptor extends SimpleTextAdaptor {
+            TextView textView = (TextView) view.findViewById(R.id.text);
+            if (textView == null || object instanceof Boolean) return false;
 
-        public CustomCellAdaptor(Context context) {
-            super(context);
+            textView.setText(object == null ? "" : object.toString());
+            return true;
         }
 
         @Override
@@ -60,6 +67,23 @@ public class ActivityWithCustomAdaptor extends MainActivity {
                 return inflateTextView(object.toString());
             }
         }
+
+        private View inflateTextView(String text) {
+            LayoutInflater inflater = (LayoutInflater) getContext().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+            View view = inflater.inflate(R.layout.cell_textview, null, false);
+
+            TextView textView = (TextView) view.findViewById(R.id.text);
+            textView.setText(text);
+
+            return view;
+        }
+
+        private View inflateCheckbox(Boolean bool) {
+            CheckBox checkBox = new CheckBox(getContext());
+            checkBox.setChecked(bool);
+            checkBox.setEnabled(false);
+            return checkBox;
+        }
     }
 
 }
@@ -23,6 +23,16 @@ public class CustomCompany implements Comparable<CustomCompany> {
         return mData.compareTo(another.mData);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CustomCompany && mData.equals(((CustomCompany) o).mData);
+    }
+
+    @Override
+    public int hashCode() {
+        return mData.hashCode();
+    }
+
     @Override
     public String toString() {
         return mData;
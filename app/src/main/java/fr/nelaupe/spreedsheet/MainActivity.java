@@ -5,11 +5,13 @@ import android.os.Bundle;
 
 import org.fluttercode.datafactory.impl.DataFactory;
 
+import fr.nelaupe.spreadsheetlib.SheetState;
 import fr.nelaupe.spreadsheetlib.SpreadSheetView;
 
 public class MainActivity extends Activity {
 
     private long start;
+    private SpreadSheetView mSpreadSheetView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -18,9 +20,22 @@ public class MainActivity extends Activity {
 
         setContentView(R.layout.activity_main);
 
-        SpreadSheetView spreadSheetView = (SpreadSheetView) findViewById(R.id.spread_sheet);
-        initSpreadSheet(spreadSheetView);
-        spreadSheetView.invalidate();
+        mSpreadSheetView = (SpreadSheetView) findViewById(R.id.spread_sheet);
+
+        // Rotated: the rows are kept as they were, sorted and selected
+        SheetState state = (SheetState) getLastNonConfigurationInstance();
+        if (state != null) {
+            mSpreadSheetView.restoreState(state);
+            return;
+        }
+
+        initSpreadSheet(mSpreadSheetView);
+        mSpreadSheetView.notifyDataSetChanged();
+    }
+
+    @Override
+    public Object onRetainNonConfigurationInstance() {
+        return mSpreadSheetView.retainState();
     }
 
     protected void initSpreadSheet(SpreadSheetView spreadSheetView) {
@@ -27,10 +27,10 @@ public class Person extends SpreadSheetData {
     @SpreadSheetCell(name = "Last Name", size = 300, position = 3)
     private String lastName;
 
-    @SpreadSheetCell(name = "city", size = 300, position = 4)
+    @SpreadSheetCell(name = "city", size = 300, position = 4, dictionary = true, indexed = true)
     private String city;
 
-    @SpreadSheetCell(name = "Company", size = 300, position = 5)
+    @SpreadSheetCell(name = "Company", size = 300, position = 5, dictionary = true)
     private CustomCompany company;
 
     @SpreadSheetCell(name = "Birth date", size = 300, position = 6)
@@ -0,0 +1,343 @@
+/**
+ * Copyright
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Created with IntelliJ
+ * Created by lucas
+ * Date 26/03/15
+ */
+public class AnnotationFields {
+
+    /**
+     * How the sheet reads a value of the column to bind it without boxing.
+     */
+    public enum BindType {
+        INT, LONG, FLOAT, DOUBLE, BOOLEAN, TEXT, OBJECT
+    }
+
+    private Field mField;
+    private Method mMethod;
+    private CellInformation mAnnotation;
+
+    private String[] mDependsOn;
+    private List<AnnotationFields> mDependents;
+    private Object[] mValues;
+    private BitSet mComputed;
+    // Bumped by every invalidation, a value computed meanwhile is not stored
+    private int[] mStamps;
+    private int mEpoch;
+    private DictionaryColumn mDictionary;
+    private CollationKeyColumn mCollationKeys;
+    private BitmapIndex mBitmapIndex;
+    private ColumnVector mColumnVector;
+    private ColumnStatistics mStatistics;
+    private BindType mBindType;
+
+    public AnnotationFields(Field mField, CellInformation mAnnotation) {
+        this.mField = mField;
+        this.mAnnotation = mAnnotation;
+        this.mDependents = new ArrayList<>();
+        if (mAnnotation.isDictionaryEncoded()) {
+            this.mDictionary = new DictionaryColumn(this);
+        } else if (mField.getType() == String.class) {
+            this.mCollationKeys = new CollationKeyColumn(this);
+        }
+        if (mAnnotation.isIndexed()) {
+            this.mBitmapIndex = new BitmapIndex(this);
+        }
+        this.mBindType = bindTypeOf(mField.getType());
+    }
+
+    /**
+     * Computed column, the method is evaluated lazily and cached per row.
+     */
+    public AnnotationFields(Method mMethod, CellInformation mAnnotation, String[] dependsOn) {
+        this.mMethod = mMethod;
+        this.mAnnotation = mAnnotation;
+        this.mDependsOn = dependsOn;
+        this.mDependents = new ArrayList<>();
+        this.mValues = new Object[16];
+        this.mComputed = new BitSet();
+        this.mStamps = new int[16];
+        if (mAnnotation.isDictionaryEncoded()) {
+            this.mDictionary = new DictionaryColumn(this);
+        } else if (mMethod.getReturnType() == String.class) {
+            this.mCollationKeys = new CollationKeyColumn(this);
+        }
+        if (mAnnotation.isIndexed()) {
+            this.mBitmapIndex = new BitmapIndex(this);
+        }
+        // Computed values are cached boxed
+        this.mBindType = mMethod.getReturnType() == String.class ? BindType.TEXT : BindType.OBJECT;
+    }
+
+    private static BindType bindTypeOf(Class<?> type) {
+        if (type == int.class || type == short.class || type == byte.class) {
+            return BindType.INT;
+        } else if (type == long.class) {
+            return BindType.LONG;
+        } else if (type == float.class) {
+            return BindType.FLOAT;
+        } else if (type == double.class) {
+            return BindType.DOUBLE;
+        } else if (type == boolean.class) {
+            return BindType.BOOLEAN;
+        } else if (type == String.class) {
+            return BindType.TEXT;
+        }
+        return BindType.OBJECT;
+    }
+
+    public BindType getBindType() {
+        return mBindType;
+    }
+
+//    public String getAnnotationName() {
+//        return mAnnotation.get();
+//    }
+
+    /**
+     * @return the backing field, null for a computed column
+     */
+    public Field getField() {
+        return mField;
+    }
+
+    /**
+     * @return the method of a computed column, null for a field
+     */
+    public Method getMethod() {
+        return mMethod;
+    }
+
+    public String getFieldName() {
+        return mField != null ? mField.getName() : mMethod.getName();
+    }
+
+    public CellInformation getAnnotation() {
+        return mAnnotation;
+    }
+
+    public boolean isComputed() {
+        return mMethod != null;
+    }
+
+    /**
+     * @return the dictionary of the column, null if it is not dictionary encoded
+     */
+    public DictionaryColumn getDictionary() {
+        return mDictionary;
+    }
+
+    /**
+     * @return the collation keys of a {@link String} column, null for other columns
+     */
+    public CollationKeyColumn getCollationKeys() {
+        return mCollationKeys;
+    }
+
+    /**
+     * @return the bitmap index of the column, null if it is not indexed
+     */
+    public BitmapIndex getBitmapIndex() {
+        return mBitmapIndex;
+    }
+
+    /**
+     * @return the typed copy of the column values, created on first use
+     */
+    public synchronized ColumnVector getColumnVector() {
+        if (mColumnVector == null) {
+            mColumnVector = new ColumnVector(this);
+        }
+        return mColumnVector;
+    }
+
+    /**
+     * @return the statistics of the column, created on first use
+     */
+    public synchronized ColumnStatistics getStatistics() {
+        if (mStatistics == null) {
+            mStatistics = new ColumnStatistics(this);
+        }
+        return mStatistics;
+    }
+
+    public Object get(Object target) throws IllegalAccessException {
+        if (mField != null) {
+            return mField.get(target);
+        }
+
+        int rowId = (target instanceof SpreadSheetData) ? ((SpreadSheetData) target).mRowId : SpreadSheetData.NO_ROW_ID;
+        if (rowId == SpreadSheetData.NO_ROW_ID) {
+            return compute(target);
+        }
+
+        SpreadSheetData row = (SpreadSheetData) target;
+        int stamp;
+        int epoch;
+        synchronized (this) {
+            if (!row.mEvicted && mComputed.get(rowId)) {
+                return mValues[rowId];
+            }
+            stamp = rowId < mStamps.length ? mStamps[rowId] : 0;
+            epoch = mEpoch;
+        }
+
+        Object value = compute(target);
+        if (mDictionary != null) {
+            // Cached once per distinct value instead of once per row
+            value = mDictionary.intern(value);
+        }
+
+        synchronized (this) {
+            // Invalidated or evicted meanwhile, the value may be stale
+            if (row.mEvicted || epoch != mEpoch || stamp != (rowId < mStamps.length ? mStamps[rowId] : 0)) {
+                return value;
+            }
+            ensureCapacity(rowId);
+            mValues[rowId] = value;
+            mComputed.set(rowId);
+        }
+        return value;
+    }
+
+    private void ensureCapacity(int rowId) {
+        if (rowId >= mValues.length) {
+            int length = Math.max(rowId + 1, mValues.length * 2);
+            Object[] values = new Object[length];
+            System.arraycopy(mValues, 0, values, 0, mValues.length);
+            mValues = values;
+            int[] stamps = new int[length];
+            System.arraycopy(mStamps, 0, stamps, 0, mStamps.length);
+            mStamps = stamps;
+        }
+    }
+
+    private Object compute(Object target) throws IllegalAccessException {
+        try {
+            return mMethod.invoke(target);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    String[] getDependsOn() {
+        return mDependsOn;
+    }
+
+    /**
+     * @return the computed columns that read this column directly
+     */
+    List<AnnotationFields> getDependents() {
+        return mDependents;
+    }
+
+    /**
+     * @return the approximate memory held by the caches derived from the values of the column
+     */
+    public synchronized long getCacheMemoryUsage() {
+        long bytes = mValues != null ? mValues.length * 8L : 0;
+        if (mCollationKeys != null) {
+            bytes += mCollationKeys.getMemoryUsage();
+        }
+        if (mColumnVector != null) {
+            bytes += mColumnVector.getMemoryUsage();
+        }
+        if (mStatistics != null) {
+            bytes += mStatistics.getMemoryUsage();
+        }
+        if (mDictionary != null) {
+            bytes += mDictionary.getMemoryUsage();
+        }
+        return bytes;
+    }
+
+    public synchronized long getIndexMemoryUsage() {
+        return mBitmapIndex != null ? mBitmapIndex.getMemoryUsage() : 0;
+    }
+
+    /**
+     * Drops the computed values, dictionary, collation keys, column vector and statistics.
+     * They are rebuilt on demand, users of the dropped vector keep theirs.
+     */
+    synchronized void trimCaches() {
+        if (mComputed != null) {
+            mComputed.clear();
+            mValues = new Object[16];
+            mStamps = new int[16];
+            mEpoch++;
+        }
+        if (mDictionary != null) {
+            mDictionary.invalidateAll();
+        }
+        if (mCollationKeys != null) {
+            mCollationKeys.invalidateAll();
+        }
+        mColumnVector = null;
+        mStatistics = null;
+    }
+
+    synchronized void trimIndex() {
+        if (mBitmapIndex != null) {
+            mBitmapIndex.invalidateAll();
+        }
+    }
+
+    synchronized void invalidate(int rowId) {
+        if (mComputed != null && rowId >= 0) {
+            mComputed.clear(rowId);
+            ensureCapacity(rowId);
+            mValues[rowId] = null;
+            mStamps[rowId]++;
+        }
+        if (mDictionary != null) {
+            mDictionary.invalidate(rowId);
+        }
+        if (mCollationKeys != null) {
+            mCollationKeys.invalidate(rowId);
+        }
+        if (mBitmapIndex != null) {
+            mBitmapIndex.invalidate(rowId);
+        }
+        if (mColumnVector != null) {
+            mColumnVector.invalidate(rowId);
+        }
+        if (mStatistics != null) {
+            mStatistics.invalidate(rowId);
+        }
+    }
+
+    synchronized void invalidateAll() {
+        if (mComputed != null) {
+            mComputed.clear();
+            mValues = new Object[16];
+            mStamps = new int[16];
+            mEpoch++;
+        }
+        if (mDictionary != null) {
+            mDictionary.invalidateAll();
+        }
+        if (mCollationKeys != null) {
+            mCollationKeys.invalidateAll();
+        }
+        if (mBitmapIndex != null) {
+            mBitmapIndex.invalidateAll();
+        }
+        if (mColumnVector != null) {
+            mColumnVector.invalidateAll();
+        }
+        if (mStatistics != null) {
+            mStatistics.invalidateAll();
+        }
+    }
+}
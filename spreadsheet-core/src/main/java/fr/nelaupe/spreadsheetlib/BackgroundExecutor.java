@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared low priority worker used for the work the sheet moves off the UI thread.
+ */
+final class BackgroundExecutor {
+
+    private static ExecutorService sExecutor;
+    private static ExecutorService sParallel;
+
+    private BackgroundExecutor() {
+    }
+
+    static synchronized ExecutorService get() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SpreadSheet-Background");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    static void execute(Runnable runnable) {
+        get().execute(runnable);
+    }
+
+    /**
+     * Pool with one thread per core, for work split in independent chunks.
+     * Tasks running there must not wait on each other.
+     */
+    static synchronized ExecutorService parallel() {
+        if (sParallel == null) {
+            sParallel = Executors.newFixedThreadPool(parallelism(), new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SpreadSheet-Parallel-" + mCount++);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sParallel;
+    }
+
+    static int parallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+}
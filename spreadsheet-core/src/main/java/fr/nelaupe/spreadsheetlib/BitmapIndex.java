@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bitmap index of a categorical column, enabled with {@link SpreadSheetCell#indexed()}.
+ * Keeps the {@link RoaringBitmap} of the row ids holding each distinct value, so
+ * equality and range filters resolve to bitmap operations. Rows published since
+ * the last {@link #update(DataSnapshot)} and rows whose value changed are indexed
+ * by the next update, the others are not read again. Numbers are indexed and
+ * looked up as the {@link ColumnVector} of the column holds them, so both
+ * answer a filter the same way.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class BitmapIndex {
+
+    // Key of the values no row of the column can hold
+    private static final Object NO_KEY = new Object();
+
+    private final AnnotationFields mField;
+    private final ColumnVector.Kind mKind;
+    private final Map<Object, RoaringBitmap> mBitmaps;
+    private int mIndexedCount;
+    private RoaringBitmap mStale;
+    private int mEpoch;
+
+    BitmapIndex(AnnotationFields field) {
+        mField = field;
+        mKind = ColumnVector.kindOf(field.getField() != null ? field.getField().getType() : field.getMethod().getReturnType());
+        mBitmaps = new HashMap<>();
+        mStale = new RoaringBitmap();
+    }
+
+    /**
+     * Indexes the rows of the data not indexed yet. Safe to call from any thread.
+     */
+    public void update(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+        int[] stale;
+        int from;
+        int epoch;
+        synchronized (this) {
+            stale = mStale.toArray();
+            mStale = new RoaringBitmap();
+            from = mIndexedCount;
+            epoch = mEpoch;
+        }
+        int to = data.getRowIdCount();
+        if (stale.length == 0 && from >= to) return;
+
+        // Values are read without holding the lock, computed columns take their own
+        int count = stale.length + Math.max(0, to - from);
+        int[] rowIds = new int[count];
+        SpreadSheetData[] rows = new SpreadSheetData[count];
+        Object[] values = new Object[count];
+        int size = 0;
+        for (int rowId : stale) {
+            size = read(data, rowId, rowIds, rows, values, size);
+        }
+        for (int rowId = from; rowId < to; rowId++) {
+            size = read(data, rowId, rowIds, rows, values, size);
+        }
+
+        synchronized (this) {
+            // Cleared meanwhile, the row ids are not the same rows anymore
+            if (epoch != mEpoch) return;
+
+            for (int i = 0; i < size; i++) {
+                // Changed again meanwhile, indexed by the next update
+                if (mStale.contains(rowIds[i])) continue;
+
+                // Read from an older snapshot, the id belongs to the row that replaced it
+                if (rows[i].mEvicted) {
+                    mStale.add(rowIds[i]);
+                    continue;
+                }
+
+                RoaringBitmap bitmap = mBitmaps.get(values[i]);
+                if (bitmap == null) {
+                    bitmap = new RoaringBitmap();
+                    mBitmaps.put(values[i], bitmap);
+                }
+                bitmap.add(rowIds[i]);
+            }
+            mIndexedCount = Math.max(mIndexedCount, to);
+        }
+    }
+
+    private int read(DataSnapshot<? extends SpreadSheetData> data, int rowId, int[] rowIds, SpreadSheetData[] rows, Object[] values, int size) throws IllegalAccessException {
+        int position = data.getPosition(rowId);
+        if (position < 0) {
+            return size;
+        }
+        rowIds[size] = rowId;
+        rows[size] = data.get(position);
+        values[size] = key(mField.get(rows[size]));
+        return size + 1;
+    }
+
+    /**
+     * @return the row ids holding the value
+     */
+    public synchronized RoaringBitmap equalTo(Object value) {
+        RoaringBitmap bitmap = lookup(value);
+        return bitmap == null ? new RoaringBitmap() : RoaringBitmap.or(bitmap, new RoaringBitmap());
+    }
+
+    /**
+     * @return the row ids holding one of the values
+     */
+    public synchronized RoaringBitmap in(Collection<?> values) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Object value : values) {
+            RoaringBitmap bitmap = lookup(value);
+            if (bitmap != null) {
+                result = RoaringBitmap.or(result, bitmap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the row ids holding a value between the bounds included, a null bound is open
+     */
+    public synchronized RoaringBitmap between(Comparable from, Comparable to) {
+        if (mKind != ColumnVector.Kind.OBJECT) {
+            // Like the vector, a numeric column never matches a bound that is not a number
+            if ((from != null && !isNumber(from)) || (to != null && !isNumber(to))) {
+                return new RoaringBitmap();
+            }
+        }
+
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Object, RoaringBitmap> entry : mBitmaps.entrySet()) {
+            Object value = entry.getKey();
+            if (value == null) continue;
+            // NaN is outside of every range, as for the vector
+            if ((from != null || to != null) && value instanceof Double && ((Double) value).isNaN()) continue;
+            if (from != null && compare(from, value) > 0) continue;
+            if (to != null && compare(to, value) < 0) continue;
+            result = RoaringBitmap.or(result, entry.getValue());
+        }
+        return result;
+    }
+
+    private RoaringBitmap lookup(Object value) {
+        Object key = key(value);
+        // NaN is equal to no value, as for the vector
+        if (key instanceof Double && ((Double) key).isNaN()) {
+            return null;
+        }
+        return mBitmaps.get(key);
+    }
+
+    private int compare(Comparable bound, Object value) {
+        if (mKind == ColumnVector.Kind.OBJECT) {
+            return bound.compareTo(value);
+        }
+
+        Number number = number(bound);
+        if (number instanceof Long && value instanceof Long) {
+            long l = number.longValue();
+            long r = (Long) value;
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+        double l = number.doubleValue();
+        double r = ((Number) value).doubleValue();
+        return l < r ? -1 : (l == r ? 0 : 1);
+    }
+
+    private static boolean isNumber(Object bound) {
+        Number number = number(bound);
+        return number != null && !Double.isNaN(number.doubleValue());
+    }
+
+    /**
+     * @return the value as the column vector holds it, {@link #NO_KEY} if no row can hold it
+     */
+    private Object key(Object value) {
+        if (value == null || mKind == ColumnVector.Kind.OBJECT) {
+            return value;
+        }
+
+        Number number = number(value);
+        if (number == null) {
+            return NO_KEY;
+        }
+        if (mKind == ColumnVector.Kind.DOUBLE) {
+            // Adding 0 turns -0.0 into 0.0, which the vector finds equal
+            return number.doubleValue() + 0.0;
+        }
+        if (number instanceof Long) {
+            return number;
+        }
+        double decimal = number.doubleValue();
+        return decimal == Math.rint(decimal) && !Double.isInfinite(decimal) ? (Object) (long) decimal : NO_KEY;
+    }
+
+    /**
+     * @return integral and boolean values as a {@link Long}, other numbers as they are, null for anything else
+     */
+    private static Number number(Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1L : 0L;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value instanceof Number ? (Number) value : null;
+    }
+
+    /**
+     * @return the distinct values of the indexed rows
+     */
+    public synchronized Set<Object> getValues() {
+        return new HashSet<>(mBitmaps.keySet());
+    }
+
+    /**
+     * @return the approximate memory held by the index
+     */
+    public synchronized long getMemoryUsage() {
+        long bytes = 0;
+        for (RoaringBitmap bitmap : mBitmaps.values()) {
+            bytes += bitmap.getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    synchronized void invalidate(int rowId) {
+        if (rowId < 0) return;
+
+        Iterator<RoaringBitmap> iterator = mBitmaps.values().iterator();
+        while (iterator.hasNext()) {
+            RoaringBitmap bitmap = iterator.next();
+            bitmap.remove(rowId);
+            if (bitmap.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        mStale.add(rowId);
+    }
+
+    synchronized void invalidateAll() {
+        mBitmaps.clear();
+        mStale = new RoaringBitmap();
+        mIndexedCount = 0;
+        mEpoch++;
+    }
+
+}
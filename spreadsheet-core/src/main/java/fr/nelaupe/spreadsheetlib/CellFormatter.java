@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Turns the value of a cell into its displayed text. Formatters are not
+ * thread-safe: the {@link FormatterRegistry} creates one per thread from
+ * the {@link Factory} of the column.
+ */
+@SuppressWarnings("unused")
+public abstract class CellFormatter {
+
+    public interface Factory {
+        CellFormatter create();
+    }
+
+    /**
+     * @param value value of the cell, never null
+     */
+    public abstract String format(Object value);
+
+    /**
+     * Numbers with a {@link DecimalFormat} pattern, e.g. "#,##0.00".
+     */
+    public static Factory decimal(final String pattern, final Locale locale) {
+        return new Factory() {
+            @Override
+            public CellFormatter create() {
+                return new NumberFormatter(new DecimalFormat(pattern, new DecimalFormatSymbols(locale)));
+            }
+        };
+    }
+
+    public static Factory currency(final Locale locale) {
+        return new Factory() {
+            @Override
+            public CellFormatter create() {
+                return new NumberFormatter(NumberFormat.getCurrencyInstance(locale));
+            }
+        };
+    }
+
+    public static Factory percent(final Locale locale) {
+        return new Factory() {
+            @Override
+            public CellFormatter create() {
+                return new NumberFormatter(NumberFormat.getPercentInstance(locale));
+            }
+        };
+    }
+
+    /**
+     * Dates, or longs holding milliseconds since the epoch, with a {@link SimpleDateFormat} pattern.
+     */
+    public static Factory date(final String pattern, final Locale locale) {
+        return new Factory() {
+            @Override
+            public CellFormatter create() {
+                return new DateFormatter(new SimpleDateFormat(pattern, locale));
+            }
+        };
+    }
+
+    private static class NumberFormatter extends CellFormatter {
+
+        private final NumberFormat mFormat;
+
+        NumberFormatter(NumberFormat format) {
+            mFormat = format;
+        }
+
+        @Override
+        public String format(Object value) {
+            return value instanceof Number ? mFormat.format(value) : value.toString();
+        }
+    }
+
+    private static class DateFormatter extends CellFormatter {
+
+        private final DateFormat mFormat;
+        private final Date mDate = new Date();
+
+        DateFormatter(DateFormat format) {
+            mFormat = format;
+        }
+
+        @Override
+        public String format(Object value) {
+            if (value instanceof Date) {
+                return mFormat.format((Date) value);
+            } else if (value instanceof Long) {
+                // The formatter is confined to its thread, so is the date
+                mDate.setTime((Long) value);
+                return mFormat.format(mDate);
+            }
+            return value.toString();
+        }
+    }
+
+}
@@ -16,16 +16,32 @@ public class CellInformation {
 
     private final int mPosition;
 
+    private final boolean mDictionary;
+
+    private final boolean mIndexed;
+
     public CellInformation(String name, int columnSize, int position) {
+        this(name, columnSize, position, false);
+    }
+
+    public CellInformation(String name, int columnSize, int position, boolean dictionary) {
+        this(name, columnSize, position, dictionary, false);
+    }
+
+    public CellInformation(String name, int columnSize, int position, boolean dictionary, boolean indexed) {
         this.mName = name;
         this.mColumnSize = columnSize;
         this.mPosition = position;
+        this.mDictionary = dictionary;
+        this.mIndexed = indexed;
     }
 
     public CellInformation(SpreadSheetCell annotation) {
         this.mName = annotation.name();
         this.mColumnSize = annotation.size();
         this.mPosition = annotation.position();
+        this.mDictionary = annotation.dictionary();
+        this.mIndexed = annotation.indexed();
     }
 
 
@@ -40,4 +56,12 @@ public class CellInformation {
     public int getPosition() {
         return mPosition;
     }
+
+    public boolean isDictionaryEncoded() {
+        return mDictionary;
+    }
+
+    public boolean isIndexed() {
+        return mIndexed;
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Writes numbers into a caller owned {@code char[]}, so binding a cell does
+ * not allocate a String. The text is the one of {@link Double#toString(double)}
+ * rounded to the significant digits, numbers below 10^-3 or from 10^7 fall
+ * back to {@link Double#toString(double)}. Meant for display: the rounding
+ * may drop the last digits of a value.
+ */
+@SuppressWarnings("unused")
+public final class CharFormatter {
+
+    /**
+     * Length of a buffer large enough for any value.
+     */
+    public static final int BUFFER_SIZE = 40;
+
+    public static final int DOUBLE_DIGITS = 15;
+    public static final int FLOAT_DIGITS = 7;
+
+    static final char[] TRUE = "true".toCharArray();
+    static final char[] FALSE = "false".toCharArray();
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private CharFormatter() {
+    }
+
+    /**
+     * @return the length of the text written at the start of the buffer
+     */
+    public static int formatLong(long value, char[] buffer) {
+        if (value < 0) {
+            buffer[0] = '-';
+            return 1 + writeDigits(value, buffer, 1);
+        }
+        return writeDigits(-value, buffer, 0);
+    }
+
+    /**
+     * @param significantDigits {@link #DOUBLE_DIGITS}, or {@link #FLOAT_DIGITS} for a float value
+     * @return the length of the text written at the start of the buffer
+     */
+    public static int formatDouble(double value, int significantDigits, char[] buffer) {
+        double abs = Math.abs(value);
+        if (Double.isNaN(value) || Double.isInfinite(value) || abs >= 1e7 || (abs < 1e-3 && abs != 0)) {
+            String text = significantDigits <= FLOAT_DIGITS ? Float.toString((float) value) : Double.toString(value);
+            text.getChars(0, text.length(), buffer, 0);
+            return text.length();
+        }
+
+        int length = 0;
+        if (value < 0 || 1 / value < 0) {
+            buffer[length++] = '-';
+        }
+
+        int integerDigits = abs < 1 ? (int) Math.floor(Math.log10(Math.max(abs, 1e-3))) + 1 : (int) Math.floor(Math.log10(abs)) + 1;
+        int decimals = Math.min(POWERS_OF_TEN.length - 1, Math.max(1, significantDigits - integerDigits));
+        long scaled = Math.round(abs * POWERS_OF_TEN[decimals]);
+        long integer = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+
+        length += writeDigits(-integer, buffer, length);
+        buffer[length++] = '.';
+        for (int i = decimals - 1; i >= 0; i--) {
+            buffer[length + i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        length += decimals;
+
+        // Trailing zeros go, one decimal stays
+        while (buffer[length - 1] == '0' && buffer[length - 2] != '.') {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the digits of a negative or zero value, negative so Long.MIN_VALUE fits.
+     */
+    private static int writeDigits(long negative, char[] buffer, int offset) {
+        int digits = 1;
+        for (long rest = negative / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' - negative % 10);
+            negative /= 10;
+        }
+        return digits;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.List;
+
+/**
+ * Locale-aware sort keys of a {@link String} column. The {@link CollationKey}
+ * of a row is computed once and kept until its value changes, so sorting
+ * compares precomputed keys instead of calling {@link Collator#compare} for
+ * every comparison.
+ */
+@SuppressWarnings("unused")
+public class CollationKeyColumn {
+
+    // Average size of a key with its byte array, for short texts
+    private static final int KEY_BYTES = 64;
+
+    private final AnnotationFields mField;
+    private Collator mCollator;
+
+    private CollationKey[] mKeys;
+    private boolean[] mComputed;
+    private int mKeyCount;
+
+    CollationKeyColumn(AnnotationFields field) {
+        mField = field;
+        mCollator = Collator.getInstance();
+        mKeys = new CollationKey[16];
+        mComputed = new boolean[16];
+    }
+
+    public synchronized Collator getCollator() {
+        return mCollator;
+    }
+
+    /**
+     * Changes the collator, the keys are computed again on the next sort.
+     */
+    public synchronized void setCollator(Collator collator) {
+        mCollator = collator;
+        invalidateAll();
+    }
+
+    /**
+     * @return the sort key of the row's value, null for a null value
+     */
+    public CollationKey getKey(SpreadSheetData row) throws IllegalAccessException {
+        int rowId = row.mRowId;
+        synchronized (this) {
+            if (rowId >= 0 && !row.mEvicted && rowId < mComputed.length && mComputed[rowId]) {
+                return mKeys[rowId];
+            }
+        }
+
+        Object value = mField.get(row);
+
+        synchronized (this) {
+            // Collators are not thread safe
+            CollationKey key = value == null ? null : mCollator.getCollationKey(value.toString());
+            // An evicted row's id belongs to another row
+            if (rowId >= 0 && !row.mEvicted) {
+                if (rowId >= mKeys.length) {
+                    int length = Math.max(rowId + 1, mKeys.length * 2);
+                    CollationKey[] keys = new CollationKey[length];
+                    System.arraycopy(mKeys, 0, keys, 0, mKeys.length);
+                    mKeys = keys;
+                    boolean[] computed = new boolean[length];
+                    System.arraycopy(mComputed, 0, computed, 0, mComputed.length);
+                    mComputed = computed;
+                }
+                if (!mComputed[rowId]) {
+                    mKeyCount++;
+                }
+                mKeys[rowId] = key;
+                mComputed[rowId] = true;
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Compares the values of two rows with the collator, without computing their keys.
+     */
+    public int compareValues(SpreadSheetData lhs, SpreadSheetData rhs) throws IllegalAccessException {
+        Object l = mField.get(lhs);
+        Object r = mField.get(rhs);
+        if (l == null || r == null) {
+            return (l == null ? 0 : 1) - (r == null ? 0 : 1);
+        }
+        synchronized (this) {
+            return mCollator.compare(l.toString(), r.toString());
+        }
+    }
+
+    /**
+     * Sort key of every row of the list, indexed by row id. Computes the keys
+     * of the rows that have none yet.
+     */
+    public CollationKey[] sortKeys(List<? extends SpreadSheetData> rows) throws IllegalAccessException {
+        int maxRowId = -1;
+        for (int i = 0; i < rows.size(); i++) {
+            maxRowId = Math.max(maxRowId, rows.get(i).mRowId);
+        }
+
+        CollationKey[] keys = new CollationKey[maxRowId + 1];
+        for (int i = 0; i < rows.size(); i++) {
+            SpreadSheetData row = rows.get(i);
+            CollationKey key = getKey(row);
+            if (row.mRowId >= 0) {
+                keys[row.mRowId] = key;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Compares two keys, null first.
+     */
+    public static int compare(CollationKey lhs, CollationKey rhs) {
+        if (lhs == null || rhs == null) {
+            return (lhs == null ? 0 : 1) - (rhs == null ? 0 : 1);
+        }
+        return lhs.compareTo(rhs);
+    }
+
+    /**
+     * @return the approximate memory held by the keys
+     */
+    public synchronized long getMemoryUsage() {
+        return mKeys.length * 5L + mKeyCount * KEY_BYTES;
+    }
+
+    synchronized void invalidate(int rowId) {
+        if (rowId >= 0 && rowId < mComputed.length) {
+            if (mComputed[rowId]) {
+                mKeyCount--;
+            }
+            mComputed[rowId] = false;
+            mKeys[rowId] = null;
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mKeys = new CollationKey[16];
+        mComputed = new boolean[16];
+        mKeyCount = 0;
+    }
+
+}
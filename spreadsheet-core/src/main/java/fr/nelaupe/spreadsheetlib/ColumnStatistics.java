@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Summary of the values of a column: count, nulls, distinct count, min, max,
+ * quantiles and histogram of numbers, and the longest text. Rows are read
+ * once as they are published and folded into bounded sketches, a changed row
+ * makes the next update read the column again.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class ColumnStatistics {
+
+    private final AnnotationFields mField;
+    private Summary mSummary;
+    private int mUpdatedCount;
+    private boolean mStale;
+    private int mEpoch;
+    private int mVersion;
+
+    ColumnStatistics(AnnotationFields field) {
+        mField = field;
+        mSummary = new Summary();
+    }
+
+    /**
+     * Reads the rows of the data not read yet. Safe to call from any thread.
+     */
+    public void update(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+        boolean rebuild;
+        int from;
+        int epoch;
+        int version;
+        synchronized (this) {
+            rebuild = mStale;
+            mStale = false;
+            from = rebuild ? 0 : mUpdatedCount;
+            epoch = mEpoch;
+            version = mVersion;
+        }
+        int to = data.getRowIdCount();
+        if (!rebuild && from >= to) return;
+
+        // Values are read without holding the lock, computed columns take their own
+        Summary summary = new Summary();
+        boolean evicted = false;
+        for (int rowId = from; rowId < to; rowId++) {
+            int position = data.getPosition(rowId);
+            if (position >= 0) {
+                SpreadSheetData row = data.get(position);
+                evicted |= row.mEvicted;
+                summary.add(mField.get(row));
+            }
+        }
+
+        synchronized (this) {
+            // Cleared meanwhile, the row ids are not the same rows anymore
+            if (epoch != mEpoch) return;
+
+            // Another update went first, the next one starts from there
+            if (version != mVersion) {
+                mStale |= rebuild;
+                return;
+            }
+
+            if (rebuild) {
+                mSummary = summary;
+            } else {
+                mSummary.merge(summary);
+            }
+            mUpdatedCount = to;
+            mVersion++;
+            // Read from an older snapshot, the replacing rows are read by the next update
+            mStale |= evicted;
+        }
+    }
+
+    /**
+     * @return the count of non null values
+     */
+    public synchronized long getCount() {
+        return mSummary.count;
+    }
+
+    public synchronized long getNullCount() {
+        return mSummary.nulls;
+    }
+
+    /**
+     * @return the estimated count of distinct non null values
+     */
+    public synchronized long getDistinctCount() {
+        return mSummary.distinct.estimate();
+    }
+
+    public synchronized Object getMin() {
+        return mSummary.min;
+    }
+
+    public synchronized Object getMax() {
+        return mSummary.max;
+    }
+
+    /**
+     * @return the estimated quantile of the numbers, NaN for a column without numbers
+     */
+    public synchronized double getQuantile(double fraction) {
+        return mSummary.quantiles.getQuantile(fraction);
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    /**
+     * @return the estimated count of numbers in bins of equal width between min and max
+     */
+    public synchronized long[] getHistogram(int bins) {
+        return mSummary.quantiles.getHistogram(bins);
+    }
+
+    /**
+     * @return the length of the longest value as text, to size the column
+     */
+    public synchronized int getMaxTextLength() {
+        return mSummary.maxTextLength;
+    }
+
+    /**
+     * @return the approximate memory held by the sketches
+     */
+    public synchronized long getMemoryUsage() {
+        return mSummary.distinct.getSizeInBytes() + mSummary.quantiles.getSizeInBytes();
+    }
+
+    synchronized void invalidate(int rowId) {
+        if (rowId >= 0 && rowId < mUpdatedCount) {
+            mStale = true;
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mSummary = new Summary();
+        mUpdatedCount = 0;
+        mStale = false;
+        mEpoch++;
+    }
+
+    private static final class Summary {
+        final HyperLogLog distinct = new HyperLogLog();
+        final QuantileSketch quantiles = new QuantileSketch();
+        long count;
+        long nulls;
+        Comparable min;
+        Comparable max;
+        int maxTextLength;
+
+        void add(Object value) {
+            if (value == null) {
+                nulls++;
+                return;
+            }
+
+            count++;
+            distinct.offer(value);
+            if (value instanceof Number) {
+                quantiles.update(((Number) value).doubleValue());
+            }
+            if (value instanceof Comparable) {
+                extend((Comparable) value, (Comparable) value);
+            }
+            maxTextLength = Math.max(maxTextLength, value.toString().length());
+        }
+
+        void merge(Summary other) {
+            count += other.count;
+            nulls += other.nulls;
+            distinct.merge(other.distinct);
+            quantiles.merge(other.quantiles);
+            if (other.min != null) {
+                extend(other.min, other.max);
+            }
+            maxTextLength = Math.max(maxTextLength, other.maxTextLength);
+        }
+
+        private void extend(Comparable low, Comparable high) {
+            if (min == null || min.compareTo(low) > 0) {
+                min = low;
+            }
+            if (max == null || max.compareTo(high) < 0) {
+                max = high;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.lang.reflect.Field;
+import java.util.BitSet;
+
+/**
+ * Column values copied into an array indexed by row id, typed after the
+ * column: integral and boolean values in a {@code long[]}, decimal values in a
+ * {@code double[]}, anything else in an {@code Object[]}. Compiled filters read
+ * these arrays instead of going through reflection for every row.
+ */
+@SuppressWarnings("unused")
+public class ColumnVector {
+
+    public enum Kind {
+        LONG, DOUBLE, OBJECT
+    }
+
+    private final AnnotationFields mField;
+    private final Kind mKind;
+    private final boolean mPrimitive;
+
+    private long[] mLongs;
+    private double[] mDoubles;
+    private Object[] mObjects;
+    private BitSet mNulls;
+    // Arrays handed out by values(), copied before the next write
+    private boolean mShared;
+
+    private int mLoadedCount;
+    private BitSet mStale;
+    private int mEpoch;
+
+    ColumnVector(AnnotationFields field) {
+        mField = field;
+        Class<?> type = field.getField() != null ? field.getField().getType() : field.getMethod().getReturnType();
+        mKind = kindOf(type);
+        mPrimitive = type.isPrimitive() && field.getField() != null;
+        mStale = new BitSet();
+        allocate(16);
+    }
+
+    static Kind kindOf(Class<?> type) {
+        if (type == int.class || type == long.class || type == short.class || type == byte.class || type == boolean.class
+                || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class || type == Boolean.class) {
+            return Kind.LONG;
+        }
+        if (type == double.class || type == float.class || type == Double.class || type == Float.class) {
+            return Kind.DOUBLE;
+        }
+        return Kind.OBJECT;
+    }
+
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /**
+     * Copies the values of the rows not loaded yet. Safe to call from any thread.
+     */
+    public void load(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+        BitSet stale;
+        int from;
+        int epoch;
+        synchronized (this) {
+            stale = mStale;
+            mStale = new BitSet();
+            from = mLoadedCount;
+            epoch = mEpoch;
+        }
+        int to = data.getRowIdCount();
+        if (stale.isEmpty() && from >= to) return;
+
+        // Values are read without holding the lock, computed columns take their own
+        Chunk chunk = new Chunk(stale.cardinality() + Math.max(0, to - from));
+        for (int rowId = stale.nextSetBit(0); rowId >= 0; rowId = stale.nextSetBit(rowId + 1)) {
+            read(data, rowId, chunk);
+        }
+        for (int rowId = from; rowId < to; rowId++) {
+            read(data, rowId, chunk);
+        }
+
+        synchronized (this) {
+            // Cleared meanwhile, the row ids are not the same rows anymore
+            if (epoch != mEpoch) return;
+
+            if (to > capacity()) {
+                allocate(Math.max(to, capacity() * 2));
+            } else if (mShared && chunk.size > 0) {
+                allocate(capacity());
+            }
+            for (int i = 0; i < chunk.size; i++) {
+                int rowId = chunk.rowIds[i];
+                // Changed again meanwhile, loaded by the next call
+                if (mStale.get(rowId)) continue;
+
+                // Read from an older snapshot, the id belongs to the row that replaced it
+                if (chunk.rows[i].mEvicted) {
+                    mStale.set(rowId);
+                    continue;
+                }
+
+                switch (mKind) {
+                    case LONG:
+                        mLongs[rowId] = chunk.longs[i];
+                        break;
+                    case DOUBLE:
+                        mDoubles[rowId] = chunk.doubles[i];
+                        break;
+                    default:
+                        mObjects[rowId] = chunk.objects[i];
+                        break;
+                }
+                mNulls.set(rowId, chunk.nulls.get(i));
+            }
+            mLoadedCount = Math.max(mLoadedCount, to);
+        }
+    }
+
+    private void read(DataSnapshot<? extends SpreadSheetData> data, int rowId, Chunk chunk) throws IllegalAccessException {
+        int position = data.getPosition(rowId);
+        if (position < 0) return;
+
+        SpreadSheetData row = data.get(position);
+        int i = chunk.size++;
+        chunk.rowIds[i] = rowId;
+        chunk.rows[i] = row;
+
+        if (mPrimitive) {
+            Field field = mField.getField();
+            if (mKind == Kind.DOUBLE) {
+                chunk.doubles[i] = field.getDouble(row);
+            } else if (field.getType() == boolean.class) {
+                chunk.longs[i] = field.getBoolean(row) ? 1 : 0;
+            } else {
+                chunk.longs[i] = field.getLong(row);
+            }
+            return;
+        }
+
+        Object value = mField.get(row);
+        if (value == null) {
+            chunk.nulls.set(i);
+        } else if (mKind == Kind.LONG) {
+            chunk.longs[i] = value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : ((Number) value).longValue();
+        } else if (mKind == Kind.DOUBLE) {
+            chunk.doubles[i] = ((Number) value).doubleValue();
+        } else {
+            chunk.objects[i] = value;
+        }
+    }
+
+    /**
+     * @return the values by row id, valid for the rows of the last loaded data
+     * and never changed by the next loads
+     */
+    synchronized Values values() {
+        mShared = true;
+        return new Values(mLongs, mDoubles, mObjects, mNulls);
+    }
+
+    synchronized void invalidate(int rowId) {
+        if (rowId >= 0) {
+            mStale.set(rowId);
+        }
+    }
+
+    /**
+     * @return the memory held by the arrays
+     */
+    public synchronized long getMemoryUsage() {
+        return capacity() * (mKind == Kind.OBJECT ? 4L : 8L) + capacity() / 8;
+    }
+
+    synchronized void invalidateAll() {
+        mStale = new BitSet();
+        mLoadedCount = 0;
+        mEpoch++;
+    }
+
+    private int capacity() {
+        switch (mKind) {
+            case LONG:
+                return mLongs.length;
+            case DOUBLE:
+                return mDoubles.length;
+            default:
+                return mObjects.length;
+        }
+    }
+
+    private void allocate(int capacity) {
+        switch (mKind) {
+            case LONG:
+                long[] longs = new long[capacity];
+                if (mLongs != null) System.arraycopy(mLongs, 0, longs, 0, mLongs.length);
+                mLongs = longs;
+                break;
+            case DOUBLE:
+                double[] doubles = new double[capacity];
+                if (mDoubles != null) System.arraycopy(mDoubles, 0, doubles, 0, mDoubles.length);
+                mDoubles = doubles;
+                break;
+            default:
+                Object[] objects = new Object[capacity];
+                if (mObjects != null) System.arraycopy(mObjects, 0, objects, 0, mObjects.length);
+                mObjects = objects;
+                break;
+        }
+        BitSet nulls = new BitSet(capacity);
+        if (mNulls != null) nulls.or(mNulls);
+        mNulls = nulls;
+        mShared = false;
+    }
+
+    static final class Values {
+        final long[] longs;
+        final double[] doubles;
+        final Object[] objects;
+        final BitSet nulls;
+
+        Values(long[] longs, double[] doubles, Object[] objects, BitSet nulls) {
+            this.longs = longs;
+            this.doubles = doubles;
+            this.objects = objects;
+            this.nulls = nulls;
+        }
+    }
+
+    private final class Chunk {
+        final int[] rowIds;
+        final SpreadSheetData[] rows;
+        final long[] longs;
+        final double[] doubles;
+        final Object[] objects;
+        final BitSet nulls;
+        int size;
+
+        Chunk(int capacity) {
+            rowIds = new int[capacity];
+            rows = new SpreadSheetData[capacity];
+            longs = mKind == Kind.LONG ? new long[capacity] : null;
+            doubles = mKind == Kind.DOUBLE ? new double[capacity] : null;
+            objects = mKind == Kind.OBJECT ? new Object[capacity] : null;
+            nulls = new BitSet(capacity);
+        }
+    }
+
+}
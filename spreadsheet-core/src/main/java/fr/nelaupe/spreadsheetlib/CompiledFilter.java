@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link RowFilter} bound to the columns of an adaptor. Evaluation reads the
+ * typed {@link ColumnVector}s and bitmap indexes of the columns in batches of
+ * {@value #BATCH_SIZE} rows, split over several threads for large data. A
+ * filter answered by indexes alone only looks up the positions of its rows.
+ */
+@SuppressWarnings("unused")
+public class CompiledFilter {
+
+    static final int BATCH_SIZE = 1024;
+    static final int PARALLEL_THRESHOLD = 32 * 1024;
+
+    private final RowFilter mFilter;
+    private final RowPredicate mPredicate;
+
+    CompiledFilter(RowFilter filter, RowPredicate predicate) {
+        mFilter = filter;
+        mPredicate = predicate;
+    }
+
+    public RowFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * @return the rows of the data matching the filter, in the order of the data
+     */
+    public <T extends SpreadSheetData> RowIndexView<T> evaluate(final DataSnapshot<T> data) throws IllegalAccessException {
+        final Object state = mPredicate.prepare(data);
+        if (state instanceof RoaringBitmap) {
+            int[] positions = positions(data, (RoaringBitmap) state);
+            return new RowIndexView<>(data, positions, positions.length, data.getRowIdCount(), data.getEvictedCount());
+        }
+
+        int size = data.size();
+        int chunks = size < PARALLEL_THRESHOLD ? 1 : Math.min(BackgroundExecutor.parallelism(), size / BATCH_SIZE);
+        if (chunks <= 1) {
+            int[] positions = match(data, state, 0, size);
+            return new RowIndexView<>(data, positions, positions.length, data.getRowIdCount(), data.getEvictedCount());
+        }
+
+        List<Future<int[]>> futures = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int from = (int) ((long) size * chunk / chunks);
+            final int to = (int) ((long) size * (chunk + 1) / chunks);
+            futures.add(BackgroundExecutor.parallel().submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return match(data, state, from, to);
+                }
+            }));
+        }
+
+        List<int[]> parts = new ArrayList<>(chunks);
+        int count = 0;
+        try {
+            for (Future<int[]> future : futures) {
+                int[] part = future.get();
+                parts.add(part);
+                count += part.length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        int[] positions = new int[count];
+        int offset = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, positions, offset, part.length);
+            offset += part.length;
+        }
+        return new RowIndexView<>(data, positions, count, data.getRowIdCount(), data.getEvictedCount());
+    }
+
+    /**
+     * @return the sorted positions of the rows of the data in the bitmap
+     */
+    private static int[] positions(DataSnapshot<?> data, RoaringBitmap rowIds) {
+        int[] positions = rowIds.toArray();
+        int count = 0;
+        for (int rowId : positions) {
+            int position = data.getPosition(rowId);
+            if (position >= 0) {
+                positions[count++] = position;
+            }
+        }
+        Arrays.sort(positions, 0, count);
+        return count == positions.length ? positions : Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * @return the positions between from and to of the matching rows
+     */
+    private int[] match(DataSnapshot<?> data, Object state, int from, int to) {
+        int[] rowIds = new int[BATCH_SIZE];
+        boolean[] matches = new boolean[BATCH_SIZE];
+        int[] positions = new int[Math.min(to - from, BATCH_SIZE)];
+        int count = 0;
+
+        for (int start = from; start < to; start += BATCH_SIZE) {
+            int batch = Math.min(BATCH_SIZE, to - start);
+            for (int i = 0; i < batch; i++) {
+                rowIds[i] = data.get(start + i).mRowId;
+            }
+
+            mPredicate.test(state, rowIds, batch, matches);
+
+            for (int i = 0; i < batch; i++) {
+                if (!matches[i]) continue;
+
+                if (count == positions.length) {
+                    int[] grown = new int[Math.min(to - from, positions.length * 2)];
+                    System.arraycopy(positions, 0, grown, 0, count);
+                    positions = grown;
+                }
+                positions[count++] = start + i;
+            }
+        }
+
+        if (count == positions.length) {
+            return positions;
+        }
+        int[] trimmed = new int[count];
+        System.arraycopy(positions, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+}
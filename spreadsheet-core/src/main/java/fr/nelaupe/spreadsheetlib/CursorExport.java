@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the rows of a {@link RowCursor} as CSV (RFC 4180). Integers are
+ * formatted in a reused buffer, floating point numbers with
+ * {@link Double#toString(double)} so they read back to the same value. Columns
+ * with a formatter in the registry are written the way they are displayed.
+ */
+@SuppressWarnings("unused")
+public final class CursorExport {
+
+    private CursorExport() {
+    }
+
+    /**
+     * @param formatters formatters of the columns, may be null
+     */
+    public static void writeCsv(RowCursor cursor, FormatterRegistry formatters, Writer out) throws IOException {
+        char[] buffer = new char[CharFormatter.BUFFER_SIZE];
+
+        for (int column = 0; column < cursor.getColumnCount(); column++) {
+            if (column > 0) out.write(',');
+            writeText(cursor.getColumn(column).getName(), out);
+        }
+        out.write("\r\n");
+
+        for (int position = 0; cursor.moveToPosition(position); position++) {
+            for (int column = 0; column < cursor.getColumnCount(); column++) {
+                if (column > 0) out.write(',');
+                writeCell(cursor, column, formatters, buffer, out);
+            }
+            out.write("\r\n");
+        }
+        out.flush();
+    }
+
+    private static void writeCell(RowCursor cursor, int column, FormatterRegistry formatters, char[] buffer, Writer out) throws IOException {
+        if (formatters != null && formatters.hasFormatter(cursor.getColumn(column))) {
+            writeText(formatters.format(cursor.getColumn(column), cursor.getObject(column)), out);
+            return;
+        }
+
+        switch (cursor.getType(column)) {
+            case INT:
+            case LONG:
+                out.write(buffer, 0, CharFormatter.formatLong(cursor.getLong(column), buffer));
+                break;
+            case FLOAT:
+                out.write(Float.toString(cursor.getFloat(column)));
+                break;
+            case DOUBLE:
+                out.write(Double.toString(cursor.getDouble(column)));
+                break;
+            case BOOLEAN:
+                char[] text = cursor.getBoolean(column) ? CharFormatter.TRUE : CharFormatter.FALSE;
+                out.write(text, 0, text.length);
+                break;
+            default:
+                String value = cursor.getString(column);
+                if (value != null) {
+                    writeText(value, out);
+                }
+                break;
+        }
+    }
+
+    private static void writeText(String text, Writer out) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(text);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Finds rows of a {@link RowCursor} whose text contains a query, ignoring
+ * case. Numbers are formatted in a reused buffer, the same way they are
+ * displayed, so scanning does not allocate for primitive columns.
+ */
+@SuppressWarnings("unused")
+public class CursorSearch {
+
+    private final String mQuery;
+    private final char[] mBuffer = new char[CharFormatter.BUFFER_SIZE];
+
+    public CursorSearch(String query) {
+        mQuery = query;
+    }
+
+    /**
+     * @return the first position from this one with a matching cell, -1 if none
+     */
+    public int next(RowCursor cursor, int from) {
+        for (int position = Math.max(0, from); cursor.moveToPosition(position); position++) {
+            for (int column = 0; column < cursor.getColumnCount(); column++) {
+                if (matches(cursor, column)) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first position from this one with a matching cell in the column, -1 if none
+     */
+    public int next(RowCursor cursor, int column, int from) {
+        for (int position = Math.max(0, from); cursor.moveToPosition(position); position++) {
+            if (matches(cursor, column)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the cell of the current row contains the query
+     */
+    public boolean matches(RowCursor cursor, int column) {
+        int length;
+        switch (cursor.getType(column)) {
+            case INT:
+            case LONG:
+                length = CharFormatter.formatLong(cursor.getLong(column), mBuffer);
+                return contains(mBuffer, length);
+            case FLOAT:
+                length = CharFormatter.formatDouble(cursor.getFloat(column), CharFormatter.FLOAT_DIGITS, mBuffer);
+                return contains(mBuffer, length);
+            case DOUBLE:
+                length = CharFormatter.formatDouble(cursor.getDouble(column), CharFormatter.DOUBLE_DIGITS, mBuffer);
+                return contains(mBuffer, length);
+            case BOOLEAN:
+                char[] text = cursor.getBoolean(column) ? CharFormatter.TRUE : CharFormatter.FALSE;
+                return contains(text, text.length);
+            default:
+                String value = cursor.getString(column);
+                return value != null && contains(value);
+        }
+    }
+
+    private boolean contains(String text) {
+        int last = text.length() - mQuery.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, mQuery, 0, mQuery.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(char[] text, int length) {
+        int last = length - mQuery.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < mQuery.length() && Character.toLowerCase(text[i + j]) == Character.toLowerCase(mQuery.charAt(j))) {
+                j++;
+            }
+            if (j == mQuery.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.text.Collator;
+
+/**
+ * Sorts the rows of a {@link RowCursor} on one column. The values are read
+ * once into a typed array, primitive columns without boxing, and the
+ * positions are merge sorted against it, so ties keep their order.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public final class CursorSort {
+
+    private CursorSort() {
+    }
+
+    /**
+     * @param collator compares text columns, natural order of the values if null
+     * @return the positions of the rows in sorted order, null values first
+     */
+    public static int[] sort(RowCursor cursor, int column, boolean descending, Collator collator) {
+        int count = cursor.getCount();
+        Keys keys = keys(cursor, column, count, collator);
+
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = i;
+        }
+        mergeSort(positions, new int[count], 0, count, keys, descending ? -1 : 1);
+        return positions;
+    }
+
+    private static Keys keys(RowCursor cursor, int column, int count, final Collator collator) {
+        switch (cursor.getType(column)) {
+            case INT:
+            case LONG:
+            case BOOLEAN:
+                final long[] longs = new long[count];
+                for (int i = 0; i < count; i++) {
+                    cursor.moveToPosition(i);
+                    longs[i] = cursor.getLong(column);
+                }
+                return new Keys() {
+                    @Override
+                    int compare(int lhs, int rhs) {
+                        return longs[lhs] < longs[rhs] ? -1 : (longs[lhs] == longs[rhs] ? 0 : 1);
+                    }
+                };
+            case FLOAT:
+            case DOUBLE:
+                final double[] doubles = new double[count];
+                for (int i = 0; i < count; i++) {
+                    cursor.moveToPosition(i);
+                    doubles[i] = cursor.getDouble(column);
+                }
+                return new Keys() {
+                    @Override
+                    int compare(int lhs, int rhs) {
+                        return Double.compare(doubles[lhs], doubles[rhs]);
+                    }
+                };
+            default:
+                final Object[] objects = new Object[count];
+                for (int i = 0; i < count; i++) {
+                    cursor.moveToPosition(i);
+                    objects[i] = cursor.getObject(column);
+                }
+                final boolean text = cursor.getType(column) == AnnotationFields.BindType.TEXT && collator != null;
+                return new Keys() {
+                    @Override
+                    int compare(int lhs, int rhs) {
+                        Object l = objects[lhs];
+                        Object r = objects[rhs];
+                        if (l == null || r == null) {
+                            return (l == null ? 0 : 1) - (r == null ? 0 : 1);
+                        }
+                        return text ? collator.compare((String) l, (String) r) : ((Comparable) l).compareTo(r);
+                    }
+                };
+        }
+    }
+
+    private static void mergeSort(int[] positions, int[] buffer, int from, int to, Keys keys, int direction) {
+        if (to - from < 8) {
+            // Insertion sort for the small runs
+            for (int i = from + 1; i < to; i++) {
+                int position = positions[i];
+                int j = i;
+                while (j > from && order(keys, positions[j - 1], position, direction) > 0) {
+                    positions[j] = positions[j - 1];
+                    j--;
+                }
+                positions[j] = position;
+            }
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(positions, buffer, from, middle, keys, direction);
+        mergeSort(positions, buffer, middle, to, keys, direction);
+        if (order(keys, positions[middle - 1], positions[middle], direction) <= 0) {
+            return;
+        }
+
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int l = from;
+        int r = middle;
+        for (int i = from; i < to; i++) {
+            if (r >= to || (l < middle && order(keys, buffer[l], buffer[r], direction) <= 0)) {
+                positions[i] = buffer[l++];
+            } else {
+                positions[i] = buffer[r++];
+            }
+        }
+    }
+
+    private static int order(Keys keys, int lhs, int rhs, int direction) {
+        return direction > 0 ? keys.compare(lhs, rhs) : keys.compare(rhs, lhs);
+    }
+
+    private static abstract class Keys {
+        abstract int compare(int lhs, int rhs);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, versioned view of the adaptor data. Snapshots can be read from
+ * any thread; appends made after it was published are never visible through it.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class DataSnapshot<T extends SpreadSheetData> extends AbstractList<T> implements RandomAccess {
+
+    private final Object[] mItems;
+    private final int mOffset;
+    private final int mSize;
+    private final int mVersion;
+    private final int mGeneration;
+    private final long mEvicted;
+    private final int mRowIdCount;
+    private final int mRowIdEpoch;
+
+    // Built on first use, published once filled so every thread sees a complete array
+    private volatile int[] mPositions;
+
+    DataSnapshot(Object[] items, int offset, int size, int version, int generation, long evicted, int rowIdCount, int rowIdEpoch) {
+        mItems = items;
+        mOffset = offset;
+        mSize = size;
+        mVersion = version;
+        mGeneration = generation;
+        mEvicted = evicted;
+        mRowIdCount = rowIdCount;
+        mRowIdEpoch = rowIdEpoch;
+    }
+
+    @Override
+    public T get(int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + mSize);
+        }
+        return (T) mItems[mOffset + location];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Changes whenever rows are reordered or removed, appends and evictions
+     * from the head of a bounded model keep the generation.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return true if this snapshot only has rows appended after the ones of the other snapshot
+     */
+    public boolean isAppendOf(DataSnapshot<?> other) {
+        return other != null && mGeneration == other.mGeneration && mEvicted == other.mEvicted && mSize >= other.mSize;
+    }
+
+    /**
+     * @return the number of rows evicted from the head since the row ids were restarted
+     */
+    public long getEvictedCount() {
+        return mEvicted;
+    }
+
+    /**
+     * @return true if this snapshot only has rows evicted from the head and
+     * appended after the ones of the other snapshot
+     */
+    public boolean isSlideOf(DataSnapshot<?> other) {
+        return other != null && mGeneration == other.mGeneration && mEvicted >= other.mEvicted
+                && mEvicted + mSize >= other.mEvicted + other.mSize;
+    }
+
+    /**
+     * Changes when the data is cleared and row ids are handed out from 0 again.
+     */
+    public int getRowIdEpoch() {
+        return mRowIdEpoch;
+    }
+
+    /**
+     * @return the number of row ids handed out when this snapshot was published
+     */
+    public int getRowIdCount() {
+        return mRowIdCount;
+    }
+
+    /**
+     * @return the position of the row in this snapshot, -1 if it is not part of it
+     */
+    public int getPosition(int rowId) {
+        int[] positions = mPositions;
+        if (positions == null) {
+            positions = new int[mRowIdCount];
+            Arrays.fill(positions, -1);
+            for (int position = 0; position < mSize; position++) {
+                int id = ((SpreadSheetData) mItems[mOffset + position]).mRowId;
+                if (id >= 0 && id < positions.length) {
+                    positions[id] = position;
+                }
+            }
+            mPositions = positions;
+        }
+        return (rowId >= 0 && rowId < positions.length) ? positions[rowId] : -1;
+    }
+
+    Object[] items() {
+        return mItems;
+    }
+
+    /**
+     * @return the index of the first row in {@link #items()}
+     */
+    int offset() {
+        return mOffset;
+    }
+
+}
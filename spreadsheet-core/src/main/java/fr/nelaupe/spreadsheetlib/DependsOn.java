@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package fr.nelaupe.spreadsheetlib;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Declares a computed column: put it with {@link SpreadSheetCell} on a method
+ * without parameters, listing the names of the columns the method reads.
+ * The value is cached per row and recomputed only when one of these columns
+ * is notified as changed.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DependsOn {
+    String[] value();
+
+}
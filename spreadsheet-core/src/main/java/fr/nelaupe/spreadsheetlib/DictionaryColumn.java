@@ -0,0 +1,312 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of a low cardinality column, enabled with
+ * {@link SpreadSheetCell#dictionary()}. Every row gets an int code into a
+ * shared dictionary of distinct values, values are told apart with their
+ * {@code equals} and {@code hashCode}. Sorting compares the rank of the
+ * codes and the {@link RowFilter#equalTo} and {@link RowFilter#in} filters
+ * compare codes, never the values. Computed columns cache the dictionary
+ * instance of their values, one per distinct value; the rows keep their own.
+ * The dictionary is rebuilt when most of its values are no longer held by
+ * any row, and dropped with the caches.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class DictionaryColumn {
+
+    public static final int NO_CODE = -1;
+
+    private final AnnotationFields mField;
+    private final Map<Object, Integer> mCodes;
+    private Object[] mValues;
+    private int mSize;
+    private int[] mRanks;
+    private Collator mCollator;
+
+    private int[] mRowCodes;
+    // Bumped when the dictionary is rebuilt, codes of older generations mean nothing
+    private int mGeneration;
+
+    DictionaryColumn(AnnotationFields field) {
+        mField = field;
+        mCodes = new HashMap<>();
+        mValues = new Object[16];
+        mRowCodes = new int[16];
+        Arrays.fill(mRowCodes, NO_CODE);
+        mCollator = Collator.getInstance();
+    }
+
+    /**
+     * Collator ranking the {@link String} values, null to use their natural order.
+     */
+    public synchronized void setCollator(Collator collator) {
+        mCollator = collator;
+        mRanks = null;
+    }
+
+    /**
+     * @return the code of the value held by this row, encoding it if needed
+     */
+    public int getCode(SpreadSheetData row) throws IllegalAccessException {
+        int rowId = row.mRowId;
+        synchronized (this) {
+            if (rowId >= 0 && !row.mEvicted && rowId < mRowCodes.length && mRowCodes[rowId] != NO_CODE) {
+                return mRowCodes[rowId];
+            }
+        }
+
+        Object value = mField.get(row);
+
+        synchronized (this) {
+            int code = encode(value);
+
+            // An evicted row's id belongs to another row
+            if (rowId >= 0 && !row.mEvicted) {
+                if (rowId >= mRowCodes.length) {
+                    int[] rowCodes = new int[Math.max(rowId + 1, mRowCodes.length * 2)];
+                    System.arraycopy(mRowCodes, 0, rowCodes, 0, mRowCodes.length);
+                    Arrays.fill(rowCodes, mRowCodes.length, rowCodes.length, NO_CODE);
+                    mRowCodes = rowCodes;
+                }
+                mRowCodes[rowId] = code;
+            }
+            return code;
+        }
+    }
+
+    /**
+     * @return the dictionary instance equal to the value, so equal values are held once
+     */
+    synchronized Object intern(Object value) {
+        return mValues[encode(value)];
+    }
+
+    private int encode(Object value) {
+        Integer code = mCodes.get(value);
+        if (code != null) {
+            return code;
+        }
+
+        if (mSize == mValues.length) {
+            Object[] values = new Object[mSize * 2];
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            mValues = values;
+        }
+        mValues[mSize] = value;
+        mCodes.put(value, mSize);
+        mRanks = null;
+        return mSize++;
+    }
+
+    /**
+     * @return the code of this value, {@link #NO_CODE} if no row holds it
+     */
+    public synchronized int codeOf(Object value) {
+        Integer code = mCodes.get(value);
+        return code == null ? NO_CODE : code;
+    }
+
+    public synchronized Object decode(int code) {
+        return mValues[code];
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the position of the code's value in the sorted dictionary, nulls first
+     */
+    public synchronized int rankOf(int code) {
+        return ranks()[code];
+    }
+
+    /**
+     * @return the rank of the value held by this row, encoding it if needed
+     */
+    public int getRank(SpreadSheetData row) throws IllegalAccessException {
+        while (true) {
+            int generation = generation();
+            int code = getCode(row);
+            synchronized (this) {
+                if (generation == mGeneration) {
+                    return ranks()[code];
+                }
+            }
+        }
+    }
+
+    public synchronized Object[] getSortedValues() {
+        int[] ranks = ranks();
+        Object[] sorted = new Object[mSize];
+        for (int code = 0; code < mSize; code++) {
+            sorted[ranks[code]] = mValues[code];
+        }
+        return sorted;
+    }
+
+    private int[] ranks() {
+        if (mRanks == null) {
+            Integer[] codes = new Integer[mSize];
+            for (int code = 0; code < mSize; code++) {
+                codes[code] = code;
+            }
+            Arrays.sort(codes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    Comparable l = (Comparable) mValues[lhs];
+                    Comparable r = (Comparable) mValues[rhs];
+                    if (l == null || r == null) {
+                        return (l == null ? 0 : 1) - (r == null ? 0 : 1);
+                    }
+                    if (mCollator != null && l instanceof String && r instanceof String) {
+                        return mCollator.compare(l, r);
+                    }
+                    return l.compareTo(r);
+                }
+            });
+
+            int[] ranks = new int[mSize];
+            for (int rank = 0; rank < mSize; rank++) {
+                ranks[codes[rank]] = rank;
+            }
+            mRanks = ranks;
+        }
+        return mRanks;
+    }
+
+    /**
+     * Sort key of every row of the list, indexed by row id. Encodes the rows
+     * that were not yet.
+     */
+    public int[] sortKeys(List<? extends SpreadSheetData> rows) throws IllegalAccessException {
+        while (true) {
+            int generation = generation();
+            int[] codes = codes(rows);
+
+            synchronized (this) {
+                if (generation != mGeneration) continue;
+
+                int[] ranks = ranks();
+                for (int rowId = 0; rowId < codes.length; rowId++) {
+                    if (codes[rowId] != NO_CODE) {
+                        codes[rowId] = ranks[codes[rowId]];
+                    }
+                }
+                return codes;
+            }
+        }
+    }
+
+    /**
+     * Codes of the rows, indexed by row id, and the codes of the values in the
+     * same dictionary. The array is the caller's, later changes do not touch it.
+     *
+     * @param valueCodes receives the code of each value, {@link #NO_CODE} for a value no row holds
+     */
+    public int[] encode(List<? extends SpreadSheetData> rows, Object[] values, int[] valueCodes) throws IllegalAccessException {
+        while (true) {
+            int generation = generation();
+            int[] codes = codes(rows);
+
+            synchronized (this) {
+                if (generation != mGeneration) continue;
+
+                if (isSparse(codes)) {
+                    // Most values are no longer held, encoded again from the rows
+                    reset();
+                    continue;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    Integer code = mCodes.get(values[i]);
+                    valueCodes[i] = code == null ? NO_CODE : code;
+                }
+                return codes;
+            }
+        }
+    }
+
+    private int[] codes(List<? extends SpreadSheetData> rows) throws IllegalAccessException {
+        int maxRowId = -1;
+        for (int i = 0; i < rows.size(); i++) {
+            maxRowId = Math.max(maxRowId, rows.get(i).mRowId);
+        }
+        int[] codes = new int[maxRowId + 1];
+        Arrays.fill(codes, NO_CODE);
+        for (int i = 0; i < rows.size(); i++) {
+            SpreadSheetData row = rows.get(i);
+            if (row.mRowId >= 0) {
+                codes[row.mRowId] = getCode(row);
+            }
+        }
+        return codes;
+    }
+
+    private boolean isSparse(int[] codes) {
+        if (mSize < 64) return false;
+
+        BitSet used = new BitSet(mSize);
+        for (int code : codes) {
+            if (code != NO_CODE) {
+                used.set(code);
+            }
+        }
+        return used.cardinality() * 2 < mSize;
+    }
+
+    private synchronized int generation() {
+        return mGeneration;
+    }
+
+    synchronized long getMemoryUsage() {
+        // Row codes and values, plus about 32 bytes per entry of the map
+        return mRowCodes.length * 4L + mValues.length * 4L + mSize * 32L;
+    }
+
+    synchronized void invalidate(int rowId) {
+        if (rowId >= 0 && rowId < mRowCodes.length) {
+            mRowCodes[rowId] = NO_CODE;
+        }
+    }
+
+    /**
+     * Drops every value and code, the dictionary is rebuilt from the rows.
+     */
+    synchronized void invalidateAll() {
+        reset();
+    }
+
+    private void reset() {
+        mCodes.clear();
+        mValues = new Object[16];
+        mSize = 0;
+        mRanks = null;
+        mRowCodes = new int[16];
+        Arrays.fill(mRowCodes, NO_CODE);
+        mGeneration++;
+    }
+
+}
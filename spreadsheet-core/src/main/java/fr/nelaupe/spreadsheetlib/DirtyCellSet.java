@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.Arrays;
+
+/**
+ * Set of changed cells, one column bitmask per row id, so the changes follow
+ * their rows when the data is sorted or slides. Notifying the same cell
+ * several times before the set is drained costs nothing more, so changes are
+ * coalesced until the next frame. Columns past 62 share the last bit.
+ */
+@SuppressWarnings("unused")
+public class DirtyCellSet {
+
+    public static final long ALL_COLUMNS = -1L;
+
+    private int[] mRowIds;
+    private long[] mMasks;
+    private int mSize;
+    private int[] mIndex;
+
+    private volatile OnPendingDataListener mPendingDataListener;
+
+    public DirtyCellSet() {
+        mRowIds = new int[16];
+        mMasks = new long[16];
+        mIndex = new int[32];
+        Arrays.fill(mIndex, -1);
+    }
+
+    void setOnPendingDataListener(OnPendingDataListener listener) {
+        mPendingDataListener = listener;
+    }
+
+    public static long columnMask(int column) {
+        return 1L << Math.min(column, 63);
+    }
+
+    public void add(int rowId, int column) {
+        add(rowId, columnMask(column));
+    }
+
+    public void addRow(int rowId) {
+        add(rowId, ALL_COLUMNS);
+    }
+
+    private void add(int rowId, long mask) {
+        boolean wasEmpty;
+        synchronized (this) {
+            wasEmpty = mSize == 0;
+            int slot = find(rowId);
+            if (mIndex[slot] >= 0) {
+                mMasks[mIndex[slot]] |= mask;
+                return;
+            }
+
+            if (mSize == mRowIds.length) {
+                int[] rowIds = new int[mSize * 2];
+                long[] masks = new long[mSize * 2];
+                System.arraycopy(mRowIds, 0, rowIds, 0, mSize);
+                System.arraycopy(mMasks, 0, masks, 0, mSize);
+                mRowIds = rowIds;
+                mMasks = masks;
+            }
+            mRowIds[mSize] = rowId;
+            mMasks[mSize] = mask;
+            mIndex[slot] = mSize++;
+
+            if (mSize * 2 > mIndex.length) {
+                rehash(mIndex.length * 2);
+            }
+        }
+
+        OnPendingDataListener listener = mPendingDataListener;
+        if (wasEmpty && listener != null) {
+            listener.onPendingData();
+        }
+    }
+
+    /**
+     * @return the changed columns of the row, 0 if it did not change
+     */
+    public synchronized long get(int rowId) {
+        int index = mIndex[find(rowId)];
+        return index < 0 ? 0 : mMasks[index];
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized int getRowId(int index) {
+        return mRowIds[index];
+    }
+
+    public synchronized long getMask(int index) {
+        return mMasks[index];
+    }
+
+    public synchronized void clear() {
+        mSize = 0;
+        Arrays.fill(mIndex, -1);
+    }
+
+    /**
+     * Moves every change into target, leaving this set empty. Lets the
+     * consumer work on the changes without holding the producers' lock.
+     */
+    public void drainTo(DirtyCellSet target) {
+        synchronized (this) {
+            synchronized (target) {
+                target.clear();
+                int[] rowIds = target.mRowIds;
+                long[] masks = target.mMasks;
+                int[] index = target.mIndex;
+
+                target.mRowIds = mRowIds;
+                target.mMasks = mMasks;
+                target.mIndex = mIndex;
+                target.mSize = mSize;
+
+                mRowIds = rowIds;
+                mMasks = masks;
+                mIndex = index;
+                mSize = 0;
+            }
+        }
+    }
+
+    private int find(int rowId) {
+        int mask = mIndex.length - 1;
+        int slot = (rowId * 0x9E3779B9) >>> 1 & mask;
+        while (mIndex[slot] >= 0 && mRowIds[mIndex[slot]] != rowId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        mIndex = new int[capacity];
+        Arrays.fill(mIndex, -1);
+        for (int i = 0; i < mSize; i++) {
+            mIndex[find(mRowIds[i])] = i;
+        }
+    }
+
+}
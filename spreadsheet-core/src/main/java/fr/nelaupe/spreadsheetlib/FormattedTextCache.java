@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.Arrays;
+
+/**
+ * Least recently used texts of cells, keyed by row id and column. An entry
+ * only hits for the row version and row id epoch it was formatted for, so
+ * changed rows never need to be evicted. Lookups do not allocate.
+ */
+final class FormattedTextCache {
+
+    private static final int NONE = -1;
+
+    private int mCapacity;
+    private int mSize;
+
+    private int[] mBuckets;
+    private int[] mChain;
+    private int[] mRowIds;
+    private int[] mColumns;
+    private int[] mVersions;
+    private int[] mEpochs;
+    private String[] mTexts;
+
+    // Doubly linked list from the most recently used entry to the least
+    private int[] mNewer;
+    private int[] mOlder;
+    private int mNewest = NONE;
+    private int mOldest = NONE;
+
+    private long mTextBytes;
+
+    FormattedTextCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    synchronized void setCapacity(int capacity) {
+        mCapacity = Math.max(1, capacity);
+        int buckets = Integer.highestOneBit(mCapacity * 2 - 1) << 1;
+        mBuckets = new int[buckets];
+        mChain = new int[mCapacity];
+        mRowIds = new int[mCapacity];
+        mColumns = new int[mCapacity];
+        mVersions = new int[mCapacity];
+        mEpochs = new int[mCapacity];
+        mTexts = new String[mCapacity];
+        mNewer = new int[mCapacity];
+        mOlder = new int[mCapacity];
+        clear();
+    }
+
+    synchronized int getCapacity() {
+        return mCapacity;
+    }
+
+    synchronized String get(int rowId, int column, int version, int epoch) {
+        int entry = find(rowId, column);
+        if (entry == NONE || mVersions[entry] != version || mEpochs[entry] != epoch) {
+            return null;
+        }
+        unlink(entry);
+        linkNewest(entry);
+        return mTexts[entry];
+    }
+
+    synchronized void put(int rowId, int column, int version, int epoch, String text) {
+        int entry = find(rowId, column);
+        if (entry != NONE) {
+            unlink(entry);
+            mTextBytes -= textBytes(mTexts[entry]);
+        } else if (mSize < mCapacity) {
+            entry = mSize++;
+            insert(entry, rowId, column);
+        } else {
+            // Reuse the slot of the least recently used entry
+            entry = mOldest;
+            unlink(entry);
+            remove(entry);
+            mTextBytes -= textBytes(mTexts[entry]);
+            insert(entry, rowId, column);
+        }
+        mVersions[entry] = version;
+        mEpochs[entry] = epoch;
+        mTexts[entry] = text;
+        mTextBytes += textBytes(text);
+        linkNewest(entry);
+    }
+
+    synchronized void clear() {
+        Arrays.fill(mBuckets, NONE);
+        Arrays.fill(mTexts, null);
+        mSize = 0;
+        mNewest = NONE;
+        mOldest = NONE;
+        mTextBytes = 0;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    synchronized long getMemoryUsage() {
+        return mBuckets.length * 4L + mCapacity * (8 * 4L + 4) + mTextBytes;
+    }
+
+    private int bucket(int rowId, int column) {
+        int hash = rowId * 31 + column;
+        hash ^= hash >>> 16;
+        return hash & (mBuckets.length - 1);
+    }
+
+    private int find(int rowId, int column) {
+        for (int entry = mBuckets[bucket(rowId, column)]; entry != NONE; entry = mChain[entry]) {
+            if (mRowIds[entry] == rowId && mColumns[entry] == column) {
+                return entry;
+            }
+        }
+        return NONE;
+    }
+
+    private void insert(int entry, int rowId, int column) {
+        int bucket = bucket(rowId, column);
+        mRowIds[entry] = rowId;
+        mColumns[entry] = column;
+        mChain[entry] = mBuckets[bucket];
+        mBuckets[bucket] = entry;
+    }
+
+    private void remove(int entry) {
+        int bucket = bucket(mRowIds[entry], mColumns[entry]);
+        if (mBuckets[bucket] == entry) {
+            mBuckets[bucket] = mChain[entry];
+            return;
+        }
+        for (int previous = mBuckets[bucket]; previous != NONE; previous = mChain[previous]) {
+            if (mChain[previous] == entry) {
+                mChain[previous] = mChain[entry];
+                return;
+            }
+        }
+    }
+
+    private void linkNewest(int entry) {
+        mNewer[entry] = NONE;
+        mOlder[entry] = mNewest;
+        if (mNewest != NONE) {
+            mNewer[mNewest] = entry;
+        }
+        mNewest = entry;
+        if (mOldest == NONE) {
+            mOldest = entry;
+        }
+    }
+
+    private void unlink(int entry) {
+        int newer = mNewer[entry];
+        int older = mOlder[entry];
+        if (newer != NONE) {
+            mOlder[newer] = older;
+        } else {
+            mNewest = older;
+        }
+        if (older != NONE) {
+            mNewer[older] = newer;
+        } else {
+            mOldest = newer;
+        }
+    }
+
+    private static long textBytes(String text) {
+        return text == null ? 0 : 40 + text.length() * 2L;
+    }
+
+}
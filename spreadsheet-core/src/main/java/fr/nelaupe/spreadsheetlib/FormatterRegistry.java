@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Formatters of the columns, with the texts they produced. Each thread gets
+ * its own formatter instances, so the bind path, prefetch and export can
+ * format concurrently.
+ */
+@SuppressWarnings("unused")
+public class FormatterRegistry {
+
+    public static final int DEFAULT_CAPACITY = 2048;
+
+    // Copied on write, read without locking from any thread
+    private volatile Map<CellInformation, ThreadLocal<CellFormatter>> mFormatters = Collections.emptyMap();
+
+    private final FormattedTextCache mCache = new FormattedTextCache(DEFAULT_CAPACITY);
+
+    public synchronized void register(CellInformation cell, final CellFormatter.Factory factory) {
+        Map<CellInformation, ThreadLocal<CellFormatter>> formatters = new HashMap<>(mFormatters);
+        formatters.put(cell, new ThreadLocal<CellFormatter>() {
+            @Override
+            protected CellFormatter initialValue() {
+                return factory.create();
+            }
+        });
+        mFormatters = formatters;
+        mCache.clear();
+    }
+
+    public synchronized void unregister(CellInformation cell) {
+        Map<CellInformation, ThreadLocal<CellFormatter>> formatters = new HashMap<>(mFormatters);
+        if (formatters.remove(cell) != null) {
+            mFormatters = formatters;
+            mCache.clear();
+        }
+    }
+
+    public boolean hasFormatter(CellInformation cell) {
+        return mFormatters.containsKey(cell);
+    }
+
+    /**
+     * Formats with the instance of the calling thread, without caching.
+     *
+     * @return null if the column has no formatter
+     */
+    public String format(CellInformation cell, Object value) {
+        ThreadLocal<CellFormatter> formatter = mFormatters.get(cell);
+        if (formatter == null) return null;
+
+        return value == null ? "" : formatter.get().format(value);
+    }
+
+    /**
+     * @return the cached text of the cell, formatted again when the row changed since
+     */
+    String getText(AnnotationFields field, SpreadSheetData row, int epoch) throws IllegalAccessException {
+        ThreadLocal<CellFormatter> formatter = mFormatters.get(field.getAnnotation());
+        if (formatter == null) return null;
+
+        // Keyed by the position of the cell, the index in the fields changes with the displayed columns
+        int column = field.getAnnotation().getPosition();
+
+        // Read before the value, a concurrent change makes the entry miss next time
+        int version = row.mVersion;
+        String text = mCache.get(row.mRowId, column, version, epoch);
+        if (text == null) {
+            Object value = field.get(row);
+            text = value == null ? "" : formatter.get().format(value);
+            mCache.put(row.mRowId, column, version, epoch, text);
+        }
+        return text;
+    }
+
+    /**
+     * Number of texts kept, the least recently used ones are dropped first.
+     */
+    public void setCapacity(int capacity) {
+        mCache.setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return mCache.getCapacity();
+    }
+
+    public void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * @return the approximate memory held by the cached texts
+     */
+    public long getMemoryUsage() {
+        return mCache.getMemoryUsage();
+    }
+
+    public void trim() {
+        mCache.clear();
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash based group-by over one or more annotated fields. Groups keep the order
+ * in which their key first appears in the data, so a sorted sheet stays sorted
+ * once grouped.
+ */
+@SuppressWarnings("unused")
+public class GroupBy {
+
+    private final List<AnnotationFields> mKeys;
+    private final List<AnnotationFields> mColumns;
+
+    /**
+     * @param keys    fields the rows are grouped on
+     * @param columns displayed fields, aggregates are indexed like this list
+     */
+    public GroupBy(List<AnnotationFields> keys, List<AnnotationFields> columns) {
+        mKeys = new ArrayList<>(keys);
+        mColumns = new ArrayList<>(columns);
+    }
+
+    public List<AnnotationFields> getKeys() {
+        return mKeys;
+    }
+
+    public List<RowGroup> compute(List<? extends SpreadSheetData> data) {
+        int[] keyColumns = keyColumns();
+        Map<List<Object>, RowGroup> groups = new LinkedHashMap<>();
+        int position = 0;
+
+        try {
+            for (SpreadSheetData resource : data) {
+                List<Object> key = key(resource);
+                RowGroup group = groups.get(key);
+                if (group == null) {
+                    group = new RowGroup(key, keyColumns, mColumns.size());
+                    groups.put(key, group);
+                }
+                add(group, resource, position, keyColumns);
+                position++;
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Adds the rows from a position on to the groups {@link #compute} returned for
+     * the rows before it. Rows with a new key get a new group at the end of the list.
+     * The rows of a {@link RowIndexView} are added at their position in its data.
+     *
+     * @return the indexes of the groups that changed, new groups included
+     */
+    public BitSet append(List<RowGroup> groups, List<? extends SpreadSheetData> rows, int from) {
+        int[] keyColumns = keyColumns();
+        Map<List<Object>, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < groups.size(); i++) {
+            indexes.put(groups.get(i).getKey(), i);
+        }
+
+        BitSet changed = new BitSet();
+        try {
+            for (int i = from; i < rows.size(); i++) {
+                SpreadSheetData resource = rows.get(i);
+                List<Object> key = key(resource);
+                Integer index = indexes.get(key);
+                if (index == null) {
+                    index = groups.size();
+                    groups.add(new RowGroup(key, keyColumns, mColumns.size()));
+                    indexes.put(key, index);
+                }
+                int position = rows instanceof RowIndexView ? ((RowIndexView<?>) rows).getPosition(i) : i;
+                add(groups.get(index), resource, position, keyColumns);
+                changed.set(index);
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return changed;
+    }
+
+    private int[] keyColumns() {
+        int[] keyColumns = new int[mColumns.size()];
+        for (int column = 0; column < keyColumns.length; column++) {
+            keyColumns[column] = mKeys.indexOf(mColumns.get(column));
+        }
+        return keyColumns;
+    }
+
+    private List<Object> key(SpreadSheetData resource) throws IllegalAccessException {
+        Object[] values = new Object[mKeys.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = mKeys.get(i).get(resource);
+        }
+        return Arrays.asList(values);
+    }
+
+    private void add(RowGroup group, SpreadSheetData resource, int position, int[] keyColumns) throws IllegalAccessException {
+        group.add(position);
+
+        for (int column = 0; column < mColumns.size(); column++) {
+            if (keyColumns[column] >= 0) continue;
+            Object value = mColumns.get(column).get(resource);
+            if (value instanceof Number) {
+                group.accumulate(column, ((Number) value).doubleValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Estimates the number of distinct values of a stream in a fixed 4 KB of
+ * registers, about 1.6% of error. Two sketches merge into the sketch of both
+ * streams.
+ */
+@SuppressWarnings("unused")
+public class HyperLogLog {
+
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] mRegisters;
+
+    public HyperLogLog() {
+        mRegisters = new byte[REGISTERS];
+    }
+
+    public long getSizeInBytes() {
+        return REGISTERS;
+    }
+
+    public void offer(Object value) {
+        offerHash(mix(value == null ? 0 : value.hashCode()));
+    }
+
+    public void offerLong(long value) {
+        offerHash(mix(value));
+    }
+
+    public void offerDouble(double value) {
+        offerHash(mix(Double.doubleToLongBits(value)));
+    }
+
+    private void offerHash(long hash) {
+        int register = (int) (hash >>> (64 - PRECISION));
+        // Guard bit keeps the rank within the remaining bits
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > mRegisters[register]) {
+            mRegisters[register] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.mRegisters[i] > mRegisters[i]) {
+                mRegisters[i] = other.mRegisters[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : mRegisters) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Linear counting is more accurate for small cardinalities
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void clear() {
+        for (int i = 0; i < REGISTERS; i++) {
+            mRegisters[i] = 0;
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
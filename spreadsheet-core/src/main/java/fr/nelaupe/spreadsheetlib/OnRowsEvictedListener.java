@@ -15,30 +15,17 @@
  */
 package fr.nelaupe.spreadsheetlib;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Created with IntelliJ
- * Created by Lucas Nelaupe
- * Date 26/03/15
+ * Called from the publishing thread when a bounded model drops its oldest rows.
  */
-@SuppressWarnings({"unused", "unchecked"})
-public abstract class SpreadSheetData {
+@SuppressWarnings("unused")
+public interface OnRowsEvictedListener<T extends SpreadSheetData> {
 
-    protected List<AnnotationFields> defineField() {
-        List<AnnotationFields> fields = new ArrayList<>();
-
-        for (Field field : this.getClass().getDeclaredFields()) {
-            field.setAccessible(true);
-            if (field.isAnnotationPresent(SpreadSheetCell.class)) {
-                fields.add(new AnnotationFields(field, new CellInformation(field.getAnnotation(SpreadSheetCell.class))));
-            }
-        }
-
-        return fields;
-
-    }
+    /**
+     * @param rows the evicted rows, only valid during the call
+     */
+    void onRowsEvicted(List<T> rows);
 
 }
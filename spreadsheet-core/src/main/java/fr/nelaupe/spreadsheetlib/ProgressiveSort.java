@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort done in two steps: {@link #start()} moves the first rows of the order to
+ * the top of the data so they can be shown right away, {@link #run()} orders the
+ * remaining rows off the main thread and {@link #finish()} swaps them in.
+ * The first rows are the ones a full stable sort would give, so they do not move.
+ * They are picked comparing values as they are read, the sort keys of every
+ * row are only computed by {@link #run()}.
+ */
+public class ProgressiveSort<T extends SpreadSheetData> {
+
+    private final SpreadSheetTable<T> mTable;
+    private final SpreadSheetDataModel<T> mModel;
+    private final SortPermutationCache<T> mCache;
+    private final AnnotationFields mField;
+    private final Comparator<T> mComparator;
+    private final int mCount;
+
+    private DataSnapshot<T> mPartial;
+    private int[] mOrder;
+
+    /**
+     * @param comparator compares the values of the rows without computing sort keys
+     */
+    ProgressiveSort(SpreadSheetTable<T> table, AnnotationFields field, Comparator<T> comparator, int count) {
+        mTable = table;
+        mModel = table.getDataModel();
+        mCache = table.getSortCache();
+        mField = field;
+        mComparator = comparator;
+        mCount = count;
+    }
+
+    /**
+     * Moves the first {@link #getCount()} rows of the order to the top, the others keep their order.
+     *
+     * @return the partially sorted data, null if the data changed meanwhile
+     */
+    public DataSnapshot<T> start() {
+        DataSnapshot<T> data = mModel.publish();
+        int count = Math.min(mCount, data.size());
+        Integer[] top = select(data, count);
+
+        boolean[] selected = new boolean[data.size()];
+        int[] rowIds = new int[data.size()];
+        int index = 0;
+        for (Integer position : top) {
+            selected[position] = true;
+            rowIds[index++] = data.get(position).mRowId;
+        }
+        for (int position = 0; position < data.size(); position++) {
+            if (!selected[position]) {
+                rowIds[index++] = data.get(position).mRowId;
+            }
+        }
+
+        mPartial = mModel.reorder(rowIds);
+        return mPartial;
+    }
+
+    /**
+     * Orders the rows after the first ones, safe to call from any thread.
+     */
+    public void run() {
+        DataSnapshot<T> partial = mPartial;
+        int count = Math.min(mCount, partial.size());
+
+        List<T> rest = partial.subList(count, partial.size());
+        Object[] items = rest.toArray();
+        Arrays.sort(items, (Comparator) mTable.sortBy(mField));
+
+        int[] order = new int[partial.size()];
+        for (int i = 0; i < count; i++) {
+            order[i] = partial.get(i).mRowId;
+        }
+        for (int i = 0; i < items.length; i++) {
+            order[count + i] = ((SpreadSheetData) items[i]).mRowId;
+        }
+        mOrder = order;
+    }
+
+    /**
+     * Applies the order computed by {@link #run()}.
+     *
+     * @return the sorted data, null if the data changed since {@link #start()}
+     */
+    public DataSnapshot<T> finish() {
+        DataSnapshot<T> published = mModel.getPublished();
+        if (mOrder == null || published.getGeneration() != mPartial.getGeneration()
+                || published.getEvictedCount() != mPartial.getEvictedCount()) {
+            return null;
+        }
+
+        DataSnapshot<T> sorted = mModel.reorder(mOrder);
+        if (sorted != null) {
+            mCache.put(mField, mTable.valueComparator(mField), sorted);
+        }
+        return sorted;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public AnnotationFields getField() {
+        return mField;
+    }
+
+    public DataSnapshot<T> getPartial() {
+        return mPartial;
+    }
+
+    /**
+     * Positions of the `count` first rows, in order. Ties keep the data order.
+     */
+    private Integer[] select(final DataSnapshot<T> data, int count) {
+        final Comparator<Integer> ascending = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                int result = mComparator.compare(data.get(lhs), data.get(rhs));
+                return result != 0 ? result : lhs.compareTo(rhs);
+            }
+        };
+
+        Integer[] top = new Integer[count];
+        if (count == 0) {
+            return top;
+        }
+
+        // Max-heap of the smallest rows seen so far
+        PriorityQueue<Integer> heap = new PriorityQueue<>(count, Collections.reverseOrder(ascending));
+        for (int position = 0; position < data.size(); position++) {
+            if (heap.size() < count) {
+                heap.add(position);
+            } else if (ascending.compare(position, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(position);
+            }
+        }
+
+        heap.toArray(top);
+        Arrays.sort(top, ascending);
+        return top;
+    }
+
+}
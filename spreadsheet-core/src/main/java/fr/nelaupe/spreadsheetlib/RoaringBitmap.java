@@ -0,0 +1,493 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Compressed bitmap of non negative ints in the roaring layout: the values are
+ * split on their high 16 bits into chunks, each stored as a sorted array while
+ * it holds at most {@value #ARRAY_MAX} values and as a 65536 bit bitmap above.
+ * Set operations return new bitmaps and never modify their operands.
+ */
+@SuppressWarnings("unused")
+public class RoaringBitmap {
+
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] mKeys;
+    private Object[] mContainers;
+    private int mSize;
+
+    public RoaringBitmap() {
+        mKeys = new char[4];
+        mContainers = new Object[4];
+    }
+
+    /**
+     * @return a bitmap holding every value from 0 included to `count` excluded
+     */
+    public static RoaringBitmap range(int count) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int high = 0; (high << 16) < count; high++) {
+            int size = Math.min(1 << 16, count - (high << 16));
+            bitmap.append((char) high, size > ARRAY_MAX ? bitmapRange(size) : arrayRange(size));
+        }
+        return bitmap;
+    }
+
+    public boolean contains(int value) {
+        int index = indexOf(highBits(value));
+        return index >= 0 && containerContains(mContainers[index], (char) value);
+    }
+
+    public void add(int value) {
+        char high = highBits(value);
+        int index = indexOf(high);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, high, new ArrayContainer());
+        }
+        mContainers[index] = containerAdd(mContainers[index], (char) value);
+    }
+
+    public void remove(int value) {
+        int index = indexOf(highBits(value));
+        if (index < 0) return;
+
+        Object container = containerRemove(mContainers[index], (char) value);
+        if (cardinality(container) == 0) {
+            System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index - 1);
+            System.arraycopy(mContainers, index + 1, mContainers, index, mSize - index - 1);
+            mContainers[--mSize] = null;
+        } else {
+            mContainers[index] = container;
+        }
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < mSize; i++) {
+            cardinality += cardinality(mContainers[i]);
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return the approximate memory held by the bitmap
+     */
+    public long getSizeInBytes() {
+        long bytes = mKeys.length * 2 + mContainers.length * 4;
+        for (int i = 0; i < mSize; i++) {
+            Object container = mContainers[i];
+            bytes += container instanceof ArrayContainer ? 16 + ((ArrayContainer) container).values.length * 2 : 16 + WORDS * 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[getCardinality()];
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            int high = mKeys[i] << 16;
+            Object container = mContainers[i];
+            if (container instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) container;
+                for (int j = 0; j < array.size; j++) {
+                    values[count++] = high | array.values[j];
+                }
+            } else {
+                long[] words = ((BitmapContainer) container).words;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        values[count++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    public static RoaringBitmap and(RoaringBitmap lhs, RoaringBitmap rhs) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < lhs.mSize && j < rhs.mSize) {
+            if (lhs.mKeys[i] < rhs.mKeys[j]) {
+                i++;
+            } else if (lhs.mKeys[i] > rhs.mKeys[j]) {
+                j++;
+            } else {
+                Object container = and(lhs.mContainers[i], rhs.mContainers[j]);
+                if (cardinality(container) != 0) {
+                    result.append(lhs.mKeys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public static RoaringBitmap or(RoaringBitmap lhs, RoaringBitmap rhs) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < lhs.mSize || j < rhs.mSize) {
+            if (j == rhs.mSize || (i < lhs.mSize && lhs.mKeys[i] < rhs.mKeys[j])) {
+                result.append(lhs.mKeys[i], copy(lhs.mContainers[i]));
+                i++;
+            } else if (i == lhs.mSize || lhs.mKeys[i] > rhs.mKeys[j]) {
+                result.append(rhs.mKeys[j], copy(rhs.mContainers[j]));
+                j++;
+            } else {
+                result.append(lhs.mKeys[i], or(lhs.mContainers[i], rhs.mContainers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the values of `lhs` that are not in `rhs`
+     */
+    public static RoaringBitmap andNot(RoaringBitmap lhs, RoaringBitmap rhs) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < lhs.mSize; i++) {
+            while (j < rhs.mSize && rhs.mKeys[j] < lhs.mKeys[i]) {
+                j++;
+            }
+            Object container = (j < rhs.mSize && rhs.mKeys[j] == lhs.mKeys[i])
+                    ? andNot(lhs.mContainers[i], rhs.mContainers[j])
+                    : copy(lhs.mContainers[i]);
+            if (cardinality(container) != 0) {
+                result.append(lhs.mKeys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /*
+     *  Chunks
+     */
+    private static char highBits(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private int indexOf(char high) {
+        // Appends are the common case, check the last chunk first
+        if (mSize > 0 && mKeys[mSize - 1] == high) {
+            return mSize - 1;
+        }
+
+        int low = 0;
+        int top = mSize - 1;
+        while (low <= top) {
+            int middle = (low + top) >>> 1;
+            if (mKeys[middle] < high) {
+                low = middle + 1;
+            } else if (mKeys[middle] > high) {
+                top = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insert(int index, char high, Object container) {
+        if (mSize == mKeys.length) {
+            char[] keys = new char[mSize * 2];
+            System.arraycopy(mKeys, 0, keys, 0, mSize);
+            mKeys = keys;
+            Object[] containers = new Object[mSize * 2];
+            System.arraycopy(mContainers, 0, containers, 0, mSize);
+            mContainers = containers;
+        }
+        System.arraycopy(mKeys, index, mKeys, index + 1, mSize - index);
+        System.arraycopy(mContainers, index, mContainers, index + 1, mSize - index);
+        mKeys[index] = high;
+        mContainers[index] = container;
+        mSize++;
+    }
+
+    private void append(char high, Object container) {
+        insert(mSize, high, container);
+    }
+
+    /*
+     *  Containers
+     */
+    private static final class ArrayContainer {
+        char[] values = new char[4];
+        int size;
+    }
+
+    private static final class BitmapContainer {
+        final long[] words = new long[WORDS];
+        int cardinality;
+    }
+
+    private static int cardinality(Object container) {
+        return container instanceof ArrayContainer ? ((ArrayContainer) container).size : ((BitmapContainer) container).cardinality;
+    }
+
+    private static boolean containerContains(Object container, char value) {
+        if (container instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) container;
+            return binarySearch(array.values, array.size, value) >= 0;
+        }
+        return (((BitmapContainer) container).words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    private static Object containerAdd(Object container, char value) {
+        if (container instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) container;
+            int index = binarySearch(array.values, array.size, value);
+            if (index >= 0) return array;
+            if (array.size == ARRAY_MAX) {
+                BitmapContainer bitmap = toBitmap(array);
+                return containerAdd(bitmap, value);
+            }
+
+            index = -index - 1;
+            if (array.size == array.values.length) {
+                char[] values = new char[Math.min(ARRAY_MAX, array.size * 2)];
+                System.arraycopy(array.values, 0, values, 0, array.size);
+                array.values = values;
+            }
+            System.arraycopy(array.values, index, array.values, index + 1, array.size - index);
+            array.values[index] = value;
+            array.size++;
+            return array;
+        }
+
+        BitmapContainer bitmap = (BitmapContainer) container;
+        long bit = 1L << value;
+        if ((bitmap.words[value >>> 6] & bit) == 0) {
+            bitmap.words[value >>> 6] |= bit;
+            bitmap.cardinality++;
+        }
+        return bitmap;
+    }
+
+    private static Object containerRemove(Object container, char value) {
+        if (container instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) container;
+            int index = binarySearch(array.values, array.size, value);
+            if (index >= 0) {
+                System.arraycopy(array.values, index + 1, array.values, index, array.size - index - 1);
+                array.size--;
+            }
+            return array;
+        }
+
+        BitmapContainer bitmap = (BitmapContainer) container;
+        long bit = 1L << value;
+        if ((bitmap.words[value >>> 6] & bit) != 0) {
+            bitmap.words[value >>> 6] &= ~bit;
+            bitmap.cardinality--;
+        }
+        return bitmap.cardinality > ARRAY_MAX ? bitmap : toArray(bitmap);
+    }
+
+    private static Object and(Object lhs, Object rhs) {
+        if (rhs instanceof ArrayContainer && !(lhs instanceof ArrayContainer)) {
+            return and(rhs, lhs);
+        }
+        if (lhs instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) lhs;
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, array.size)];
+            for (int i = 0; i < array.size; i++) {
+                if (containerContains(rhs, array.values[i])) {
+                    result.values[result.size++] = array.values[i];
+                }
+            }
+            return result;
+        }
+
+        BitmapContainer result = new BitmapContainer();
+        long[] l = ((BitmapContainer) lhs).words;
+        long[] r = ((BitmapContainer) rhs).words;
+        for (int w = 0; w < WORDS; w++) {
+            result.words[w] = l[w] & r[w];
+            result.cardinality += Long.bitCount(result.words[w]);
+        }
+        return result.cardinality > ARRAY_MAX ? result : toArray(result);
+    }
+
+    private static Object or(Object lhs, Object rhs) {
+        if (lhs instanceof ArrayContainer && rhs instanceof ArrayContainer
+                && ((ArrayContainer) lhs).size + ((ArrayContainer) rhs).size <= ARRAY_MAX) {
+            ArrayContainer l = (ArrayContainer) lhs;
+            ArrayContainer r = (ArrayContainer) rhs;
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, l.size + r.size)];
+            int i = 0;
+            int j = 0;
+            while (i < l.size || j < r.size) {
+                char value;
+                if (j == r.size || (i < l.size && l.values[i] < r.values[j])) {
+                    value = l.values[i++];
+                } else if (i == l.size || l.values[i] > r.values[j]) {
+                    value = r.values[j++];
+                } else {
+                    value = l.values[i++];
+                    j++;
+                }
+                result.values[result.size++] = value;
+            }
+            return result;
+        }
+
+        BitmapContainer result = toBitmap(lhs);
+        if (rhs instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) rhs;
+            for (int i = 0; i < array.size; i++) {
+                containerAdd(result, array.values[i]);
+            }
+        } else {
+            long[] r = ((BitmapContainer) rhs).words;
+            result.cardinality = 0;
+            for (int w = 0; w < WORDS; w++) {
+                result.words[w] |= r[w];
+                result.cardinality += Long.bitCount(result.words[w]);
+            }
+        }
+        return result.cardinality > ARRAY_MAX ? result : toArray(result);
+    }
+
+    private static Object andNot(Object lhs, Object rhs) {
+        if (lhs instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) lhs;
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, array.size)];
+            for (int i = 0; i < array.size; i++) {
+                if (!containerContains(rhs, array.values[i])) {
+                    result.values[result.size++] = array.values[i];
+                }
+            }
+            return result;
+        }
+
+        BitmapContainer result = toBitmap(lhs);
+        if (rhs instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) rhs;
+            for (int i = 0; i < array.size; i++) {
+                containerRemove(result, array.values[i]);
+            }
+        } else {
+            long[] r = ((BitmapContainer) rhs).words;
+            result.cardinality = 0;
+            for (int w = 0; w < WORDS; w++) {
+                result.words[w] &= ~r[w];
+                result.cardinality += Long.bitCount(result.words[w]);
+            }
+        }
+        return result.cardinality > ARRAY_MAX ? result : toArray(result);
+    }
+
+    private static Object copy(Object container) {
+        if (container instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) container;
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, array.size)];
+            System.arraycopy(array.values, 0, result.values, 0, array.size);
+            result.size = array.size;
+            return result;
+        }
+        return toBitmap(container);
+    }
+
+    private static BitmapContainer toBitmap(Object container) {
+        BitmapContainer result = new BitmapContainer();
+        if (container instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) container;
+            for (int i = 0; i < array.size; i++) {
+                result.words[array.values[i] >>> 6] |= 1L << array.values[i];
+            }
+            result.cardinality = array.size;
+        } else {
+            BitmapContainer bitmap = (BitmapContainer) container;
+            System.arraycopy(bitmap.words, 0, result.words, 0, WORDS);
+            result.cardinality = bitmap.cardinality;
+        }
+        return result;
+    }
+
+    private static ArrayContainer toArray(BitmapContainer bitmap) {
+        ArrayContainer result = new ArrayContainer();
+        result.values = new char[Math.max(1, bitmap.cardinality)];
+        for (int w = 0; w < WORDS; w++) {
+            long word = bitmap.words[w];
+            while (word != 0) {
+                result.values[result.size++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    private static ArrayContainer arrayRange(int size) {
+        ArrayContainer result = new ArrayContainer();
+        result.values = new char[Math.max(1, size)];
+        for (int i = 0; i < size; i++) {
+            result.values[i] = (char) i;
+        }
+        result.size = size;
+        return result;
+    }
+
+    private static BitmapContainer bitmapRange(int size) {
+        BitmapContainer result = new BitmapContainer();
+        for (int i = 0; i < size >>> 6; i++) {
+            result.words[i] = -1L;
+        }
+        if ((size & 63) != 0) {
+            result.words[size >>> 6] = (1L << size) - 1;
+        }
+        result.cardinality = size;
+        return result;
+    }
+
+    private static int binarySearch(char[] values, int size, char value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else if (values[middle] > value) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+}
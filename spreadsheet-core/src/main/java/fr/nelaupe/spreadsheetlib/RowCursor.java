@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Reusable, forward or random access view of one row at a time, with typed
+ * reads of its columns. Reading a primitive column through the matching
+ * getter does not allocate. A cursor is used by one thread at a time.
+ */
+@SuppressWarnings("unused")
+public interface RowCursor {
+
+    int getCount();
+
+    int getColumnCount();
+
+    CellInformation getColumn(int column);
+
+    AnnotationFields.BindType getType(int column);
+
+    /**
+     * @return false if the position is out of the rows, the cursor is not moved then
+     */
+    boolean moveToPosition(int position);
+
+    int getPosition();
+
+    boolean isNull(int column);
+
+    int getInt(int column);
+
+    long getLong(int column);
+
+    float getFloat(int column);
+
+    double getDouble(int column);
+
+    boolean getBoolean(int column);
+
+    /**
+     * @return the text of a {@link AnnotationFields.BindType#TEXT} column, the
+     * value as text for the others, null if the value is null
+     */
+    String getString(int column);
+
+    Object getObject(int column);
+
+}
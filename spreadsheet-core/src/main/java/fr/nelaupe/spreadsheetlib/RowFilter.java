@@ -0,0 +1,1018 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filter on the rows of a {@link SpreadSheetTable}, built from column
+ * conditions combined with {@link #and}, {@link #or} and {@link #not}.
+ * {@link #compile(List)} turns it into predicates evaluated in batches: a
+ * condition on a column with a {@link BitmapIndex} is answered by the index,
+ * the others read the {@link ColumnVector} of the column. Conditions answered
+ * by indexes are combined as bitmaps before any row is tested. Columns are
+ * identified by their index in {@link SpreadSheetTable#getFields()}.
+ * Null values only match {@link #isNull}, {@link #equalTo} and {@link #in} a null,
+ * neither a condition nor its {@link #not}.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public abstract class RowFilter {
+
+    abstract RowPredicate predicate(List<AnnotationFields> fields);
+
+    /**
+     * @return the predicate of the opposite filter
+     */
+    abstract RowPredicate negated(List<AnnotationFields> fields);
+
+    /**
+     * @return the filter bound to these columns, ready to be evaluated
+     */
+    public CompiledFilter compile(List<AnnotationFields> fields) {
+        return new CompiledFilter(this, predicate(fields));
+    }
+
+    public static RowFilter equalTo(int column, final Object value) {
+        if (value == null) {
+            return isNull(column);
+        }
+        return new ColumnFilter(column) {
+            @Override
+            RoaringBitmap lookup(BitmapIndex index) {
+                return index.equalTo(value);
+            }
+
+            @Override
+            RowPredicate vector(ColumnVector vector) {
+                switch (vector.getKind()) {
+                    case LONG:
+                    case DOUBLE:
+                        return range(vector, value, true, value, true);
+                    default:
+                        return new ObjectEqualPredicate(vector, value);
+                }
+            }
+
+            @Override
+            RowPredicate dictionary(DictionaryColumn dictionary) {
+                return new DictionaryPredicate(dictionary, new Object[]{value});
+            }
+        };
+    }
+
+    public static RowFilter in(int column, Object... values) {
+        final Set<Object> set = new HashSet<>(Arrays.asList(values));
+        return new ColumnFilter(column) {
+            @Override
+            RoaringBitmap lookup(BitmapIndex index) {
+                return index.in(set);
+            }
+
+            @Override
+            RowPredicate vector(ColumnVector vector) {
+                return new InPredicate(vector, set);
+            }
+
+            @Override
+            RowPredicate dictionary(DictionaryColumn dictionary) {
+                return new DictionaryPredicate(dictionary, set.toArray());
+            }
+        };
+    }
+
+    /**
+     * Values between the bounds included, a null bound is open.
+     */
+    public static RowFilter between(int column, Comparable from, Comparable to) {
+        return range(column, from, true, to, true);
+    }
+
+    public static RowFilter greaterThan(int column, Comparable value) {
+        return range(column, value, false, null, true);
+    }
+
+    public static RowFilter atLeast(int column, Comparable value) {
+        return range(column, value, true, null, true);
+    }
+
+    public static RowFilter lessThan(int column, Comparable value) {
+        return range(column, null, true, value, false);
+    }
+
+    public static RowFilter atMost(int column, Comparable value) {
+        return range(column, null, true, value, true);
+    }
+
+    /**
+     * Values whose text holds this one, ignoring case.
+     */
+    public static RowFilter contains(int column, final String text) {
+        return new ColumnFilter(column) {
+            @Override
+            RoaringBitmap lookup(BitmapIndex index) {
+                Set<Object> values = new HashSet<>();
+                for (Object value : index.getValues()) {
+                    if (value != null && containsIgnoreCase(value.toString(), text)) {
+                        values.add(value);
+                    }
+                }
+                return index.in(values);
+            }
+
+            @Override
+            RowPredicate vector(ColumnVector vector) {
+                return new ContainsPredicate(vector, text);
+            }
+        };
+    }
+
+    public static RowFilter isNull(int column) {
+        return nullFilter(column, true);
+    }
+
+    public static RowFilter isNotNull(int column) {
+        return nullFilter(column, false);
+    }
+
+    public static RowFilter and(final RowFilter... filters) {
+        return new RowFilter() {
+            @Override
+            RowPredicate predicate(List<AnnotationFields> fields) {
+                return new AndPredicate(compileAll(filters, fields));
+            }
+
+            @Override
+            RowPredicate negated(List<AnnotationFields> fields) {
+                return new OrPredicate(negateAll(filters, fields));
+            }
+        };
+    }
+
+    public static RowFilter or(final RowFilter... filters) {
+        return new RowFilter() {
+            @Override
+            RowPredicate predicate(List<AnnotationFields> fields) {
+                return new OrPredicate(compileAll(filters, fields));
+            }
+
+            @Override
+            RowPredicate negated(List<AnnotationFields> fields) {
+                return new AndPredicate(negateAll(filters, fields));
+            }
+        };
+    }
+
+    public static RowFilter not(final RowFilter filter) {
+        return new RowFilter() {
+            @Override
+            RowPredicate predicate(List<AnnotationFields> fields) {
+                return filter.negated(fields);
+            }
+
+            @Override
+            RowPredicate negated(List<AnnotationFields> fields) {
+                return filter.predicate(fields);
+            }
+        };
+    }
+
+    private static RowPredicate[] compileAll(RowFilter[] filters, List<AnnotationFields> fields) {
+        RowPredicate[] predicates = new RowPredicate[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            predicates[i] = filters[i].predicate(fields);
+        }
+        return predicates;
+    }
+
+    private static RowPredicate[] negateAll(RowFilter[] filters, List<AnnotationFields> fields) {
+        RowPredicate[] predicates = new RowPredicate[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            predicates[i] = filters[i].negated(fields);
+        }
+        return predicates;
+    }
+
+    private static RowFilter range(int column, final Comparable from, final boolean fromInclusive, final Comparable to, final boolean toInclusive) {
+        return new ColumnFilter(column) {
+            @Override
+            RoaringBitmap lookup(BitmapIndex index) {
+                RoaringBitmap result = index.between(from, to);
+                if (from != null && !fromInclusive) {
+                    result = RoaringBitmap.andNot(result, index.equalTo(from));
+                }
+                if (to != null && !toInclusive) {
+                    result = RoaringBitmap.andNot(result, index.equalTo(to));
+                }
+                return result;
+            }
+
+            @Override
+            RowPredicate vector(ColumnVector vector) {
+                return range(vector, from, fromInclusive, to, toInclusive);
+            }
+        };
+    }
+
+    private static RowFilter nullFilter(final int column, final boolean isNull) {
+        return new ColumnFilter(column) {
+            @Override
+            RoaringBitmap lookup(BitmapIndex index) {
+                return isNull ? index.equalTo(null) : index.between(null, null);
+            }
+
+            @Override
+            RowPredicate vector(ColumnVector vector) {
+                return new NullPredicate(vector, isNull);
+            }
+
+            @Override
+            RowPredicate negated(List<AnnotationFields> fields) {
+                return nullFilter(column, !isNull).predicate(fields);
+            }
+        };
+    }
+
+    private static RowPredicate range(ColumnVector vector, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        switch (vector.getKind()) {
+            case LONG: {
+                long min = Long.MIN_VALUE;
+                long max = Long.MAX_VALUE;
+                if (from != null) {
+                    if (!(from instanceof Number || from instanceof Boolean)) return NONE;
+                    if (isIntegral(from)) {
+                        long value = toLong(from);
+                        if (!fromInclusive && value == Long.MAX_VALUE) return NONE;
+                        min = fromInclusive ? value : value + 1;
+                    } else {
+                        double value = ((Number) from).doubleValue();
+                        min = (long) (fromInclusive ? Math.ceil(value) : Math.floor(value) + 1);
+                    }
+                }
+                if (to != null) {
+                    if (!(to instanceof Number || to instanceof Boolean)) return NONE;
+                    if (isIntegral(to)) {
+                        long value = toLong(to);
+                        if (!toInclusive && value == Long.MIN_VALUE) return NONE;
+                        max = toInclusive ? value : value - 1;
+                    } else {
+                        double value = ((Number) to).doubleValue();
+                        max = (long) (toInclusive ? Math.floor(value) : Math.ceil(value) - 1);
+                    }
+                }
+                return min > max ? NONE : new LongRangePredicate(vector, min, max);
+            }
+            case DOUBLE:
+                if (from != null && !(from instanceof Number)) return NONE;
+                if (to != null && !(to instanceof Number)) return NONE;
+                return new DoubleRangePredicate(vector,
+                        from == null ? Double.NEGATIVE_INFINITY : ((Number) from).doubleValue(), fromInclusive,
+                        to == null ? Double.POSITIVE_INFINITY : ((Number) to).doubleValue(), toInclusive);
+            default:
+                return new ObjectRangePredicate(vector, (Comparable) from, fromInclusive, (Comparable) to, toInclusive);
+        }
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Boolean;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : ((Number) value).longValue();
+    }
+
+    private static boolean containsIgnoreCase(char[] value, int length, String text) {
+        int last = length - text.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < text.length() && Character.toLowerCase(value[start + i]) == Character.toLowerCase(text.charAt(i))) {
+                i++;
+            }
+            if (i == text.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsIgnoreCase(String value, String text) {
+        int last = value.length() - text.length();
+        for (int start = 0; start <= last; start++) {
+            if (value.regionMatches(true, start, text, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final RowPredicate NONE = new RowPredicate() {
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) {
+            return null;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            Arrays.fill(matches, 0, count, false);
+        }
+    };
+
+    private abstract static class ColumnFilter extends RowFilter {
+
+        private final int mColumn;
+
+        ColumnFilter(int column) {
+            mColumn = column;
+        }
+
+        /**
+         * @return the matching row ids, null if the index cannot answer
+         */
+        abstract RoaringBitmap lookup(BitmapIndex index);
+
+        abstract RowPredicate vector(ColumnVector vector);
+
+        /**
+         * @return the predicate comparing the codes of a dictionary column, null to read the vector
+         */
+        RowPredicate dictionary(DictionaryColumn dictionary) {
+            return null;
+        }
+
+        @Override
+        RowPredicate predicate(List<AnnotationFields> fields) {
+            AnnotationFields field = fields.get(mColumn);
+            RowPredicate scan = null;
+            if (field.getDictionary() != null && field.getColumnVector().getKind() == ColumnVector.Kind.OBJECT) {
+                scan = dictionary(field.getDictionary());
+            }
+            if (scan == null) {
+                scan = vector(field.getColumnVector());
+            }
+            if (field.getBitmapIndex() != null) {
+                return new IndexPredicate(field.getBitmapIndex(), this, scan);
+            }
+            return scan;
+        }
+
+        /**
+         * Null values match neither the condition nor its opposite.
+         */
+        @Override
+        RowPredicate negated(List<AnnotationFields> fields) {
+            return new AndPredicate(new RowPredicate[]{isNotNull(mColumn).predicate(fields), new NotPredicate(predicate(fields))});
+        }
+    }
+
+    private static final class IndexPredicate implements RowPredicate {
+
+        private final BitmapIndex mIndex;
+        private final ColumnFilter mFilter;
+        private final RowPredicate mFallback;
+
+        IndexPredicate(BitmapIndex index, ColumnFilter filter, RowPredicate fallback) {
+            mIndex = index;
+            mFilter = filter;
+            mFallback = fallback;
+        }
+
+        /**
+         * @return the matching row ids, or the state of the fallback when the index cannot answer
+         */
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+            mIndex.update(data);
+            RoaringBitmap rowIds = mFilter.lookup(mIndex);
+            return rowIds != null ? rowIds : mFallback.prepare(data);
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            // The fallback reads a column vector or dictionary, its state is never a bitmap
+            if (!(state instanceof RoaringBitmap)) {
+                mFallback.test(state, rowIds, count, matches);
+                return;
+            }
+            RoaringBitmap bitmap = (RoaringBitmap) state;
+            for (int i = 0; i < count; i++) {
+                matches[i] = bitmap.contains(rowIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Equality on a dictionary column, the codes of the rows are compared with the codes of the values.
+     */
+    private static final class DictionaryPredicate implements RowPredicate {
+
+        private final DictionaryColumn mDictionary;
+        private final Object[] mValues;
+
+        DictionaryPredicate(DictionaryColumn dictionary, Object[] values) {
+            mDictionary = dictionary;
+            mValues = values;
+        }
+
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+            int[] valueCodes = new int[mValues.length];
+            int[] rowCodes = mDictionary.encode(data, mValues, valueCodes);
+
+            int length = 0;
+            for (int code : valueCodes) {
+                length = Math.max(length, code + 1);
+            }
+            boolean[] accepted = new boolean[length];
+            for (int code : valueCodes) {
+                if (code != DictionaryColumn.NO_CODE) {
+                    accepted[code] = true;
+                }
+            }
+            return new Codes(rowCodes, accepted);
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            Codes codes = (Codes) state;
+            int[] rowCodes = codes.mRowCodes;
+            boolean[] accepted = codes.mAccepted;
+            for (int i = 0; i < count; i++) {
+                int rowId = rowIds[i];
+                int code = rowId < rowCodes.length ? rowCodes[rowId] : DictionaryColumn.NO_CODE;
+                matches[i] = code >= 0 && code < accepted.length && accepted[code];
+            }
+        }
+
+        private static final class Codes {
+
+            final int[] mRowCodes;
+            final boolean[] mAccepted;
+
+            Codes(int[] rowCodes, boolean[] accepted) {
+                mRowCodes = rowCodes;
+                mAccepted = accepted;
+            }
+        }
+    }
+
+    private abstract static class VectorPredicate implements RowPredicate {
+
+        final ColumnVector mVector;
+
+        VectorPredicate(ColumnVector vector) {
+            mVector = vector;
+        }
+
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+            mVector.load(data);
+            return mVector.values();
+        }
+    }
+
+    private static final class LongRangePredicate extends VectorPredicate {
+
+        private final long mMin;
+        private final long mMax;
+
+        LongRangePredicate(ColumnVector vector, long min, long max) {
+            super(vector);
+            mMin = min;
+            mMax = max;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            ColumnVector.Values vector = (ColumnVector.Values) state;
+            long[] values = vector.longs;
+            BitSet nulls = vector.nulls;
+            for (int i = 0; i < count; i++) {
+                int rowId = rowIds[i];
+                long value = values[rowId];
+                matches[i] = value >= mMin && value <= mMax && !nulls.get(rowId);
+            }
+        }
+    }
+
+    private static final class DoubleRangePredicate extends VectorPredicate {
+
+        private final double mFrom;
+        private final boolean mFromInclusive;
+        private final double mTo;
+        private final boolean mToInclusive;
+
+        DoubleRangePredicate(ColumnVector vector, double from, boolean fromInclusive, double to, boolean toInclusive) {
+            super(vector);
+            mFrom = from;
+            mFromInclusive = fromInclusive;
+            mTo = to;
+            mToInclusive = toInclusive;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            ColumnVector.Values vector = (ColumnVector.Values) state;
+            double[] values = vector.doubles;
+            BitSet nulls = vector.nulls;
+            for (int i = 0; i < count; i++) {
+                int rowId = rowIds[i];
+                double value = values[rowId];
+                matches[i] = (mFromInclusive ? value >= mFrom : value > mFrom)
+                        && (mToInclusive ? value <= mTo : value < mTo)
+                        && !nulls.get(rowId);
+            }
+        }
+    }
+
+    private static final class ObjectRangePredicate extends VectorPredicate {
+
+        private final Comparable mFrom;
+        private final boolean mFromInclusive;
+        private final Comparable mTo;
+        private final boolean mToInclusive;
+
+        ObjectRangePredicate(ColumnVector vector, Comparable from, boolean fromInclusive, Comparable to, boolean toInclusive) {
+            super(vector);
+            mFrom = from;
+            mFromInclusive = fromInclusive;
+            mTo = to;
+            mToInclusive = toInclusive;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            ColumnVector.Values vector = (ColumnVector.Values) state;
+            Object[] values = vector.objects;
+            for (int i = 0; i < count; i++) {
+                Object value = values[rowIds[i]];
+                boolean match = value != null;
+                if (match && mFrom != null) {
+                    int compare = mFrom.compareTo(value);
+                    match = mFromInclusive ? compare <= 0 : compare < 0;
+                }
+                if (match && mTo != null) {
+                    int compare = mTo.compareTo(value);
+                    match = mToInclusive ? compare >= 0 : compare > 0;
+                }
+                matches[i] = match;
+            }
+        }
+    }
+
+    private static final class ObjectEqualPredicate extends VectorPredicate {
+
+        private final Object mValue;
+
+        ObjectEqualPredicate(ColumnVector vector, Object value) {
+            super(vector);
+            mValue = value;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            ColumnVector.Values vector = (ColumnVector.Values) state;
+            Object[] values = vector.objects;
+            for (int i = 0; i < count; i++) {
+                matches[i] = mValue.equals(values[rowIds[i]]);
+            }
+        }
+    }
+
+    private static final class InPredicate extends VectorPredicate {
+
+        private final Set<Object> mValues;
+        private final boolean mNull;
+        private final long[] mLongs;
+        private final double[] mDoubles;
+
+        InPredicate(ColumnVector vector, Set<Object> values) {
+            super(vector);
+            mValues = values;
+            mNull = values.contains(null);
+
+            long[] longs = new long[values.size()];
+            double[] doubles = new double[values.size()];
+            int longCount = 0;
+            int doubleCount = 0;
+            for (Object value : values) {
+                if (value instanceof Number || value instanceof Boolean) {
+                    if (isIntegral(value)) {
+                        longs[longCount++] = toLong(value);
+                    } else {
+                        double number = ((Number) value).doubleValue();
+                        if (number == Math.rint(number) && !Double.isInfinite(number)) {
+                            longs[longCount++] = (long) number;
+                        }
+                    }
+                    doubles[doubleCount++] = value instanceof Boolean ? toLong(value) : ((Number) value).doubleValue();
+                }
+            }
+            mLongs = new long[longCount];
+            mDoubles = new double[doubleCount];
+            System.arraycopy(longs, 0, mLongs, 0, longCount);
+            System.arraycopy(doubles, 0, mDoubles, 0, doubleCount);
+            Arrays.sort(mLongs);
+            Arrays.sort(mDoubles);
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            ColumnVector.Values vector = (ColumnVector.Values) state;
+            BitSet nulls = vector.nulls;
+            switch (mVector.getKind()) {
+                case LONG: {
+                    long[] values = vector.longs;
+                    for (int i = 0; i < count; i++) {
+                        int rowId = rowIds[i];
+                        matches[i] = nulls.get(rowId) ? mNull : Arrays.binarySearch(mLongs, values[rowId]) >= 0;
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double[] values = vector.doubles;
+                    for (int i = 0; i < count; i++) {
+                        int rowId = rowIds[i];
+                        matches[i] = nulls.get(rowId) ? mNull : Arrays.binarySearch(mDoubles, values[rowId]) >= 0;
+                    }
+                    break;
+                }
+                default: {
+                    Object[] values = vector.objects;
+                    for (int i = 0; i < count; i++) {
+                        matches[i] = mValues.contains(values[rowIds[i]]);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class ContainsPredicate extends VectorPredicate {
+
+        private final String mText;
+        // Numbers are formatted in a buffer of the evaluating thread, the way they are displayed
+        private final ThreadLocal<char[]> mBuffer = new ThreadLocal<char[]>() {
+            @Override
+            protected char[] initialValue() {
+                return new char[CharFormatter.BUFFER_SIZE];
+            }
+        };
+
+        ContainsPredicate(ColumnVector vector, String text) {
+            super(vector);
+            mText = text;
+        }
+
+        /**
+         * @return the values, and for an object column the values other than strings
+         * whose text holds the text, so each of them is converted once
+         */
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+            ColumnVector.Values vector = (ColumnVector.Values) super.prepare(data);
+            if (mVector.getKind() != ColumnVector.Kind.OBJECT) {
+                return vector;
+            }
+
+            Set<Object> converted = new HashSet<>();
+            Set<Object> matching = new HashSet<>();
+            int rowIdCount = Math.min(data.getRowIdCount(), vector.objects.length);
+            for (int rowId = 0; rowId < rowIdCount; rowId++) {
+                Object value = vector.objects[rowId];
+                if (value == null || value instanceof String || !converted.add(value)) continue;
+
+                if (containsIgnoreCase(value.toString(), mText)) {
+                    matching.add(value);
+                }
+            }
+            return new Texts(vector, matching);
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            switch (mVector.getKind()) {
+                case LONG: {
+                    ColumnVector.Values vector = (ColumnVector.Values) state;
+                    char[] buffer = mBuffer.get();
+                    for (int i = 0; i < count; i++) {
+                        int rowId = rowIds[i];
+                        matches[i] = !vector.nulls.get(rowId)
+                                && containsIgnoreCase(buffer, CharFormatter.formatLong(vector.longs[rowId], buffer), mText);
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    ColumnVector.Values vector = (ColumnVector.Values) state;
+                    char[] buffer = mBuffer.get();
+                    for (int i = 0; i < count; i++) {
+                        int rowId = rowIds[i];
+                        matches[i] = !vector.nulls.get(rowId)
+                                && containsIgnoreCase(buffer, CharFormatter.formatDouble(vector.doubles[rowId], CharFormatter.DOUBLE_DIGITS, buffer), mText);
+                    }
+                    break;
+                }
+                default: {
+                    Texts texts = (Texts) state;
+                    Object[] values = texts.mVector.objects;
+                    for (int i = 0; i < count; i++) {
+                        Object value = values[rowIds[i]];
+                        matches[i] = value instanceof String ? containsIgnoreCase((String) value, mText) : texts.mMatching.contains(value);
+                    }
+                    break;
+                }
+            }
+        }
+
+        private static final class Texts {
+
+            final ColumnVector.Values mVector;
+            final Set<Object> mMatching;
+
+            Texts(ColumnVector.Values vector, Set<Object> matching) {
+                mVector = vector;
+                mMatching = matching;
+            }
+        }
+    }
+
+    private static final class NullPredicate extends VectorPredicate {
+
+        private final boolean mNull;
+
+        NullPredicate(ColumnVector vector, boolean isNull) {
+            super(vector);
+            mNull = isNull;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            ColumnVector.Values vector = (ColumnVector.Values) state;
+            BitSet nulls = vector.nulls;
+            for (int i = 0; i < count; i++) {
+                matches[i] = nulls.get(rowIds[i]) == mNull;
+            }
+        }
+    }
+
+    /**
+     * Rows of a bitmap state of another predicate that do not match, null values included.
+     */
+    private static final class Complement {
+
+        final RoaringBitmap mBitmap;
+
+        Complement(RoaringBitmap bitmap) {
+            mBitmap = bitmap;
+        }
+    }
+
+    /**
+     * Tests the rows against a state that is a bitmap or the complement of one.
+     *
+     * @return false if the state is neither
+     */
+    static boolean testBitmap(Object state, int[] rowIds, int count, boolean[] matches) {
+        if (state instanceof RoaringBitmap) {
+            RoaringBitmap bitmap = (RoaringBitmap) state;
+            for (int i = 0; i < count; i++) {
+                matches[i] = bitmap.contains(rowIds[i]);
+            }
+            return true;
+        }
+        if (state instanceof Complement) {
+            RoaringBitmap bitmap = ((Complement) state).mBitmap;
+            for (int i = 0; i < count; i++) {
+                matches[i] = !bitmap.contains(rowIds[i]);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private abstract static class CombinedPredicate implements RowPredicate {
+
+        final RowPredicate[] mPredicates;
+        // Arrays of the evaluating thread, reused from one batch to the next
+        private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>() {
+            @Override
+            protected Batch initialValue() {
+                return new Batch();
+            }
+        };
+
+        CombinedPredicate(RowPredicate[] predicates) {
+            mPredicates = predicates;
+        }
+
+        /**
+         * @return the states of the conditions, or a single bitmap when every condition
+         * was answered by a bitmap and they could be combined
+         */
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+            Object[] states = new Object[mPredicates.length];
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            List<RoaringBitmap> complements = new ArrayList<>();
+            for (int i = 0; i < mPredicates.length; i++) {
+                states[i] = mPredicates[i].prepare(data);
+                if (states[i] instanceof RoaringBitmap) {
+                    bitmaps.add((RoaringBitmap) states[i]);
+                } else if (states[i] instanceof Complement) {
+                    complements.add(((Complement) states[i]).mBitmap);
+                }
+            }
+            if (bitmaps.size() + complements.size() < states.length) {
+                return states;
+            }
+            return combine(bitmaps, complements);
+        }
+
+        /**
+         * @return the bitmap, or its complement, of the rows matching the combination of the
+         * bitmaps and the complements of the others
+         */
+        abstract Object combine(List<RoaringBitmap> bitmaps, List<RoaringBitmap> complements);
+
+        Batch batch(int count) {
+            Batch batch = mBatch.get();
+            if (batch.mSelection.length < count) {
+                batch.mSelection = new int[count];
+                batch.mSelected = new int[count];
+                batch.mResult = new boolean[count];
+            }
+            return batch;
+        }
+
+        static RoaringBitmap and(List<RoaringBitmap> bitmaps) {
+            RoaringBitmap result = bitmaps.get(0);
+            for (int i = 1; i < bitmaps.size(); i++) {
+                result = RoaringBitmap.and(result, bitmaps.get(i));
+            }
+            return result;
+        }
+
+        static RoaringBitmap or(List<RoaringBitmap> bitmaps) {
+            RoaringBitmap result = bitmaps.isEmpty() ? new RoaringBitmap() : bitmaps.get(0);
+            for (int i = 1; i < bitmaps.size(); i++) {
+                result = RoaringBitmap.or(result, bitmaps.get(i));
+            }
+            return result;
+        }
+    }
+
+    private static final class Batch {
+        int[] mSelection = new int[0];
+        int[] mSelected = new int[0];
+        boolean[] mResult = new boolean[0];
+    }
+
+    private static final class AndPredicate extends CombinedPredicate {
+
+        AndPredicate(RowPredicate[] predicates) {
+            super(predicates);
+        }
+
+        @Override
+        Object combine(List<RoaringBitmap> bitmaps, List<RoaringBitmap> complements) {
+            if (bitmaps.isEmpty()) {
+                return new Complement(or(complements));
+            }
+            RoaringBitmap result = and(bitmaps);
+            return complements.isEmpty() ? result : RoaringBitmap.andNot(result, or(complements));
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            if (testBitmap(state, rowIds, count, matches)) return;
+
+            Arrays.fill(matches, 0, count, true);
+            Batch batch = batch(count);
+            int[] selection = batch.mSelection;
+            int[] selected = batch.mSelected;
+            boolean[] result = batch.mResult;
+            int size = count;
+            for (int i = 0; i < count; i++) {
+                selection[i] = i;
+                selected[i] = rowIds[i];
+            }
+
+            // Every condition only tests the rows the previous ones kept
+            Object[] states = (Object[]) state;
+            for (int p = 0; p < mPredicates.length; p++) {
+                if (size == 0) break;
+
+                mPredicates[p].test(states[p], selected, size, result);
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (result[i]) {
+                        selection[kept] = selection[i];
+                        selected[kept] = selected[i];
+                        kept++;
+                    } else {
+                        matches[selection[i]] = false;
+                    }
+                }
+                size = kept;
+            }
+        }
+    }
+
+    private static final class OrPredicate extends CombinedPredicate {
+
+        OrPredicate(RowPredicate[] predicates) {
+            super(predicates);
+        }
+
+        @Override
+        Object combine(List<RoaringBitmap> bitmaps, List<RoaringBitmap> complements) {
+            if (complements.isEmpty()) {
+                return or(bitmaps);
+            }
+            // Rows outside the complemented bitmaps match, the others only if in a bitmap
+            RoaringBitmap result = and(complements);
+            return new Complement(bitmaps.isEmpty() ? result : RoaringBitmap.andNot(result, or(bitmaps)));
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            if (testBitmap(state, rowIds, count, matches)) return;
+
+            Arrays.fill(matches, 0, count, false);
+            Batch batch = batch(count);
+            int[] selection = batch.mSelection;
+            int[] selected = batch.mSelected;
+            boolean[] result = batch.mResult;
+            int size = count;
+            for (int i = 0; i < count; i++) {
+                selection[i] = i;
+                selected[i] = rowIds[i];
+            }
+
+            // Every condition only tests the rows the previous ones rejected
+            Object[] states = (Object[]) state;
+            for (int p = 0; p < mPredicates.length; p++) {
+                if (size == 0) break;
+
+                mPredicates[p].test(states[p], selected, size, result);
+                int rejected = 0;
+                for (int i = 0; i < size; i++) {
+                    if (result[i]) {
+                        matches[selection[i]] = true;
+                    } else {
+                        selection[rejected] = selection[i];
+                        selected[rejected] = selected[i];
+                        rejected++;
+                    }
+                }
+                size = rejected;
+            }
+        }
+    }
+
+    /**
+     * Rows not matching a column condition, null values included. Only used
+     * along with a not null condition, see {@link ColumnFilter#negated}.
+     */
+    private static final class NotPredicate implements RowPredicate {
+
+        private final RowPredicate mPredicate;
+
+        NotPredicate(RowPredicate predicate) {
+            mPredicate = predicate;
+        }
+
+        @Override
+        public Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException {
+            Object state = mPredicate.prepare(data);
+            return state instanceof RoaringBitmap ? new Complement((RoaringBitmap) state) : state;
+        }
+
+        @Override
+        public void test(Object state, int[] rowIds, int count, boolean[] matches) {
+            if (testBitmap(state, rowIds, count, matches)) return;
+
+            mPredicate.test(state, rowIds, count, matches);
+            for (int i = 0; i < count; i++) {
+                matches[i] = !matches[i];
+            }
+        }
+    }
+
+}
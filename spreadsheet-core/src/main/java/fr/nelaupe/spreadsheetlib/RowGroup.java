@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.List;
+
+/**
+ * One group produced by {@link GroupBy}: the key, the data positions of its
+ * rows and per-column aggregates over the numeric columns.
+ */
+@SuppressWarnings("unused")
+public class RowGroup {
+
+    private final List<Object> mKey;
+    private final int[] mKeyColumns;
+
+    private int[] mRows;
+    private int mSize;
+
+    private final boolean[] mNumeric;
+    private final double[] mSum;
+    private final double[] mMin;
+    private final double[] mMax;
+
+    private boolean mExpanded;
+
+    RowGroup(List<Object> key, int[] keyColumns, int columnCount) {
+        mKey = key;
+        mKeyColumns = keyColumns;
+        mRows = new int[8];
+        mNumeric = new boolean[columnCount];
+        mSum = new double[columnCount];
+        mMin = new double[columnCount];
+        mMax = new double[columnCount];
+    }
+
+    void add(int position) {
+        if (mSize == mRows.length) {
+            int[] rows = new int[mSize * 2];
+            System.arraycopy(mRows, 0, rows, 0, mSize);
+            mRows = rows;
+        }
+        mRows[mSize++] = position;
+    }
+
+    /**
+     * Maps the positions of the rows in the filtered rows to positions in the data.
+     */
+    void remap(RowIndexView<?> rows) {
+        for (int i = 0; i < mSize; i++) {
+            mRows[i] = rows.getPosition(mRows[i]);
+        }
+    }
+
+    void accumulate(int column, double value) {
+        if (!mNumeric[column]) {
+            mNumeric[column] = true;
+            mMin[column] = value;
+            mMax[column] = value;
+        } else {
+            mMin[column] = Math.min(mMin[column], value);
+            mMax[column] = Math.max(mMax[column], value);
+        }
+        mSum[column] += value;
+    }
+
+    public List<Object> getKey() {
+        return mKey;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the position in the adaptor data of the index-th row of this group
+     */
+    public int getRow(int index) {
+        return mRows[index];
+    }
+
+    public boolean hasAggregate(int column) {
+        return mNumeric[column];
+    }
+
+    public double getSum(int column) {
+        return mSum[column];
+    }
+
+    public double getMin(int column) {
+        return mMin[column];
+    }
+
+    public double getMax(int column) {
+        return mMax[column];
+    }
+
+    public double getAverage(int column) {
+        return mSize == 0 ? 0 : mSum[column] / mSize;
+    }
+
+    /**
+     * Value displayed in the group header for a column: the key for grouped
+     * columns, the sum for numeric columns, nothing otherwise.
+     */
+    public Object getHeaderValue(int column) {
+        if (mKeyColumns[column] >= 0) {
+            return mKey.get(mKeyColumns[column]);
+        }
+        if (!mNumeric[column]) {
+            return null;
+        }
+        double sum = mSum[column];
+        return (sum == Math.rint(sum) && !Double.isInfinite(sum)) ? (Object) (long) sum : sum;
+    }
+
+    public boolean isExpanded() {
+        return mExpanded;
+    }
+
+    void setExpanded(boolean expanded) {
+        mExpanded = expanded;
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.BitSet;
+
+/**
+ * Heights of the rows of the table in a Fenwick tree, mapping a row to its
+ * offset and an offset to its row in O(log n). Rows not measured yet count
+ * with the estimated height until {@link #setHeight(int, int)} corrects them,
+ * they are kept in a bit set so finding them skips the measured rows.
+ * {@link #invalidateAll()} marks every row stale in constant time, stale rows
+ * keep their last height as the estimate until measured again.
+ */
+@SuppressWarnings("unused")
+public class RowHeightIndex {
+
+    private static final int UNMEASURED = -1;
+
+    private int mEstimatedHeight;
+    private int[] mHeights;
+    private int[] mGenerations;
+    private int mGeneration;
+    private int[] mTree;
+    private final BitSet mUnmeasured;
+    private int mSize;
+    private boolean mTreeValid;
+
+    public RowHeightIndex(int estimatedHeight) {
+        mEstimatedHeight = estimatedHeight;
+        mHeights = new int[16];
+        mGenerations = new int[16];
+        mTree = new int[17];
+        mUnmeasured = new BitSet();
+        mTreeValid = true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getEstimatedHeight() {
+        return mEstimatedHeight;
+    }
+
+    public void setEstimatedHeight(int estimatedHeight) {
+        if (estimatedHeight != mEstimatedHeight) {
+            mEstimatedHeight = estimatedHeight;
+            mTreeValid = false;
+        }
+    }
+
+    public int getHeight(int row) {
+        return mHeights[row] == UNMEASURED ? mEstimatedHeight : mHeights[row];
+    }
+
+    public boolean isMeasured(int row) {
+        return mHeights[row] != UNMEASURED;
+    }
+
+    /**
+     * @return true if the row was measured before the last {@link #invalidateAll()}
+     */
+    public boolean isStale(int row) {
+        return mHeights[row] != UNMEASURED && mGenerations[row] != mGeneration;
+    }
+
+    /**
+     * @return the first row from `from` not measured yet, -1 if there is none
+     */
+    public int nextUnmeasured(int from) {
+        int row = mUnmeasured.nextSetBit(Math.max(from, 0));
+        return row < mSize ? row : -1;
+    }
+
+    public void setHeight(int row, int height) {
+        int delta = height - getHeight(row);
+        mHeights[row] = height;
+        mGenerations[row] = mGeneration;
+        mUnmeasured.clear(row);
+        update(row, delta);
+    }
+
+    /**
+     * Falls back to the estimated height until the row is measured again.
+     */
+    public void invalidate(int row) {
+        int delta = mEstimatedHeight - getHeight(row);
+        mHeights[row] = UNMEASURED;
+        mUnmeasured.set(row);
+        update(row, delta);
+    }
+
+    /**
+     * Marks every measured row stale, in constant time.
+     */
+    public void invalidateAll() {
+        mGeneration++;
+    }
+
+    /**
+     * Adds unmeasured rows at the end, in O(log n) per row.
+     */
+    public void append(int count) {
+        ensureCapacity(mSize + count);
+        mUnmeasured.set(mSize, mSize + count);
+        for (int i = 0; i < count; i++) {
+            mHeights[mSize] = UNMEASURED;
+            mSize++;
+            if (mTreeValid) {
+                int node = mSize;
+                mTree[node] = mEstimatedHeight + prefix(node - 1) - prefix(node - (node & -node));
+            }
+        }
+    }
+
+    /**
+     * Adds unmeasured rows before the given row.
+     */
+    public void insert(int row, int count) {
+        if (row == mSize) {
+            append(count);
+            return;
+        }
+
+        ensureCapacity(mSize + count);
+        System.arraycopy(mHeights, row, mHeights, row + count, mSize - row);
+        System.arraycopy(mGenerations, row, mGenerations, row + count, mSize - row);
+        for (int i = row; i < row + count; i++) {
+            mHeights[i] = UNMEASURED;
+        }
+        shiftUnmeasured(row, count);
+        mUnmeasured.set(row, row + count);
+        mSize += count;
+        mTreeValid = false;
+    }
+
+    public void remove(int row, int count) {
+        System.arraycopy(mHeights, row + count, mHeights, row, mSize - row - count);
+        System.arraycopy(mGenerations, row + count, mGenerations, row, mSize - row - count);
+        shiftUnmeasured(row + count, -count);
+        mSize -= count;
+        mTreeValid = false;
+    }
+
+    public void clear() {
+        mSize = 0;
+        mUnmeasured.clear();
+        mTreeValid = true;
+    }
+
+    /**
+     * Moves the unmeasured rows from `from` by `shift`, the ones it covers are dropped.
+     */
+    private void shiftUnmeasured(int from, int shift) {
+        BitSet moved = mUnmeasured.get(from, Math.max(from, mSize));
+        mUnmeasured.clear(Math.min(from, from + shift), Math.max(from, mSize));
+        for (int row = moved.nextSetBit(0); row >= 0; row = moved.nextSetBit(row + 1)) {
+            mUnmeasured.set(from + shift + row);
+        }
+    }
+
+    /**
+     * @return the distance from the top of the table to the top of the row
+     */
+    public int getOffset(int row) {
+        return prefix(row);
+    }
+
+    public int getTotalHeight() {
+        return prefix(mSize);
+    }
+
+    /**
+     * @return the row under the offset, clamped to the rows of the table, -1 if it has none
+     */
+    public int getRowAt(int offset) {
+        if (mSize == 0) {
+            return -1;
+        }
+        validate();
+
+        int row = 0;
+        int remaining = offset;
+        for (int step = Integer.highestOneBit(mSize); step > 0; step >>= 1) {
+            if (row + step <= mSize && mTree[row + step] <= remaining) {
+                row += step;
+                remaining -= mTree[row];
+            }
+        }
+        return Math.max(0, Math.min(row, mSize - 1));
+    }
+
+    private int prefix(int count) {
+        validate();
+        int sum = 0;
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += mTree[node];
+        }
+        return sum;
+    }
+
+    private void update(int row, int delta) {
+        if (!mTreeValid || delta == 0) return;
+        for (int node = row + 1; node <= mSize; node += node & -node) {
+            mTree[node] += delta;
+        }
+    }
+
+    private void validate() {
+        if (mTreeValid) return;
+
+        for (int row = 0; row < mSize; row++) {
+            mTree[row + 1] = getHeight(row);
+        }
+        for (int node = 1; node <= mSize; node++) {
+            int parent = node + (node & -node);
+            if (parent <= mSize) {
+                mTree[parent] += mTree[node];
+            }
+        }
+        mTreeValid = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mHeights.length) return;
+
+        int length = Math.max(capacity, mHeights.length * 2);
+        int[] heights = new int[length];
+        System.arraycopy(mHeights, 0, heights, 0, mSize);
+        mHeights = heights;
+        int[] generations = new int[length];
+        System.arraycopy(mGenerations, 0, generations, 0, mSize);
+        mGenerations = generations;
+        int[] tree = new int[length + 1];
+        System.arraycopy(mTree, 0, tree, 0, mSize + 1);
+        mTree = tree;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.RandomAccess;
+
+/**
+ * The rows of a {@link DataSnapshot} matching a {@link RowFilter}, in the order
+ * of the data until {@link #sorted(Comparator)}. {@link #getPosition(int)} maps
+ * back to the position in the data.
+ */
+@SuppressWarnings("unused")
+public class RowIndexView<T extends SpreadSheetData> extends AbstractList<T> implements RandomAccess {
+
+    private final DataSnapshot<T> mData;
+    private final int mRowIdCount;
+    private final long mEvictedCount;
+    private final int[] mPositions;
+    private final int mSize;
+    private RoaringBitmap mRowIds;
+
+    /**
+     * @param positions  positions in the data of the matching rows, in display order
+     * @param rowIdCount   row ids below this were evaluated against the filter
+     * @param evictedCount rows evicted from the data when the filter was evaluated
+     */
+    RowIndexView(DataSnapshot<T> data, int[] positions, int size, int rowIdCount, long evictedCount) {
+        mData = data;
+        mPositions = positions;
+        mSize = size;
+        mRowIdCount = rowIdCount;
+        mEvictedCount = evictedCount;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        return mData.get(mPositions[index]);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the position in the data of the index-th matching row
+     */
+    public int getPosition(int index) {
+        return mPositions[index];
+    }
+
+    public DataSnapshot<T> getData() {
+        return mData;
+    }
+
+    /**
+     * @return the row ids of the matching rows
+     */
+    public synchronized RoaringBitmap getRowIds() {
+        if (mRowIds == null) {
+            RoaringBitmap rowIds = new RoaringBitmap();
+            for (int i = 0; i < mSize; i++) {
+                rowIds.add(mData.get(mPositions[i]).mRowId);
+            }
+            mRowIds = rowIds;
+        }
+        return mRowIds;
+    }
+
+    /**
+     * @return false if rows were published in the data after the filter was
+     * evaluated, including rows that took over the id of an evicted row
+     */
+    public boolean isEvaluated(DataSnapshot<?> data) {
+        return mData.getRowIdEpoch() == data.getRowIdEpoch() && mRowIdCount >= data.getRowIdCount()
+                && mEvictedCount >= data.getEvictedCount();
+    }
+
+    /**
+     * Same matching rows in another snapshot of the data, after a sort for instance.
+     * Only valid while {@link DataSnapshot#getRowIdEpoch()} is the same.
+     */
+    public RowIndexView<T> reindex(DataSnapshot<T> data) {
+        int[] positions = new int[mSize];
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
+            T row = mData.get(mPositions[i]);
+            int position = data.getPosition(row.mRowId);
+            // An evicted row's id belongs to the row that replaced it
+            if (position >= 0 && data.get(position) == row) {
+                positions[size++] = position;
+            }
+        }
+        return new RowIndexView<>(data, positions, size, mRowIdCount, mEvictedCount);
+    }
+
+    /**
+     * @return the same rows sorted, ties keep their order
+     */
+    public RowIndexView<T> sorted(final Comparator<? super T> comparator) {
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            order[i] = mPositions[i];
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return comparator.compare(mData.get(lhs), mData.get(rhs));
+            }
+        });
+
+        int[] positions = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            positions[i] = order[i];
+        }
+        return new RowIndexView<>(mData, positions, mSize, mRowIdCount, mEvictedCount);
+    }
+
+    public RowIndexView<T> reversed() {
+        int[] positions = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            positions[i] = mPositions[mSize - 1 - i];
+        }
+        return new RowIndexView<>(mData, positions, mSize, mRowIdCount, mEvictedCount);
+    }
+
+    /**
+     * @return true if the rows of the other view are the first rows of this one
+     */
+    public boolean isAppendOf(RowIndexView<?> other) {
+        if (other == null || !(mData == other.mData || mData.isAppendOf(other.mData)) || mSize < other.mSize) {
+            return false;
+        }
+        for (int i = 0; i < other.mSize; i++) {
+            if (mPositions[i] != other.mPositions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
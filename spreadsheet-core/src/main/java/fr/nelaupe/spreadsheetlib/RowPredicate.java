@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Compiled form of a {@link RowFilter}, evaluated over batches of row ids.
+ */
+interface RowPredicate {
+
+    /**
+     * Loads what the predicate reads for the rows of the data. Called once before the batches.
+     *
+     * @return the state of this evaluation given to {@link #test}, the same compiled
+     * filter may be evaluated on several snapshots at once
+     */
+    Object prepare(DataSnapshot<? extends SpreadSheetData> data) throws IllegalAccessException;
+
+    /**
+     * Sets {@code matches[i]} for the {@code count} first row ids. Safe to call from several threads.
+     *
+     * @param state what {@link #prepare} returned for this evaluation
+     */
+    void test(Object state, int[] rowIds, int count, boolean[] matches);
+
+}
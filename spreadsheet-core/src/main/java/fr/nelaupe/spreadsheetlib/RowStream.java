@@ -0,0 +1,275 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue for live row feeds. Producers offer rows from any thread,
+ * the sheet drains them in batches once per frame (see
+ * {@link SpreadSheetDataModel#setRowStream(RowStream)}).
+ *
+ * What happens when the queue is full depends on the {@link Policy}. With
+ * {@link Policy#BLOCK} the producer waits, so it must never be the UI thread.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class RowStream<T extends SpreadSheetData> {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public enum Policy {
+        /** Producers wait until the sheet drains. */
+        BLOCK,
+        /** The oldest queued row is dropped to make room. */
+        DROP_OLDEST,
+        /** A row replaces the queued row with the same key; new keys drop the oldest row when full. */
+        COALESCE
+    }
+
+    public interface KeyExtractor<T> {
+        Object getKey(T row);
+    }
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotFull = mLock.newCondition();
+
+    private final Policy mPolicy;
+    private final KeyExtractor<T> mKeyExtractor;
+    private final Object[] mItems;
+    private final Object[] mKeys;
+    private final Map<Object, Integer> mSlots;
+    private int mHead;
+    private int mCount;
+
+    private long mOffered;
+    private long mDropped;
+    private long mCoalesced;
+    private long mDrained;
+
+    private int mBatchSize;
+    private volatile OnPendingDataListener mPendingDataListener;
+
+    public RowStream(int capacity, Policy policy) {
+        this(capacity, policy, null);
+    }
+
+    public RowStream(int capacity, KeyExtractor<T> keyExtractor) {
+        this(capacity, Policy.COALESCE, keyExtractor);
+    }
+
+    private RowStream(int capacity, Policy policy, KeyExtractor<T> keyExtractor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (policy == Policy.COALESCE && keyExtractor == null) {
+            throw new IllegalArgumentException("COALESCE needs a KeyExtractor");
+        }
+        mPolicy = policy;
+        mKeyExtractor = keyExtractor;
+        mItems = new Object[capacity];
+        mKeys = keyExtractor == null ? null : new Object[capacity];
+        mSlots = keyExtractor == null ? null : new HashMap<Object, Integer>();
+        mBatchSize = DEFAULT_BATCH_SIZE;
+    }
+
+    void setOnPendingDataListener(OnPendingDataListener listener) {
+        mPendingDataListener = listener;
+    }
+
+    /**
+     * Maximum number of rows applied to the sheet per frame.
+     */
+    public void setBatchSize(int batchSize) {
+        mBatchSize = Math.max(1, batchSize);
+    }
+
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    public Policy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * @return false if the row was not queued: dropped on interrupt while
+     * blocking. Rows dropped by the policy to make room are counted in
+     * {@link #getDroppedCount()}.
+     */
+    public boolean offer(T row) {
+        try {
+            return offer(row, -1, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Like {@link #offer(Object)} but a blocking producer gives up after the timeout.
+     */
+    public boolean offer(T row, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean wasEmpty;
+        mLock.lock();
+        try {
+            mOffered++;
+
+            Object key = null;
+            if (mKeyExtractor != null) {
+                key = mKeyExtractor.getKey(row);
+                Integer slot = mSlots.get(key);
+                if (slot != null) {
+                    mItems[slot] = row;
+                    mCoalesced++;
+                    return true;
+                }
+            }
+
+            if (mCount == mItems.length) {
+                if (mPolicy == Policy.BLOCK) {
+                    long nanos = unit.toNanos(timeout);
+                    while (mCount == mItems.length) {
+                        if (timeout < 0) {
+                            mNotFull.await();
+                        } else if (nanos <= 0) {
+                            mDropped++;
+                            return false;
+                        } else {
+                            nanos = mNotFull.awaitNanos(nanos);
+                        }
+                    }
+                } else {
+                    removeHead();
+                    mDropped++;
+                }
+            }
+
+            int slot = (mHead + mCount) % mItems.length;
+            mItems[slot] = row;
+            if (key != null) {
+                mKeys[slot] = key;
+                mSlots.put(key, slot);
+            }
+            wasEmpty = mCount++ == 0;
+        } finally {
+            mLock.unlock();
+        }
+
+        OnPendingDataListener listener = mPendingDataListener;
+        if (wasEmpty && listener != null) {
+            listener.onPendingData();
+        }
+        return true;
+    }
+
+    /**
+     * Moves at most one batch of rows, oldest first, into the given list.
+     */
+    public int drain(List<? super T> out) {
+        mLock.lock();
+        try {
+            int count = Math.min(mCount, mBatchSize);
+            for (int i = 0; i < count; i++) {
+                out.add((T) mItems[mHead]);
+                removeHead();
+            }
+            mDrained += count;
+            if (count > 0) {
+                mNotFull.signalAll();
+            }
+            return count;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void removeHead() {
+        mItems[mHead] = null;
+        if (mKeys != null) {
+            mSlots.remove(mKeys[mHead]);
+            mKeys[mHead] = null;
+        }
+        mHead = (mHead + 1) % mItems.length;
+        mCount--;
+    }
+
+    public void clear() {
+        mLock.lock();
+        try {
+            while (mCount > 0) {
+                removeHead();
+            }
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        mLock.lock();
+        try {
+            return mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return mItems.length;
+    }
+
+    public long getOfferedCount() {
+        mLock.lock();
+        try {
+            return mOffered;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        mLock.lock();
+        try {
+            return mDropped;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public long getCoalescedCount() {
+        mLock.lock();
+        try {
+            return mCoalesced;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public long getDrainedCount() {
+        mLock.lock();
+        try {
+            return mDrained;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checked rows stored as a bitset indexed by the stable row id the adaptor
+ * gives to every row, so the selection does not depend on the row order.
+ */
+@SuppressWarnings("unused")
+public class SelectionModel {
+
+    private static final int ADDRESS_BITS = 6;
+    private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+
+    private long[] mWords;
+    private final List<OnSelectionChangedListener> mListeners;
+
+    public SelectionModel() {
+        mWords = new long[1];
+        mListeners = new ArrayList<>();
+    }
+
+    public void addOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public boolean isSelected(int rowId) {
+        if (rowId < 0) return false;
+
+        int word = rowId >> ADDRESS_BITS;
+        return word < mWords.length && (mWords[word] & (1L << rowId)) != 0;
+    }
+
+    public void setSelected(int rowId, boolean selected) {
+        if (rowId < 0 || isSelected(rowId) == selected) return;
+
+        ensureCapacity(rowId + 1);
+        if (selected) {
+            mWords[rowId >> ADDRESS_BITS] |= (1L << rowId);
+        } else {
+            mWords[rowId >> ADDRESS_BITS] &= ~(1L << rowId);
+        }
+        notifyChanged(rowId, rowId + 1);
+    }
+
+    public void toggle(int rowId) {
+        setSelected(rowId, !isSelected(rowId));
+    }
+
+    /**
+     * Selects or clears the ids in [fromRowId, toRowId), one mask per word.
+     */
+    public void setSelected(int fromRowId, int toRowId, boolean selected) {
+        fromRowId = Math.max(fromRowId, 0);
+        if (fromRowId >= toRowId) return;
+
+        ensureCapacity(toRowId);
+
+        int startWord = fromRowId >> ADDRESS_BITS;
+        int endWord = (toRowId - 1) >> ADDRESS_BITS;
+        long firstMask = WORD_MASK << fromRowId;
+        long lastMask = WORD_MASK >>> -toRowId;
+
+        for (int word = startWord; word <= endWord; word++) {
+            long mask = WORD_MASK;
+            if (word == startWord) mask &= firstMask;
+            if (word == endWord) mask &= lastMask;
+
+            if (selected) {
+                mWords[word] |= mask;
+            } else {
+                mWords[word] &= ~mask;
+            }
+        }
+        notifyChanged(fromRowId, toRowId);
+    }
+
+    public void selectAll(int rowCount) {
+        setSelected(0, rowCount, true);
+    }
+
+    public void clear() {
+        int count = mWords.length << ADDRESS_BITS;
+        mWords = new long[1];
+        notifyChanged(0, count);
+    }
+
+    public int getSelectedCount() {
+        int count = 0;
+        for (long word : mWords) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return the first selected id at or after rowId, -1 if there is none
+     */
+    public int nextSelected(int rowId) {
+        int word = rowId >> ADDRESS_BITS;
+        if (rowId < 0 || word >= mWords.length) return -1;
+
+        long bits = mWords[word] & (WORD_MASK << rowId);
+        while (true) {
+            if (bits != 0) {
+                return (word << ADDRESS_BITS) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == mWords.length) {
+                return -1;
+            }
+            bits = mWords[word];
+        }
+    }
+
+    private void ensureCapacity(int rowCount) {
+        int required = ((rowCount - 1) >> ADDRESS_BITS) + 1;
+        if (required > mWords.length) {
+            long[] words = new long[Math.max(required, mWords.length * 2)];
+            System.arraycopy(mWords, 0, words, 0, mWords.length);
+            mWords = words;
+        }
+    }
+
+    private void notifyChanged(int fromRowId, int toRowId) {
+        for (OnSelectionChangedListener listener : mListeners) {
+            listener.onSelectionChanged(fromRowId, toRowId);
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * {@link RowCursor} over the rows of a {@link DataSnapshot}. Primitive fields
+ * are read through {@link Field#getLong(Object)} and the like, without boxing.
+ */
+@SuppressWarnings("unused")
+public class SnapshotCursor<T extends SpreadSheetData> implements RowCursor {
+
+    private final List<AnnotationFields> mFields;
+    private DataSnapshot<T> mData;
+    private int mPosition = -1;
+    private T mRow;
+
+    public SnapshotCursor(List<AnnotationFields> fields, DataSnapshot<T> data) {
+        mFields = fields;
+        setData(data);
+    }
+
+    /**
+     * Points the cursor to other data with the same columns, before the first row.
+     */
+    public void setData(DataSnapshot<T> data) {
+        mData = data;
+        mPosition = -1;
+        mRow = null;
+    }
+
+    public DataSnapshot<T> getData() {
+        return mData;
+    }
+
+    public List<AnnotationFields> getFields() {
+        return mFields;
+    }
+
+    /**
+     * @return the row the cursor is on
+     */
+    public T getRow() {
+        return mRow;
+    }
+
+    @Override
+    public int getCount() {
+        return mData.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mFields.size();
+    }
+
+    @Override
+    public CellInformation getColumn(int column) {
+        return mFields.get(column).getAnnotation();
+    }
+
+    @Override
+    public AnnotationFields.BindType getType(int column) {
+        return mFields.get(column).getBindType();
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if (position < 0 || position >= mData.size()) return false;
+
+        mPosition = position;
+        mRow = mData.get(position);
+        return true;
+    }
+
+    /**
+     * Points the cursor to a row found elsewhere, e.g. through a filter or a group,
+     * at its position in the data.
+     */
+    public void moveToRow(T row, int position) {
+        mPosition = position;
+        mRow = row;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        AnnotationFields field = mFields.get(column);
+        return !isPrimitive(field) && value(field) == null;
+    }
+
+    @Override
+    public int getInt(int column) {
+        AnnotationFields field = mFields.get(column);
+        if (field.getBindType() == AnnotationFields.BindType.INT) {
+            try {
+                return field.getField().getInt(mRow);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        AnnotationFields field = mFields.get(column);
+        try {
+            switch (field.getBindType()) {
+                case INT:
+                case LONG:
+                    return field.getField().getLong(mRow);
+                case FLOAT:
+                case DOUBLE:
+                    return (long) field.getField().getDouble(mRow);
+                case BOOLEAN:
+                    return field.getField().getBoolean(mRow) ? 1 : 0;
+                default:
+                    Object value = field.get(mRow);
+                    if (value instanceof Boolean) {
+                        return ((Boolean) value) ? 1 : 0;
+                    }
+                    return value instanceof Number ? ((Number) value).longValue() : 0;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        AnnotationFields field = mFields.get(column);
+        if (field.getBindType() == AnnotationFields.BindType.FLOAT) {
+            try {
+                return field.getField().getFloat(mRow);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        AnnotationFields field = mFields.get(column);
+        try {
+            switch (field.getBindType()) {
+                case INT:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                    return field.getField().getDouble(mRow);
+                case BOOLEAN:
+                    return field.getField().getBoolean(mRow) ? 1 : 0;
+                default:
+                    Object value = field.get(mRow);
+                    if (value instanceof Boolean) {
+                        return ((Boolean) value) ? 1 : 0;
+                    }
+                    return value instanceof Number ? ((Number) value).doubleValue() : 0;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(int column) {
+        AnnotationFields field = mFields.get(column);
+        if (field.getBindType() == AnnotationFields.BindType.BOOLEAN) {
+            try {
+                return field.getField().getBoolean(mRow);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return getLong(column) != 0;
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = value(mFields.get(column));
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public Object getObject(int column) {
+        return value(mFields.get(column));
+    }
+
+    private Object value(AnnotationFields field) {
+        try {
+            return field.get(mRow);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isPrimitive(AnnotationFields field) {
+        switch (field.getBindType()) {
+            case TEXT:
+            case OBJECT:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of the ascending order of recently sorted columns, stored as row
+ * ids so it does not depend on the current order of the data. Rows appended
+ * since an order was cached are sorted on their own and merged in, so
+ * switching back to a cached column is O(n) instead of O(n log n).
+ */
+@SuppressWarnings("unused")
+public class SortPermutationCache<T extends SpreadSheetData> {
+
+    public static final long DEFAULT_BUDGET = 4 * 1024 * 1024;
+
+    private static class Entry<T> {
+        int[] rowIds;
+        int rowIdCount;
+        Comparator<? super T> comparator;
+    }
+
+    private final LinkedHashMap<AnnotationFields, Entry<T>> mEntries;
+    private long mBudget;
+    private long mUsed;
+
+    public SortPermutationCache() {
+        mEntries = new LinkedHashMap<>(8, 0.75f, true);
+        mBudget = DEFAULT_BUDGET;
+    }
+
+    /**
+     * Memory, in bytes, the cached orders may use before the least recently used is evicted.
+     */
+    public synchronized void setBudget(long budget) {
+        mBudget = budget;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return mBudget;
+    }
+
+    public synchronized long getUsed() {
+        return mUsed;
+    }
+
+    /**
+     * @return the ascending order of the data as row ids, null if the column is not cached
+     */
+    public synchronized int[] get(AnnotationFields field, DataSnapshot<T> data) {
+        Entry<T> entry = mEntries.get(field);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.rowIdCount < data.getRowIdCount()) {
+            repair(entry, data);
+        }
+        if (entry.rowIds.length != data.size()) {
+            remove(field);
+            return null;
+        }
+        return entry.rowIds;
+    }
+
+    public synchronized boolean contains(AnnotationFields field) {
+        return mEntries.containsKey(field);
+    }
+
+    public synchronized void put(AnnotationFields field, Comparator<? super T> comparator, DataSnapshot<T> sorted) {
+        remove(field);
+
+        Entry<T> entry = new Entry<>();
+        entry.rowIds = new int[sorted.size()];
+        for (int i = 0; i < entry.rowIds.length; i++) {
+            entry.rowIds[i] = sorted.get(i).mRowId;
+        }
+        entry.rowIdCount = sorted.getRowIdCount();
+        entry.comparator = comparator;
+
+        mEntries.put(field, entry);
+        mUsed += bytes(entry);
+        trim();
+    }
+
+    public synchronized void invalidate(AnnotationFields field) {
+        remove(field);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mUsed = 0;
+    }
+
+    /**
+     * Merges the rows published since the entry was cached into its order.
+     */
+    private void repair(Entry<T> entry, DataSnapshot<T> data) {
+        List<T> added = new ArrayList<>();
+        for (T row : data) {
+            if (row.mRowId >= entry.rowIdCount) {
+                added.add(row);
+            }
+        }
+        Collections.sort(added, entry.comparator);
+
+        int[] merged = new int[entry.rowIds.length + added.size()];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < entry.rowIds.length && j < added.size()) {
+            int position = data.getPosition(entry.rowIds[i]);
+            if (position < 0) {
+                i++;
+                continue;
+            }
+            // Cached rows win ties, like a stable sort of the whole data would
+            if (entry.comparator.compare(added.get(j), data.get(position)) < 0) {
+                merged[k++] = added.get(j++).mRowId;
+            } else {
+                merged[k++] = entry.rowIds[i++];
+            }
+        }
+        while (i < entry.rowIds.length) {
+            merged[k++] = entry.rowIds[i++];
+        }
+        while (j < added.size()) {
+            merged[k++] = added.get(j++).mRowId;
+        }
+
+        mUsed -= bytes(entry);
+        entry.rowIds = k == merged.length ? merged : copyOf(merged, k);
+        entry.rowIdCount = data.getRowIdCount();
+        mUsed += bytes(entry);
+        trim();
+    }
+
+    private void remove(AnnotationFields field) {
+        Entry<T> entry = mEntries.remove(field);
+        if (entry != null) {
+            mUsed -= bytes(entry);
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<AnnotationFields, Entry<T>>> iterator = mEntries.entrySet().iterator();
+        while (mUsed > mBudget && iterator.hasNext()) {
+            mUsed -= bytes(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long bytes(Entry<?> entry) {
+        return 4L * entry.rowIds.length;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+}
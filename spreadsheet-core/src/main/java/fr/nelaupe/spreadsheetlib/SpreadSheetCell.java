@@ -32,4 +32,15 @@ public @interface SpreadSheetCell {
 
     int position();
 
+    /**
+     * Dictionary encode this low cardinality column, see {@link DictionaryColumn}.
+     * The values must implement {@code equals} and {@code hashCode}.
+     */
+    boolean dictionary() default false;
+
+    /**
+     * Keep a {@link BitmapIndex} of the rows holding each value of this column.
+     */
+    boolean indexed() default false;
+
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Created with IntelliJ
+ * Created by Lucas Nelaupe
+ * Date 26/03/15
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public abstract class SpreadSheetData {
+
+    static final int NO_ROW_ID = -1;
+
+    private static final AtomicReferenceFieldUpdater<SpreadSheetData, Object> MODEL =
+            AtomicReferenceFieldUpdater.newUpdater(SpreadSheetData.class, Object.class, "mModel");
+
+    // Row identity is held by the row itself, so it belongs to one model at a time:
+    // from the time it is added until it is evicted or the model is cleared
+    private volatile Object mModel;
+
+    int mRowId = NO_ROW_ID;
+
+    // Bumped when the adaptor is told the row changed
+    volatile int mVersion;
+
+    // Set when a bounded model evicts the row, its id then belongs to the row that replaced it
+    volatile boolean mEvicted;
+
+    /**
+     * @return false if the row already belongs to a model
+     */
+    boolean claim(Object model) {
+        return MODEL.compareAndSet(this, null, model);
+    }
+
+    void release() {
+        mModel = null;
+    }
+
+    protected List<AnnotationFields> defineField() {
+        List<AnnotationFields> fields = new ArrayList<>();
+
+        for (Field field : this.getClass().getDeclaredFields()) {
+            field.setAccessible(true);
+            if (field.isAnnotationPresent(SpreadSheetCell.class)) {
+                fields.add(new AnnotationFields(field, new CellInformation(field.getAnnotation(SpreadSheetCell.class))));
+            }
+        }
+
+        for (Method method : this.getClass().getDeclaredMethods()) {
+            if (method.isAnnotationPresent(SpreadSheetCell.class) && method.getParameterTypes().length == 0) {
+                method.setAccessible(true);
+                DependsOn dependsOn = method.getAnnotation(DependsOn.class);
+                fields.add(new AnnotationFields(method, new CellInformation(method.getAnnotation(SpreadSheetCell.class)), dependsOn == null ? new String[0] : dependsOn.value()));
+            }
+        }
+
+        return fields;
+
+    }
+
+}
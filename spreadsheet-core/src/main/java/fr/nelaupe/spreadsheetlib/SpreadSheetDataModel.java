@@ -0,0 +1,444 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thread safe row storage behind {@link SpreadSheetTable}.
+ *
+ * Writers append to a lock free queue from any thread. The owner thread (the
+ * last one that published, normally the UI thread) publishes the queued
+ * rows as a new {@link DataSnapshot}. Appends share the backing array of the
+ * previous snapshot, sorting and clearing publish a fresh copy, so readers
+ * never lock and never see a snapshot change under them.
+ *
+ * With a capacity the model is a ring buffer: once full, every appended row
+ * evicts the oldest one and takes over its row id, in constant time. The
+ * evicted row is flagged first, caches by row id never store its values.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class SpreadSheetDataModel<T extends SpreadSheetData> {
+
+    private final Object mLock = new Object();
+    private final ConcurrentLinkedQueue<T> mPending;
+    private final AtomicBoolean mPublishScheduled;
+    private volatile Thread mOwner;
+    private volatile boolean mPublishOnRead = true;
+
+    private volatile DataSnapshot<T> mSnapshot;
+    private volatile OnPendingDataListener mPendingDataListener;
+    private volatile RowStream<T> mStream;
+    private volatile OnRowsEvictedListener<T> mEvictedListener;
+    private final List<T> mBatch;
+    private final List<T> mEvicted;
+    private int mNextRowId;
+    private int mCapacity;
+
+    public SpreadSheetDataModel() {
+        mPending = new ConcurrentLinkedQueue<>();
+        mPublishScheduled = new AtomicBoolean();
+        mBatch = new ArrayList<>();
+        mEvicted = new ArrayList<>();
+        mSnapshot = new DataSnapshot<>(new Object[16], 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    public void setOnRowsEvictedListener(OnRowsEvictedListener<T> listener) {
+        mEvictedListener = listener;
+    }
+
+    /**
+     * Keeps only the last rows. The oldest ones are evicted right away when
+     * there are more.
+     *
+     * @param capacity maximum number of rows, 0 for no limit
+     */
+    public DataSnapshot<T> setCapacity(int capacity) {
+        synchronized (mLock) {
+            mCapacity = Math.max(0, capacity);
+            DataSnapshot<T> current = publish();
+            if (mCapacity == 0 || current.size() <= mCapacity) {
+                return current;
+            }
+
+            int drop = current.size() - mCapacity;
+            for (int i = 0; i < drop; i++) {
+                T oldest = current.get(i);
+                oldest.mEvicted = true;
+                oldest.release();
+                mEvicted.add(oldest);
+            }
+            Object[] items = new Object[ringLength()];
+            System.arraycopy(current.items(), current.offset() + drop, items, 0, mCapacity);
+            mSnapshot = new DataSnapshot<>(items, 0, mCapacity, current.getVersion() + 1, current.getGeneration() + 1, current.getEvictedCount() + drop, mNextRowId, current.getRowIdEpoch());
+            dispatchEvicted();
+            return mSnapshot;
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public void setOnPendingDataListener(OnPendingDataListener listener) {
+        mPendingDataListener = listener;
+    }
+
+    /**
+     * Rows offered to the stream are appended one batch per publish, so a
+     * fast producer cannot stall the UI thread.
+     */
+    public void setRowStream(RowStream<T> stream) {
+        if (mStream != null) {
+            mStream.setOnPendingDataListener(null);
+        }
+        mStream = stream;
+        if (stream != null) {
+            stream.setOnPendingDataListener(new OnPendingDataListener() {
+                @Override
+                public void onPendingData() {
+                    onPending();
+                }
+            });
+            if (stream.getQueueDepth() > 0) {
+                onPending();
+            }
+        }
+    }
+
+    public RowStream<T> getRowStream() {
+        return mStream;
+    }
+
+    /**
+     * A row keeps its id in its own fields, it can be added to one model at a time
+     * and only once, again after it was evicted or the model cleared.
+     *
+     * @throws IllegalStateException if the row was already added
+     */
+    public void add(T data) {
+        claim(data);
+        mPending.offer(data);
+        onPending();
+    }
+
+    /**
+     * @throws IllegalStateException if one of the rows was already added, none of them is added then
+     */
+    public void addAll(Collection<? extends T> data) {
+        if (data.isEmpty()) return;
+
+        List<T> claimed = new ArrayList<>(data.size());
+        try {
+            for (T row : data) {
+                claim(row);
+                claimed.add(row);
+            }
+        } catch (IllegalStateException e) {
+            for (T row : claimed) {
+                row.release();
+            }
+            throw e;
+        }
+        mPending.addAll(data);
+        onPending();
+    }
+
+    private void claim(T row) {
+        if (!row.claim(this)) {
+            throw new IllegalStateException("The row was already added to a model, a row can be added once until it is evicted or the model is cleared");
+        }
+    }
+
+    private void onPending() {
+        if (mPublishScheduled.compareAndSet(false, true)) {
+            OnPendingDataListener listener = mPendingDataListener;
+            if (listener != null) {
+                listener.onPendingData();
+            }
+        }
+    }
+
+    public boolean hasPending() {
+        RowStream<T> stream = mStream;
+        return !mPending.isEmpty() || (stream != null && stream.getQueueDepth() > 0);
+    }
+
+    /**
+     * Latest data. On the owner thread pending rows are published first, so
+     * the owner always reads its own writes; other threads get the last
+     * published snapshot. Until a thread published, any thread is the owner.
+     */
+    public DataSnapshot<T> getData() {
+        Thread owner = mOwner;
+        if (mPublishOnRead && (owner == null || owner == Thread.currentThread()) && !mPending.isEmpty()) {
+            return publish();
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * When disabled, {@link #getData()} never publishes and pending rows wait
+     * for {@link #publish()}. A view showing the data disables it: it
+     * publishes once per frame, and the positions of its rows must stay those
+     * of the snapshot it built them from until then. Enabled by default.
+     */
+    public void setPublishOnRead(boolean publishOnRead) {
+        mPublishOnRead = publishOnRead;
+    }
+
+    public DataSnapshot<T> getPublished() {
+        return mSnapshot;
+    }
+
+    /**
+     * Appends every pending row, and one batch of the row stream, to the data
+     * and publishes the result as a single new snapshot.
+     */
+    public DataSnapshot<T> publish() {
+        synchronized (mLock) {
+            mOwner = Thread.currentThread();
+            mPublishScheduled.set(false);
+
+            RowStream<T> stream = mStream;
+            T rejected = null;
+            if (stream != null) {
+                stream.drain(mBatch);
+                // Rows offered to the stream are only claimed here
+                for (int i = mBatch.size() - 1; i >= 0; i--) {
+                    if (!mBatch.get(i).claim(this)) {
+                        rejected = mBatch.remove(i);
+                    }
+                }
+            }
+
+            for (T item = mPending.poll(); item != null; item = mPending.poll()) {
+                mBatch.add(item);
+            }
+            if (mBatch.isEmpty()) {
+                checkRejected(rejected);
+                return mSnapshot;
+            }
+
+            DataSnapshot<T> current = mSnapshot;
+            Object[] items = current.items();
+            int offset = current.offset();
+            int size = current.size();
+            long evicted = current.getEvictedCount();
+
+            // Rows that would be evicted by the same batch are never published
+            int first = mCapacity > 0 ? Math.max(0, mBatch.size() - mCapacity) : 0;
+            for (int i = 0; i < first; i++) {
+                mBatch.get(i).release();
+            }
+            int required = offset + size + mBatch.size() - first;
+            if (required > items.length) {
+                if (mCapacity > 0) {
+                    // Slots are written once, published snapshots keep their array
+                    Object[] ring = new Object[Math.max(ringLength(), size + mBatch.size() - first)];
+                    System.arraycopy(items, offset, ring, 0, size);
+                    items = ring;
+                } else {
+                    items = grow(items, offset, size, required);
+                }
+                offset = 0;
+            }
+
+            for (int i = first; i < mBatch.size(); i++) {
+                T row = mBatch.get(i);
+                if (mCapacity > 0 && size == mCapacity) {
+                    T oldest = (T) items[offset++];
+                    size--;
+                    evicted++;
+                    // The new row takes over the id, so caches by row id stay bounded
+                    oldest.mEvicted = true;
+                    oldest.release();
+                    row.mRowId = oldest.mRowId;
+                    row.mVersion = oldest.mVersion + 1;
+                    mEvicted.add(oldest);
+                } else {
+                    row.mRowId = mNextRowId++;
+                }
+                row.mEvicted = false;
+                items[offset + size++] = row;
+            }
+            mBatch.clear();
+
+            mSnapshot = new DataSnapshot<>(items, offset, size, current.getVersion() + 1, current.getGeneration(), evicted, mNextRowId, current.getRowIdEpoch());
+            dispatchEvicted();
+
+            if (stream != null && stream.getQueueDepth() > 0) {
+                onPending();
+            }
+            checkRejected(rejected);
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * Fails the publish of a stream row that was already added, once the other rows are published.
+     */
+    private static void checkRejected(SpreadSheetData rejected) {
+        if (rejected != null) {
+            throw new IllegalStateException("A row of the stream was already added to a model, a row can be added once until it is evicted or the model is cleared");
+        }
+    }
+
+    private static Object[] grow(Object[] items, int offset, int size, int required) {
+        Object[] grown = new Object[Math.max(required, items.length * 2)];
+        System.arraycopy(items, offset, grown, 0, size);
+        return grown;
+    }
+
+    /**
+     * Twice the capacity, so the ring is copied once every capacity appends.
+     */
+    private int ringLength() {
+        return Math.max(16, mCapacity * 2);
+    }
+
+    private void dispatchEvicted() {
+        if (mEvicted.isEmpty()) return;
+
+        OnRowsEvictedListener<T> listener = mEvictedListener;
+        if (listener != null) {
+            listener.onRowsEvicted(mEvicted);
+        }
+        mEvicted.clear();
+    }
+
+    /**
+     * Sorts a copy of the data without holding the lock, so publishing is not
+     * blocked meanwhile. Rows appended in between are sorted and merged in,
+     * rows evicted in between are dropped.
+     */
+    public DataSnapshot<T> sort(Comparator<? super T> comparator) {
+        DataSnapshot<T> current = publish();
+        Object[] items = copy(current);
+        Arrays.sort(items, 0, current.size(), (Comparator) comparator);
+
+        synchronized (mLock) {
+            DataSnapshot<T> latest = publish();
+            if (latest.getGeneration() != current.getGeneration()) {
+                // Sorted or cleared meanwhile, sorted again under the lock
+                items = copy(latest);
+                Arrays.sort(items, 0, latest.size(), (Comparator) comparator);
+                return replace(items);
+            }
+            if (latest == current) {
+                return replace(items);
+            }
+
+            int evicted = (int) Math.min(current.size(), latest.getEvictedCount() - current.getEvictedCount());
+            Object[] appended = latest.subList(current.size() - evicted, latest.size()).toArray();
+            Arrays.sort(appended, (Comparator) comparator);
+            return replace(merge(items, current.size(), appended, latest.items().length, comparator));
+        }
+    }
+
+    /**
+     * Merges two sorted runs, the rows evicted since they were sorted are skipped.
+     * On ties the rows of the data come before the appended ones, as in a stable sort.
+     */
+    private Object[] merge(Object[] sorted, int size, Object[] appended, int length, Comparator<? super T> comparator) {
+        Object[] items = new Object[Math.max(16, length)];
+        int index = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < appended.length) {
+            if (i < size && ((T) sorted[i]).mEvicted) {
+                i++;
+            } else if (j == appended.length || (i < size && comparator.compare((T) sorted[i], (T) appended[j]) <= 0)) {
+                items[index++] = sorted[i++];
+            } else {
+                items[index++] = appended[j++];
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Reorders the data to follow the given row ids.
+     *
+     * @return the new snapshot, null if the ids do not match the rows of the data
+     */
+    public DataSnapshot<T> reorder(int[] rowIds) {
+        synchronized (mLock) {
+            DataSnapshot<T> current = publish();
+            if (rowIds.length != current.size()) {
+                return null;
+            }
+
+            Object[] items = new Object[Math.max(16, current.items().length)];
+            for (int i = 0; i < rowIds.length; i++) {
+                int position = current.getPosition(rowIds[i]);
+                if (position < 0) {
+                    return null;
+                }
+                items[i] = current.get(position);
+            }
+            return replace(items);
+        }
+    }
+
+    public DataSnapshot<T> reverse() {
+        synchronized (mLock) {
+            Object[] items = copy(publish());
+            Collections.reverse(Arrays.asList(items).subList(0, mSnapshot.size()));
+            return replace(items);
+        }
+    }
+
+    /**
+     * Drops every published and pending row and restarts the row ids.
+     */
+    public DataSnapshot<T> clear() {
+        synchronized (mLock) {
+            for (T row : mSnapshot) {
+                row.release();
+            }
+            for (T row = mPending.poll(); row != null; row = mPending.poll()) {
+                row.release();
+            }
+            if (mStream != null) {
+                mStream.clear();
+            }
+            mNextRowId = 0;
+            mSnapshot = new DataSnapshot<>(new Object[16], 0, 0, mSnapshot.getVersion() + 1, mSnapshot.getGeneration() + 1, 0, 0, mSnapshot.getRowIdEpoch() + 1);
+            return mSnapshot;
+        }
+    }
+
+    private Object[] copy(DataSnapshot<T> snapshot) {
+        Object[] items = new Object[Math.max(16, snapshot.items().length)];
+        System.arraycopy(snapshot.items(), snapshot.offset(), items, 0, snapshot.size());
+        return items;
+    }
+
+    private DataSnapshot<T> replace(Object[] items) {
+        DataSnapshot<T> current = mSnapshot;
+        mSnapshot = new DataSnapshot<>(items, 0, current.size(), current.getVersion() + 1, current.getGeneration() + 1, current.getEvictedCount(), mNextRowId, current.getRowIdEpoch());
+        return mSnapshot;
+    }
+
+}
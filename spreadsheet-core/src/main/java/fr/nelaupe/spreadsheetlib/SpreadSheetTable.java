@@ -0,0 +1,775 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rows, columns and the engines working on them: sort, filter, statistics
+ * and formatting. It has no Android dependency, so the same table can be
+ * sorted, filtered or aggregated on a plain JVM. {@code SpreadSheetAdaptor}
+ * extends it with the views of the sheet.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class SpreadSheetTable<TSelf extends SpreadSheetData> {
+
+    private SpreadSheetDataModel<TSelf> mModel;
+    private List<AnnotationFields> mFields;
+    private List<Integer> mDisplayOnly;
+
+    private SelectionModel mSelection;
+    private DirtyCellSet mDirtyCells;
+    private SortPermutationCache<TSelf> mSortCache;
+    private Collator mCollator;
+    private volatile RowFilter mFilter;
+    private volatile CompiledFilter mCompiledFilter;
+    private FormatterRegistry mFormatters;
+    private volatile OnRowsEvictedListener<TSelf> mEvictedListener;
+
+    public SpreadSheetTable() {
+        mModel = new SpreadSheetDataModel<>();
+        mFields = new ArrayList<>();
+        mDisplayOnly = new ArrayList<>();
+        mSelection = new SelectionModel();
+        mDirtyCells = new DirtyCellSet();
+        mSortCache = new SortPermutationCache<>();
+        mFormatters = new FormatterRegistry();
+        mModel.setOnRowsEvictedListener(new OnRowsEvictedListener<TSelf>() {
+            @Override
+            public void onRowsEvicted(List<TSelf> rows) {
+                evict(rows);
+            }
+        });
+    }
+
+    public void displayColumn(ArrayList<Integer> columnNumber) {
+        mDisplayOnly.clear();
+        mDisplayOnly.addAll(columnNumber);
+    }
+
+    public void displayColumn(Integer... columnNumber) {
+        mDisplayOnly.clear();
+        mDisplayOnly.addAll(Arrays.asList(columnNumber));
+    }
+
+    /**
+     * Safe to call from any thread, rows become visible once published.
+     * A row belongs to one table at a time, see {@link SpreadSheetDataModel#add}.
+     */
+    public void add(TSelf data) {
+        mModel.add(data);
+    }
+
+    public void addAll(List<TSelf> data) {
+        mModel.addAll(data);
+    }
+
+    /**
+     * @return an immutable snapshot of the data, see {@link SpreadSheetDataModel#getData()}
+     */
+    public DataSnapshot<TSelf> getData() {
+        return mModel.getData();
+    }
+
+    public SpreadSheetDataModel<TSelf> getDataModel() {
+        return mModel;
+    }
+
+    /**
+     * Feeds the sheet from a live row stream, drained one batch per frame.
+     */
+    public void setRowStream(RowStream<TSelf> stream) {
+        mModel.setRowStream(stream);
+    }
+
+    public RowStream<TSelf> getRowStream() {
+        return mModel.getRowStream();
+    }
+
+    /**
+     * Keeps only the last rows, e.g. to tail a log. Once full, each added row
+     * evicts the oldest one and the sheet only updates the rows that changed.
+     *
+     * @param capacity maximum number of rows, 0 for no limit
+     */
+    public void setCapacity(int capacity) {
+        mModel.setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return mModel.getCapacity();
+    }
+
+    public void setOnRowsEvictedListener(OnRowsEvictedListener<TSelf> listener) {
+        mEvictedListener = listener;
+    }
+
+    private void evict(List<TSelf> rows) {
+        mSortCache.clear();
+        for (TSelf row : rows) {
+            // The id now belongs to an appended row
+            int rowId = row.mRowId;
+            for (AnnotationFields field : mFields) {
+                field.invalidate(rowId);
+            }
+            if (mSelection.isSelected(rowId)) {
+                mSelection.setSelected(rowId, false);
+            }
+        }
+
+        OnRowsEvictedListener<TSelf> listener = mEvictedListener;
+        if (listener != null) {
+            listener.onRowsEvicted(rows);
+        }
+    }
+
+    /**
+     * Cursor over the current rows and columns, for reads that should not go through row objects.
+     */
+    public SnapshotCursor<TSelf> newCursor() {
+        return new SnapshotCursor<>(getFields(), getData());
+    }
+
+    /**
+     * @return the first position from this one with a cell containing the query, ignoring case, -1 if none
+     */
+    public int indexOf(String query, int from) {
+        return new CursorSearch(query).next(newCursor(), from);
+    }
+
+    /**
+     * Writes the current rows as CSV, formatted columns as displayed. Safe to call from any thread.
+     */
+    public void exportCsv(Writer out) throws IOException {
+        CursorExport.writeCsv(newCursor(), mFormatters, out);
+    }
+
+    public TSelf get(int position) {
+        return getData().get(position);
+    }
+
+    public void clearData() {
+        mModel.clear();
+        mSelection.clear();
+        mSortCache.clear();
+        mFormatters.clear();
+        for (AnnotationFields field : mFields) {
+            field.invalidateAll();
+        }
+    }
+
+    /**
+     * @return the approximate memory held by the caches of the columns
+     */
+    public long getCacheMemoryUsage() {
+        long bytes = 0;
+        for (AnnotationFields field : mFields) {
+            bytes += field.getCacheMemoryUsage();
+        }
+        return bytes;
+    }
+
+    public long getIndexMemoryUsage() {
+        long bytes = 0;
+        for (AnnotationFields field : mFields) {
+            bytes += field.getIndexMemoryUsage();
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the caches of the columns, they are rebuilt on demand.
+     */
+    public void trimCaches() {
+        mCompiledFilter = null;
+        for (AnnotationFields field : mFields) {
+            field.trimCaches();
+        }
+    }
+
+    /**
+     * Drops the bitmap indexes of the columns, they are rebuilt by the next filter.
+     */
+    public void trimIndexes() {
+        for (AnnotationFields field : mFields) {
+            field.trimIndex();
+        }
+    }
+
+    public void sort(Comparator<TSelf> comparator) {
+        mModel.sort(comparator);
+    }
+
+    /**
+     * Sorts ascending on the column, reusing the cached order when the column was sorted before.
+     */
+    public void sort(AnnotationFields field) {
+        DataSnapshot<TSelf> data = mModel.publish();
+        int[] order = mSortCache.get(field, data);
+        if (order != null && mModel.reorder(order) != null) {
+            return;
+        }
+
+        DataSnapshot<TSelf> sorted = sortByCursor(field, data);
+        if (sorted == null) {
+            sorted = mModel.sort(sortBy(field));
+        }
+        mSortCache.put(field, valueComparator(field), sorted);
+    }
+
+    /**
+     * Sorts primitive columns on their values read through a cursor, without boxing.
+     *
+     * @return null if the column is not primitive or the data changed meanwhile
+     */
+    private DataSnapshot<TSelf> sortByCursor(AnnotationFields field, DataSnapshot<TSelf> data) {
+        if (field.getDictionary() != null) return null;
+        switch (field.getBindType()) {
+            case TEXT:
+            case OBJECT:
+                return null;
+        }
+
+        SnapshotCursor<TSelf> cursor = new SnapshotCursor<>(Collections.singletonList(field), data);
+        int[] positions = CursorSort.sort(cursor, 0, false, null);
+        int[] rowIds = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            rowIds[i] = data.get(positions[i]).mRowId;
+        }
+        return mModel.reorder(rowIds);
+    }
+
+    /**
+     * Ascending sort on the column showing the first {@code count} rows before the others are sorted.
+     */
+    public ProgressiveSort<TSelf> sortProgressive(AnnotationFields field, int count) {
+        return new ProgressiveSort<>(this, field, selectComparator(field), count);
+    }
+
+    /**
+     * Comparator for a single pass over the rows, it computes no sort keys.
+     */
+    private Comparator<TSelf> selectComparator(AnnotationFields field) {
+        if (field.getCollationKeys() == null) {
+            return valueComparator(field);
+        }
+
+        final CollationKeyColumn collationKeys = field.getCollationKeys();
+        return new Comparator<TSelf>() {
+            @Override
+            public int compare(TSelf lhs, TSelf rhs) {
+                try {
+                    return collationKeys.compareValues(lhs, rhs);
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                    return 0;
+                }
+            }
+        };
+    }
+
+    /**
+     * Filter of the rows shown by the view, null to show every row.
+     */
+    public void setFilter(RowFilter filter) {
+        mFilter = filter;
+    }
+
+    public RowFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Evaluates the filter over the data. Safe to call from any thread.
+     *
+     * @return the matching rows, null if there is no filter
+     */
+    public RowIndexView<TSelf> filter(DataSnapshot<TSelf> data) {
+        RowFilter filter = mFilter;
+        if (filter == null) {
+            return null;
+        }
+
+        CompiledFilter compiled = mCompiledFilter;
+        if (compiled == null || compiled.getFilter() != filter) {
+            compiled = filter.compile(getFields());
+            mCompiledFilter = compiled;
+        }
+
+        try {
+            return compiled.evaluate(data);
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Sorts filtered rows on the column, the data keeps its order. Safe to call from any thread.
+     */
+    public RowIndexView<TSelf> sort(RowIndexView<TSelf> rows, AnnotationFields field, boolean descending) {
+        RowIndexView<TSelf> sorted = rows.sorted(valueComparator(field));
+        return descending ? sorted.reversed() : sorted;
+    }
+
+    /**
+     * Statistics of the column, brought up to date with the published rows.
+     * Only the rows published since the last call are read. Safe to call from any thread.
+     *
+     * @param column index of the column in {@link #getFields()}
+     */
+    public ColumnStatistics getStatistics(int column) {
+        ColumnStatistics statistics = getFields().get(column).getStatistics();
+        try {
+            statistics.update(getData());
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return statistics;
+    }
+
+    public SortPermutationCache<TSelf> getSortCache() {
+        return mSortCache;
+    }
+
+    public void reverse() {
+        mModel.reverse();
+    }
+
+    /**
+     * Stable identity of the row at this position, kept across sorting until {@link #clearData()}.
+     */
+    public int getRowId(int position) {
+        return get(position).mRowId;
+    }
+
+    /**
+     * @return the current position of the row, -1 if it is no longer in the data
+     */
+    public int getPosition(int rowId) {
+        return getData().getPosition(rowId);
+    }
+
+    /**
+     * Tells the sheet that a value of the row at this position changed.
+     * Changes are coalesced and only the visible ones are rebound, once per
+     * frame. Safe to call from any thread.
+     *
+     * @param column index of the column in {@link #getFields()}
+     */
+    public void notifyCellChanged(int position, int column) {
+        AnnotationFields field = getFields().get(column);
+        mSortCache.invalidate(field);
+
+        TSelf row = get(position);
+        row.mVersion++;
+        int rowId = row.mRowId;
+        mDirtyCells.add(rowId, column);
+        field.invalidate(rowId);
+        invalidateDependents(field, rowId);
+    }
+
+    public void notifyRowChanged(int position) {
+        mSortCache.clear();
+
+        TSelf row = get(position);
+        row.mVersion++;
+        int rowId = row.mRowId;
+        mDirtyCells.addRow(rowId);
+        for (AnnotationFields field : mFields) {
+            field.invalidate(rowId);
+        }
+    }
+
+    private void invalidateDependents(AnnotationFields source, int rowId) {
+        List<AnnotationFields> fields = getFields();
+        for (AnnotationFields dependent : source.getDependents()) {
+            dependent.invalidate(rowId);
+            mSortCache.invalidate(dependent);
+
+            int column = fields.indexOf(dependent);
+            if (column >= 0) {
+                mDirtyCells.add(rowId, column);
+            }
+            invalidateDependents(dependent, rowId);
+        }
+    }
+
+    public FormatterRegistry getFormatters() {
+        return mFormatters;
+    }
+
+    /**
+     * @param column index of the column in {@link #getFields()}
+     */
+    public void setFormatter(int column, CellFormatter.Factory factory) {
+        mFormatters.register(getFields().get(column).getAnnotation(), factory);
+    }
+
+    /**
+     * Text of the cell from the formatter of its column, cached until the row
+     * changes. Safe to call from any thread, e.g. to export.
+     *
+     * @return null if the column has no formatter
+     */
+    public String getFormattedText(TSelf row, int column) throws IllegalAccessException {
+        return mFormatters.getText(getFields().get(column), row, getData().getRowIdEpoch());
+    }
+
+    /**
+     * @return the formatted text of the cell if its column has a formatter, its value otherwise
+     */
+    public Object getDisplayValue(TSelf row, int column) throws IllegalAccessException {
+        String text = getFormattedText(row, column);
+        return text != null ? text : getFields().get(column).get(row);
+    }
+
+    /**
+     * Formats the cells of these rows in the background, before they are bound.
+     */
+    public void prefetchFormattedText(final int from, final int to) {
+        final DataSnapshot<TSelf> data = getData();
+        final List<AnnotationFields> fields = getFields();
+        BackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int end = Math.min(to, data.size());
+                try {
+                    for (int position = Math.max(0, from); position < end; position++) {
+                        TSelf row = data.get(position);
+                        for (int column = 0; column < fields.size(); column++) {
+                            mFormatters.getText(fields.get(column), row, data.getRowIdEpoch());
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    public DirtyCellSet getDirtyCells() {
+        return mDirtyCells;
+    }
+
+    public SelectionModel getSelection() {
+        return mSelection;
+    }
+
+    public boolean isSelected(int position) {
+        return mSelection.isSelected(getRowId(position));
+    }
+
+    public void setSelected(int position, boolean selected) {
+        mSelection.setSelected(getRowId(position), selected);
+    }
+
+    public void selectAll() {
+        mSelection.selectAll(getData().getRowIdCount());
+    }
+
+    public void clearSelection() {
+        mSelection.clear();
+    }
+
+    public List<TSelf> getSelectedItems() {
+        DataSnapshot<TSelf> data = getData();
+        List<TSelf> selected = new ArrayList<>();
+        for (int rowId = mSelection.nextSelected(0); rowId >= 0; rowId = mSelection.nextSelected(rowId + 1)) {
+            int position = data.getPosition(rowId);
+            if (position >= 0) {
+                selected.add(data.get(position));
+            }
+        }
+        return selected;
+    }
+
+
+    private void inspectFields() {
+
+        if (getData().isEmpty()) {
+            return;
+        }
+
+        mFields.clear();
+        mFields.addAll(get(0).defineField());
+
+        Collections.sort(mFields, new Comparator<AnnotationFields>() {
+            @Override
+            public int compare(AnnotationFields lhs, AnnotationFields rhs) {
+                Integer positionL = lhs.getAnnotation().getPosition();
+                Integer positionR = rhs.getAnnotation().getPosition();
+
+                return positionL.compareTo(positionR);
+            }
+        });
+
+        linkDependencies();
+        if (mCollator != null) {
+            applyCollator();
+        }
+    }
+
+    /**
+     * Collator ordering the {@link String} columns, {@link Collator#getInstance()} by default.
+     */
+    public void setCollator(Collator collator) {
+        mCollator = collator;
+        applyCollator();
+        mSortCache.clear();
+    }
+
+    private void applyCollator() {
+        // Collators are not thread safe, each column locks its own copy
+        for (AnnotationFields field : mFields) {
+            if (field.getCollationKeys() != null) {
+                field.getCollationKeys().setCollator(copy(mCollator));
+            }
+            if (field.getDictionary() != null) {
+                field.getDictionary().setCollator(copy(mCollator));
+            }
+        }
+    }
+
+    private static Collator copy(Collator collator) {
+        return collator == null ? null : (Collator) collator.clone();
+    }
+
+    private void linkDependencies() {
+        Map<String, AnnotationFields> byName = new HashMap<>();
+        for (AnnotationFields field : mFields) {
+            byName.put(field.getFieldName(), field);
+        }
+
+        for (AnnotationFields field : mFields) {
+            if (!field.isComputed()) continue;
+
+            for (String name : field.getDependsOn()) {
+                AnnotationFields source = byName.get(name);
+                if (source == null) {
+                    throw new IllegalStateException(field.getFieldName() + " depends on " + name + " which is not a @SpreadSheetCell column");
+                }
+                source.getDependents().add(field);
+            }
+        }
+
+        Set<AnnotationFields> done = new HashSet<>();
+        for (AnnotationFields field : mFields) {
+            checkCycle(field, new HashSet<AnnotationFields>(), done);
+        }
+    }
+
+    private void checkCycle(AnnotationFields field, Set<AnnotationFields> path, Set<AnnotationFields> done) {
+        if (done.contains(field)) return;
+        if (!path.add(field)) {
+            throw new IllegalStateException("Cyclic @DependsOn through " + field.getFieldName());
+        }
+
+        for (AnnotationFields dependent : field.getDependents()) {
+            checkCycle(dependent, path, done);
+        }
+
+        path.remove(field);
+        done.add(field);
+    }
+
+    public List<AnnotationFields> getFields() {
+        if (mFields.isEmpty()) {
+            inspectFields();
+        }
+
+        if (mDisplayOnly.isEmpty()) {
+            return mFields;
+        } else {
+            List<AnnotationFields> returned = new ArrayList<>();
+            for (AnnotationFields field : mFields) {
+                if (mDisplayOnly.contains(field.getAnnotation().getPosition())) {
+                    returned.add(field);
+                }
+            }
+
+            return returned;
+        }
+
+    }
+
+    public AnnotationFields getField(int position) {
+        if (mFields.isEmpty()) {
+            inspectFields();
+        }
+
+        for (AnnotationFields field : mFields) {
+            if (field.getAnnotation().getPosition() == position) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+
+    public Comparator<TSelf> sortBy(final AnnotationFields field) {
+
+        if (field.getDictionary() != null) {
+            return sortByCode(field.getDictionary());
+        }
+        if (field.getCollationKeys() != null) {
+            return sortByCollationKey(field.getCollationKeys());
+        }
+
+        return new Comparator<TSelf>() {
+            @Override
+            public int compare(TSelf lhs, TSelf rhs) {
+
+                try {
+                    Comparable lComparable = (Comparable) field.get(lhs);
+                    Comparable rComparable = (Comparable) field.get(rhs);
+
+                    return lComparable.compareTo(rComparable);
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                    return 0;
+                }
+            }
+        };
+    }
+
+    /**
+     * Comparator reading the values when called, unlike {@link #sortBy(AnnotationFields)}
+     * which may precompute sort keys for the current rows only.
+     */
+    Comparator<TSelf> valueComparator(AnnotationFields field) {
+        if (field.getCollationKeys() != null) {
+            final CollationKeyColumn collationKeys = field.getCollationKeys();
+            return new Comparator<TSelf>() {
+                @Override
+                public int compare(TSelf lhs, TSelf rhs) {
+                    try {
+                        return CollationKeyColumn.compare(collationKeys.getKey(lhs), collationKeys.getKey(rhs));
+                    } catch (IllegalAccessException e) {
+                        e.printStackTrace();
+                        return 0;
+                    }
+                }
+            };
+        }
+        if (field.getDictionary() == null) {
+            return sortBy(field);
+        }
+
+        final DictionaryColumn dictionary = field.getDictionary();
+        return new Comparator<TSelf>() {
+            @Override
+            public int compare(TSelf lhs, TSelf rhs) {
+                try {
+                    int l = dictionary.getRank(lhs);
+                    int r = dictionary.getRank(rhs);
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                    return 0;
+                }
+            }
+        };
+    }
+
+    private Comparator<TSelf> sortByCode(final DictionaryColumn dictionary) {
+        int[] sortKeys;
+        try {
+            sortKeys = dictionary.sortKeys(getData());
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            sortKeys = new int[0];
+        }
+        final int[] keys = sortKeys;
+
+        return new Comparator<TSelf>() {
+            @Override
+            public int compare(TSelf lhs, TSelf rhs) {
+                int l = key(lhs);
+                int r = key(rhs);
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+
+            private int key(TSelf row) {
+                // Rows published after the keys were computed go last
+                int key = (row.mRowId >= 0 && row.mRowId < keys.length) ? keys[row.mRowId] : DictionaryColumn.NO_CODE;
+                return key != DictionaryColumn.NO_CODE ? key : Integer.MAX_VALUE;
+            }
+        };
+    }
+
+    private Comparator<TSelf> sortByCollationKey(CollationKeyColumn collationKeys) {
+        CollationKey[] sortKeys;
+        try {
+            sortKeys = collationKeys.sortKeys(getData());
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            sortKeys = new CollationKey[0];
+        }
+        final CollationKey[] keys = sortKeys;
+
+        return new Comparator<TSelf>() {
+            @Override
+            public int compare(TSelf lhs, TSelf rhs) {
+                boolean l = lhs.mRowId >= 0 && lhs.mRowId < keys.length;
+                boolean r = rhs.mRowId >= 0 && rhs.mRowId < keys.length;
+                if (l && r) {
+                    return CollationKeyColumn.compare(keys[lhs.mRowId], keys[rhs.mRowId]);
+                }
+                // Rows published after the keys were computed go last
+                return (l ? 0 : 1) - (r ? 0 : 1);
+            }
+        };
+    }
+
+    public Comparator<TSelf> sortBy(final Field field) {
+        for (AnnotationFields annotationFields : getFields()) {
+            if (field.equals(annotationFields.getField())) {
+                return sortBy(annotationFields);
+            }
+        }
+
+        return new Comparator<TSelf>() {
+            @Override
+            public int compare(TSelf lhs, TSelf rhs) {
+
+                try {
+                    Comparable lComparable = (Comparable) field.get(lhs);
+                    Comparable rComparable = (Comparable) field.get(rhs);
+
+                    return lComparable.compareTo(rComparable);
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                    return 0;
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CharFormatterTest {
+
+    private final char[] mBuffer = new char[CharFormatter.BUFFER_SIZE];
+
+    @Test
+    public void longs() {
+        assertEquals("0", formatLong(0));
+        assertEquals("42", formatLong(42));
+        assertEquals("-7", formatLong(-7));
+        assertEquals(Long.toString(Long.MAX_VALUE), formatLong(Long.MAX_VALUE));
+        assertEquals(Long.toString(Long.MIN_VALUE), formatLong(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void doublesLikeDoubleToString() {
+        assertEquals("0.0", formatDouble(0));
+        assertEquals("-0.0", formatDouble(-0.0));
+        assertEquals("2.0", formatDouble(2));
+        assertEquals("1.5", formatDouble(1.5));
+        assertEquals("-123.25", formatDouble(-123.25));
+        assertEquals("0.001", formatDouble(0.001));
+        assertEquals("9999999.5", formatDouble(9999999.5));
+    }
+
+    @Test
+    public void doublesRoundedToSignificantDigits() {
+        assertEquals("0.3", formatDouble(0.1 + 0.2));
+        assertEquals("0.1", formatFloat(0.1f));
+        assertEquals("3.141593", formatFloat((float) Math.PI));
+    }
+
+    @Test
+    public void outOfRangeFallsBackToToString() {
+        assertEquals(Double.toString(1e-4), formatDouble(1e-4));
+        assertEquals(Double.toString(1.5e7), formatDouble(1.5e7));
+        assertEquals(Double.toString(Double.NaN), formatDouble(Double.NaN));
+        assertEquals(Double.toString(Double.NEGATIVE_INFINITY), formatDouble(Double.NEGATIVE_INFINITY));
+        assertEquals(Float.toString(1e-5f), formatFloat(1e-5f));
+    }
+
+    private String formatLong(long value) {
+        return new String(mBuffer, 0, CharFormatter.formatLong(value, mBuffer));
+    }
+
+    private String formatDouble(double value) {
+        return new String(mBuffer, 0, CharFormatter.formatDouble(value, CharFormatter.DOUBLE_DIGITS, mBuffer));
+    }
+
+    private String formatFloat(float value) {
+        return new String(mBuffer, 0, CharFormatter.formatDouble(value, CharFormatter.FLOAT_DIGITS, mBuffer));
+    }
+
+}
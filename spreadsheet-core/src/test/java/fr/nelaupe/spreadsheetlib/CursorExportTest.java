@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class CursorExportTest {
+
+    public static class Row extends SpreadSheetData {
+
+        @SpreadSheetCell(name = "id", size = 100, position = 1)
+        public long id;
+
+        @SpreadSheetCell(name = "ratio", size = 100, position = 2)
+        public double ratio;
+
+        @SpreadSheetCell(name = "weight", size = 100, position = 3)
+        public float weight;
+
+        @SpreadSheetCell(name = "label", size = 100, position = 4)
+        public String label;
+
+        Row(long id, double ratio, float weight, String label) {
+            this.id = id;
+            this.ratio = ratio;
+            this.weight = weight;
+            this.label = label;
+        }
+    }
+
+    @Test
+    public void writesRfc4180() throws IOException {
+        SpreadSheetTable<Row> table = new SpreadSheetTable<>();
+        table.add(new Row(1, 0.5, 2f, "plain"));
+        table.add(new Row(-2, 3, 0.25f, "a, \"quoted\" one"));
+
+        assertEquals("id,ratio,weight,label\r\n"
+                + "1,0.5,2.0,plain\r\n"
+                + "-2,3.0,0.25,\"a, \"\"quoted\"\" one\"\r\n", export(table));
+    }
+
+    @Test
+    public void floatingPointReadsBackToTheSameValue() throws IOException {
+        SpreadSheetTable<Row> table = new SpreadSheetTable<>();
+        table.add(new Row(0, 0.1 + 0.2, 0.1f + 0.2f, "x"));
+
+        String[] cells = export(table).split("\r\n")[1].split(",");
+        assertEquals(0.1 + 0.2, Double.parseDouble(cells[1]), 0);
+        assertEquals(0.1f + 0.2f, Float.parseFloat(cells[2]), 0);
+    }
+
+    private static String export(SpreadSheetTable<Row> table) throws IOException {
+        StringWriter out = new StringWriter();
+        table.exportCsv(out);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class CursorSortTest {
+
+    public static class Row extends SpreadSheetData {
+
+        @SpreadSheetCell(name = "count", size = 100, position = 1)
+        public int count;
+
+        @SpreadSheetCell(name = "price", size = 100, position = 2)
+        public double price;
+
+        @SpreadSheetCell(name = "name", size = 100, position = 3)
+        public String name;
+
+        Row(int count, double price, String name) {
+            this.count = count;
+            this.price = price;
+            this.name = name;
+        }
+    }
+
+    private static final int COUNT = 0;
+    private static final int PRICE = 1;
+    private static final int NAME = 2;
+
+    private SpreadSheetTable<Row> mTable;
+
+    @Before
+    public void setUp() {
+        mTable = new SpreadSheetTable<>();
+        mTable.addAll(Arrays.asList(
+                new Row(2, 1.5, "pear"),
+                new Row(1, -0.5, "Apple"),
+                new Row(2, Double.NaN, null),
+                new Row(0, 10, "banana"),
+                new Row(1, 1.5, "apple")));
+    }
+
+    @Test
+    public void intColumnKeepsTiesInOrder() {
+        assertArrayEquals(new int[]{3, 1, 4, 0, 2}, sort(COUNT, false, null));
+        assertArrayEquals(new int[]{0, 2, 1, 4, 3}, sort(COUNT, true, null));
+    }
+
+    @Test
+    public void doubleColumnPutsNaNLast() {
+        assertArrayEquals(new int[]{1, 0, 4, 3, 2}, sort(PRICE, false, null));
+    }
+
+    @Test
+    public void textColumnPutsNullFirst() {
+        assertArrayEquals(new int[]{2, 1, 4, 3, 0}, sort(NAME, false, null));
+
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        collator.setStrength(Collator.PRIMARY);
+        assertArrayEquals(new int[]{2, 1, 4, 3, 0}, sort(NAME, false, collator));
+    }
+
+    @Test
+    public void largeSortMatchesStableSort() {
+        Random random = new Random(11);
+        final Row[] rows = new Row[1000];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Row(random.nextInt(50), 0, null);
+        }
+        mTable.clearData();
+        mTable.addAll(Arrays.asList(rows));
+
+        // Arrays.sort on objects is a stable merge sort
+        Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return rows[lhs].count - rows[rhs].count;
+            }
+        });
+        int[] expected = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            expected[i] = order[i];
+        }
+
+        assertArrayEquals(expected, sort(COUNT, false, null));
+    }
+
+    private int[] sort(int column, boolean descending, Collator collator) {
+        return CursorSort.sort(mTable.newCursor(), column, descending, collator);
+    }
+
+}
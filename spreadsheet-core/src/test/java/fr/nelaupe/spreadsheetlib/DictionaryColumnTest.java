@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DictionaryColumnTest {
+
+    public static class Row extends SpreadSheetData {
+
+        @SpreadSheetCell(name = "city", size = 100, position = 1, dictionary = true)
+        public String city;
+
+        Row(String city) {
+            this.city = city;
+        }
+    }
+
+    private static final int CITY = 0;
+
+    private SpreadSheetTable<Row> mTable;
+    private DictionaryColumn mDictionary;
+
+    @Before
+    public void setUp() {
+        mTable = new SpreadSheetTable<>();
+        mTable.addAll(Arrays.asList(new Row("Paris"), new Row(null), new Row("Lyon"), new Row("Paris")));
+        mDictionary = mTable.getFields().get(CITY).getDictionary();
+    }
+
+    @Test
+    public void equalValuesShareACode() throws IllegalAccessException {
+        DataSnapshot<Row> data = mTable.getData();
+        for (Row row : data) {
+            mDictionary.getCode(row);
+        }
+        assertEquals(mDictionary.getCode(data.get(0)), mDictionary.getCode(data.get(3)));
+        assertTrue(mDictionary.getCode(data.get(0)) != mDictionary.getCode(data.get(2)));
+        assertEquals(3, mDictionary.size());
+    }
+
+    @Test
+    public void filtersCompareCodes() {
+        // Equal to the values of the rows, never the same instances
+        assertEquals(Arrays.asList("Paris", "Paris"), filter(RowFilter.equalTo(CITY, new String("Paris"))));
+        assertEquals(Arrays.asList("Paris", null, "Paris"), filter(RowFilter.in(CITY, new String("Paris"), null)));
+        assertEquals(new ArrayList<String>(), filter(RowFilter.equalTo(CITY, "Nice")));
+        assertEquals(Arrays.asList((String) null), filter(RowFilter.equalTo(CITY, null)));
+    }
+
+    @Test
+    public void clearDropsTheValues() throws IllegalAccessException {
+        mDictionary.getCode(mTable.getData().get(0));
+        mTable.clearData();
+        assertEquals(0, mDictionary.size());
+
+        mTable.add(new Row("Nice"));
+        assertEquals(0, mDictionary.getCode(mTable.getData().get(0)));
+    }
+
+    @Test
+    public void filterCompactsTheDictionary() throws IllegalAccessException {
+        mTable.clearData();
+        SpreadSheetDataModel<Row> model = mTable.getDataModel();
+        model.setCapacity(10);
+        for (int i = 0; i < 200; i++) {
+            model.add(new Row("city " + i));
+            mDictionary.getCode(model.publish().get(model.getData().size() - 1));
+        }
+        assertEquals(200, mDictionary.size());
+
+        assertEquals(Arrays.asList("city 199"), filter(RowFilter.equalTo(CITY, "city 199")));
+        assertEquals(10, mDictionary.size());
+    }
+
+    private List<String> filter(RowFilter filter) {
+        mTable.setFilter(filter);
+        List<String> cities = new ArrayList<>();
+        for (Row row : mTable.filter(mTable.getData())) {
+            cities.add(row.city);
+        }
+        return cities;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GroupByTest {
+
+    public static class Row extends SpreadSheetData {
+
+        @SpreadSheetCell(name = "kind", size = 100, position = 1)
+        public String kind;
+
+        @SpreadSheetCell(name = "amount", size = 100, position = 2)
+        public int amount;
+
+        Row(String kind, int amount) {
+            this.kind = kind;
+            this.amount = amount;
+        }
+    }
+
+    private static final int KIND = 0;
+    private static final int AMOUNT = 1;
+
+    @Test
+    public void appendMatchesCompute() {
+        SpreadSheetTable<Row> table = new SpreadSheetTable<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            table.add(new Row("kind " + random.nextInt(i < 100 ? 5 : 8), random.nextInt(100)));
+        }
+        DataSnapshot<Row> data = table.getData();
+        GroupBy groupBy = new GroupBy(table.getFields().subList(KIND, KIND + 1), table.getFields());
+
+        List<RowGroup> groups = groupBy.compute(data.subList(0, 100));
+        int before = groups.size();
+        BitSet changed = groupBy.append(groups, data, 100);
+
+        List<RowGroup> expected = groupBy.compute(data);
+        assertEquals(expected.size(), groups.size());
+        assertEquals(groups.size(), changed.length());
+        for (int i = 0; i < expected.size(); i++) {
+            RowGroup group = groups.get(i);
+            assertEquals(expected.get(i).getKey(), group.getKey());
+            assertEquals(expected.get(i).size(), group.size());
+            for (int row = 0; row < group.size(); row++) {
+                assertEquals(expected.get(i).getRow(row), group.getRow(row));
+            }
+            assertEquals(expected.get(i).getSum(AMOUNT), group.getSum(AMOUNT), 0);
+            assertEquals(expected.get(i).getMax(AMOUNT), group.getMax(AMOUNT), 0);
+        }
+        // Kinds from 5 only appear in the appended rows
+        assertEquals(8, groups.size());
+        assertEquals(5, before);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HyperLogLogTest {
+
+    // Three times the standard error of the sketch
+    private static final double ERROR = 0.05;
+
+    @Test
+    public void emptyAndSmallCardinalities() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertEquals(0, sketch.estimate());
+
+        for (int i = 0; i < 10; i++) {
+            sketch.offer("value" + i);
+        }
+        assertEquals(10, sketch.estimate());
+    }
+
+    @Test
+    public void estimateWithinError() {
+        for (int count : new int[]{1000, 20000, 500000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long value = 0; value < count; value++) {
+                sketch.offerLong(value);
+            }
+            assertEquals(count, sketch.estimate(), ERROR * count);
+        }
+    }
+
+    @Test
+    public void duplicatesDoNotCount() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int round = 0; round < 5; round++) {
+            for (int value = 0; value < 10000; value++) {
+                sketch.offerDouble(value * 0.5);
+            }
+        }
+        assertEquals(10000, sketch.estimate(), ERROR * 10000);
+    }
+
+    @Test
+    public void mergeGivesSketchOfBothStreams() {
+        HyperLogLog lhs = new HyperLogLog();
+        HyperLogLog rhs = new HyperLogLog();
+        for (long value = 0; value < 60000; value++) {
+            lhs.offerLong(value);
+            rhs.offerLong(value + 40000);
+        }
+
+        lhs.merge(rhs);
+        assertEquals(100000, lhs.estimate(), ERROR * 100000);
+
+        lhs.clear();
+        assertEquals(0, lhs.estimate());
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final int COUNT = 100000;
+
+    // Rank error of the default sketch, with some slack
+    private static final double ERROR = 0.02;
+
+    @Test
+    public void empty() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertEquals(0, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        assertTrue(Double.isNaN(sketch.getRank(1)));
+    }
+
+    @Test
+    public void quantilesWithinRankError() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : shuffled(0, COUNT)) {
+            sketch.update(value);
+        }
+
+        assertEquals(COUNT, sketch.getCount());
+        assertEquals(0, sketch.getMin(), 0);
+        assertEquals(COUNT - 1, sketch.getMax(), 0);
+        assertEquals(0, sketch.getQuantile(0), 0);
+        assertEquals(COUNT - 1, sketch.getQuantile(1), 0);
+        for (double fraction = 0.1; fraction < 1; fraction += 0.1) {
+            assertEquals(fraction * COUNT, sketch.getQuantile(fraction), ERROR * COUNT);
+            assertEquals(fraction, sketch.getRank(fraction * COUNT), ERROR);
+        }
+        assertTrue(sketch.getSizeInBytes() < COUNT * 8 / 10);
+    }
+
+    @Test
+    public void mergeGivesSketchOfBothStreams() {
+        QuantileSketch lower = new QuantileSketch();
+        for (double value : shuffled(0, COUNT / 2)) {
+            lower.update(value);
+        }
+        QuantileSketch upper = new QuantileSketch();
+        for (double value : shuffled(COUNT / 2, COUNT)) {
+            upper.update(value);
+        }
+
+        lower.merge(upper);
+        assertEquals(COUNT, lower.getCount());
+        assertEquals(0, lower.getMin(), 0);
+        assertEquals(COUNT - 1, lower.getMax(), 0);
+        assertEquals(COUNT / 2, lower.getQuantile(0.5), ERROR * COUNT);
+        assertEquals(COUNT / 4, lower.getQuantile(0.25), ERROR * COUNT);
+    }
+
+    @Test
+    public void histogramCountsEveryValue() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : shuffled(0, COUNT)) {
+            sketch.update(value);
+        }
+
+        long[] histogram = sketch.getHistogram(10);
+        long total = 0;
+        for (long count : histogram) {
+            assertEquals(COUNT / 10, count, ERROR * COUNT);
+            total += count;
+        }
+        assertEquals(COUNT, total);
+    }
+
+    private static List<Double> shuffled(int from, int to) {
+        List<Double> values = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            values.add((double) i);
+        }
+        Collections.shuffle(values, new Random(7));
+        return values;
+    }
+
+}
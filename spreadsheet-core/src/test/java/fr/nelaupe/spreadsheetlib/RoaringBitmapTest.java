@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoaringBitmapTest {
+
+    @Test
+    public void addRemoveContains() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        bitmap.add(3);
+        bitmap.add(70000);
+        bitmap.add(3);
+
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+        assertEquals(2, bitmap.getCardinality());
+
+        bitmap.remove(3);
+        bitmap.remove(5);
+        assertFalse(bitmap.contains(3));
+        assertArrayEquals(new int[]{70000}, bitmap.toArray());
+
+        bitmap.remove(70000);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void denseChunkBecomesBitmapAndBack() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        BitSet expected = new BitSet();
+        for (int value = 0; value < RoaringBitmap.ARRAY_MAX * 2; value++) {
+            bitmap.add(value * 3);
+            expected.set(value * 3);
+        }
+        assertSame(expected, bitmap);
+
+        for (int value = 0; value < RoaringBitmap.ARRAY_MAX * 2 - 10; value++) {
+            bitmap.remove(value * 3);
+            expected.clear(value * 3);
+        }
+        assertSame(expected, bitmap);
+    }
+
+    @Test
+    public void range() {
+        assertTrue(RoaringBitmap.range(0).isEmpty());
+
+        RoaringBitmap bitmap = RoaringBitmap.range(70000);
+        assertEquals(70000, bitmap.getCardinality());
+        assertTrue(bitmap.contains(0));
+        assertTrue(bitmap.contains(69999));
+        assertFalse(bitmap.contains(70000));
+    }
+
+    @Test
+    public void setOperationsMatchBitSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            BitSet lhs = new BitSet();
+            BitSet rhs = new BitSet();
+            RoaringBitmap left = randomBitmap(random, lhs);
+            RoaringBitmap right = randomBitmap(random, rhs);
+
+            BitSet and = (BitSet) lhs.clone();
+            and.and(rhs);
+            assertSame(and, RoaringBitmap.and(left, right));
+
+            BitSet or = (BitSet) lhs.clone();
+            or.or(rhs);
+            assertSame(or, RoaringBitmap.or(left, right));
+
+            BitSet andNot = (BitSet) lhs.clone();
+            andNot.andNot(rhs);
+            assertSame(andNot, RoaringBitmap.andNot(left, right));
+
+            // Operands are left untouched
+            assertSame(lhs, left);
+            assertSame(rhs, right);
+        }
+    }
+
+    /**
+     * Mixes sparse and dense chunks, so every pair of container kinds is combined.
+     */
+    private static RoaringBitmap randomBitmap(Random random, BitSet expected) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int chunk = 0; chunk < 4; chunk++) {
+            int count = random.nextBoolean() ? random.nextInt(100) : RoaringBitmap.ARRAY_MAX + random.nextInt(20000);
+            for (int i = 0; i < count; i++) {
+                int value = (chunk << 16) + random.nextInt(1 << 16);
+                bitmap.add(value);
+                expected.set(value);
+            }
+        }
+        return bitmap;
+    }
+
+    private static void assertSame(BitSet expected, RoaringBitmap bitmap) {
+        int[] values = new int[expected.cardinality()];
+        int index = 0;
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            values[index++] = value;
+        }
+        assertArrayEquals(values, bitmap.toArray());
+        assertEquals(values.length, bitmap.getCardinality());
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RowFilterTest {
+
+    public static class Row extends SpreadSheetData {
+
+        @SpreadSheetCell(name = "kind", size = 100, position = 1, indexed = true)
+        public String kind;
+
+        @SpreadSheetCell(name = "count", size = 100, position = 2)
+        public Integer count;
+
+        @SpreadSheetCell(name = "price", size = 100, position = 3)
+        public double price;
+
+        @SpreadSheetCell(name = "tag", size = 100, position = 4)
+        public Object tag;
+
+        Row(String kind, Integer count, double price, Object tag) {
+            this.kind = kind;
+            this.count = count;
+            this.price = price;
+            this.tag = tag;
+        }
+    }
+
+    private static final int KIND = 0;
+    private static final int COUNT = 1;
+    private static final int PRICE = 2;
+    private static final int TAG = 3;
+
+    private SpreadSheetTable<Row> mTable;
+
+    @Before
+    public void setUp() {
+        mTable = new SpreadSheetTable<>();
+        mTable.addAll(Arrays.asList(
+                new Row("a", 1, 0.5, 10L),
+                new Row("b", null, 12.25, "Label"),
+                new Row(null, 5, -3, null),
+                new Row("a", 15, 0.1 + 0.2, 110L)));
+    }
+
+    @Test
+    public void notNeverMatchesNull() {
+        assertEquals(Arrays.asList(2, 3), filter(RowFilter.not(RowFilter.equalTo(COUNT, 1))));
+        assertEquals(Arrays.asList(1), filter(RowFilter.not(RowFilter.equalTo(KIND, "a"))));
+        assertEquals(Arrays.asList(0, 2, 3), filter(RowFilter.not(RowFilter.isNull(COUNT))));
+        assertEquals(Arrays.asList(1), filter(RowFilter.not(RowFilter.isNotNull(COUNT))));
+        assertEquals(Arrays.asList(0, 1, 3), filter(RowFilter.not(RowFilter.not(RowFilter.isNotNull(KIND)))));
+    }
+
+    @Test
+    public void notDistributesOverAndOr() {
+        // Rows 1 and 2 hold a null in one of the columns
+        assertEquals(Arrays.asList(0, 3), filter(RowFilter.not(RowFilter.and(RowFilter.equalTo(KIND, "b"), RowFilter.atLeast(COUNT, 2)))));
+        assertEquals(Arrays.asList(0, 3), filter(RowFilter.not(RowFilter.or(RowFilter.equalTo(KIND, "b"), RowFilter.isNull(COUNT)))));
+    }
+
+    @Test
+    public void indexedConditionsCombineAsBitmaps() throws IllegalAccessException {
+        RowFilter filter = RowFilter.or(RowFilter.equalTo(KIND, "b"), RowFilter.not(RowFilter.in(KIND, "a", "b")));
+        assertTrue(prepare(filter) instanceof RoaringBitmap);
+        // The null kind is in neither
+        assertEquals(Arrays.asList(1), filter(filter));
+
+        filter = RowFilter.and(RowFilter.isNotNull(KIND), RowFilter.not(RowFilter.equalTo(KIND, "a")));
+        assertTrue(prepare(filter) instanceof RoaringBitmap);
+        assertEquals(Arrays.asList(1), filter(filter));
+
+        filter = RowFilter.and(RowFilter.equalTo(KIND, "a"), RowFilter.atLeast(COUNT, 2));
+        assertFalse(prepare(filter) instanceof RoaringBitmap);
+        assertEquals(Arrays.asList(3), filter(filter));
+    }
+
+    @Test
+    public void containsFormatsNumbersAsDisplayed() {
+        assertEquals(Arrays.asList(0, 3), filter(RowFilter.contains(COUNT, "1")));
+        assertEquals(Arrays.asList(1), filter(RowFilter.contains(PRICE, "2.2")));
+        assertEquals(Arrays.asList(3), filter(RowFilter.contains(PRICE, "0.3")));
+        assertEquals(Arrays.asList(2), filter(RowFilter.contains(PRICE, "-3.0")));
+        assertEquals(Arrays.asList(0, 3), filter(RowFilter.contains(TAG, "10")));
+        assertEquals(Arrays.asList(1), filter(RowFilter.contains(TAG, "lab")));
+    }
+
+    @Test
+    public void preparedValuesAreNotChangedByLaterLoads() throws IllegalAccessException {
+        ColumnVector vector = mTable.getFields().get(COUNT).getColumnVector();
+        vector.load(mTable.getData());
+        ColumnVector.Values values = vector.values();
+
+        mTable.add(new Row("c", null, 0, null));
+        DataSnapshot<Row> data = mTable.getData();
+        vector.load(data);
+        int rowId = data.get(4).mRowId;
+        assertTrue(vector.values().nulls.get(rowId));
+        assertFalse(values.nulls.get(rowId));
+    }
+
+    private Object prepare(RowFilter filter) throws IllegalAccessException {
+        return filter.predicate(mTable.getFields()).prepare(mTable.getData());
+    }
+
+    private List<Integer> filter(RowFilter filter) {
+        mTable.setFilter(filter);
+        RowIndexView<Row> view = mTable.filter(mTable.getData());
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < view.size(); i++) {
+            positions.add(view.getPosition(i));
+        }
+        return positions;
+    }
+
+}
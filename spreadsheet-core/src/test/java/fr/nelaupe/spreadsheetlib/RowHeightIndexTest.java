@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RowHeightIndexTest {
+
+    private static final int ESTIMATED = 40;
+
+    @Test
+    public void empty() {
+        RowHeightIndex index = new RowHeightIndex(ESTIMATED);
+        assertEquals(0, index.getTotalHeight());
+        assertEquals(-1, index.getRowAt(0));
+        assertEquals(-1, index.nextUnmeasured(0));
+    }
+
+    @Test
+    public void offsetsFollowMeasuredHeights() {
+        RowHeightIndex index = new RowHeightIndex(ESTIMATED);
+        index.append(4);
+        index.setHeight(1, 100);
+
+        assertEquals(0, index.getOffset(0));
+        assertEquals(40, index.getOffset(1));
+        assertEquals(140, index.getOffset(2));
+        assertEquals(220, index.getTotalHeight());
+
+        assertEquals(0, index.getRowAt(-5));
+        assertEquals(1, index.getRowAt(40));
+        assertEquals(1, index.getRowAt(139));
+        assertEquals(2, index.getRowAt(140));
+        assertEquals(3, index.getRowAt(10000));
+
+        assertEquals(0, index.nextUnmeasured(0));
+        assertEquals(2, index.nextUnmeasured(1));
+    }
+
+    @Test
+    public void invalidateAllKeepsHeightsAsEstimates() {
+        RowHeightIndex index = new RowHeightIndex(ESTIMATED);
+        index.append(3);
+        index.setHeight(0, 10);
+        index.setHeight(1, 20);
+
+        index.invalidateAll();
+        assertTrue(index.isStale(0));
+        assertTrue(index.isStale(1));
+        assertFalse(index.isStale(2));
+        assertEquals(70, index.getTotalHeight());
+
+        index.setHeight(0, 15);
+        assertFalse(index.isStale(0));
+        assertEquals(75, index.getTotalHeight());
+    }
+
+    @Test
+    public void randomOperationsMatchList() {
+        Random random = new Random(3);
+        RowHeightIndex index = new RowHeightIndex(ESTIMATED);
+        // Measured height of each row, null while unmeasured
+        List<Integer> heights = new ArrayList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            int operation = random.nextInt(6);
+            if (operation == 0 || heights.isEmpty()) {
+                int count = 1 + random.nextInt(5);
+                index.append(count);
+                for (int i = 0; i < count; i++) {
+                    heights.add(null);
+                }
+            } else if (operation == 1) {
+                int row = random.nextInt(heights.size() + 1);
+                int count = 1 + random.nextInt(3);
+                index.insert(row, count);
+                for (int i = 0; i < count; i++) {
+                    heights.add(row, null);
+                }
+            } else if (operation == 2) {
+                int row = random.nextInt(heights.size());
+                int count = 1 + random.nextInt(Math.min(3, heights.size() - row));
+                index.remove(row, count);
+                for (int i = 0; i < count; i++) {
+                    heights.remove(row);
+                }
+            } else if (operation == 3) {
+                int row = random.nextInt(heights.size());
+                index.invalidate(row);
+                heights.set(row, null);
+            } else {
+                int row = random.nextInt(heights.size());
+                int height = 1 + random.nextInt(200);
+                index.setHeight(row, height);
+                heights.set(row, height);
+            }
+
+            assertEquals(heights.size(), index.size());
+            if (step % 50 == 0) {
+                assertSameHeights(heights, index);
+            }
+        }
+        assertSameHeights(heights, index);
+    }
+
+    private static void assertSameHeights(List<Integer> heights, RowHeightIndex index) {
+        int offset = 0;
+        int unmeasured = -1;
+        for (int row = heights.size() - 1; row >= 0; row--) {
+            if (heights.get(row) == null) {
+                unmeasured = row;
+            }
+        }
+        assertEquals(unmeasured, index.nextUnmeasured(0));
+
+        for (int row = 0; row < heights.size(); row++) {
+            Integer height = heights.get(row);
+            int expected = height == null ? ESTIMATED : height;
+            assertEquals(height != null, index.isMeasured(row));
+            assertEquals(expected, index.getHeight(row));
+            assertEquals(offset, index.getOffset(row));
+            assertEquals(row, index.getRowAt(offset));
+            assertEquals(row, index.getRowAt(offset + expected - 1));
+            offset += expected;
+        }
+        assertEquals(offset, index.getTotalHeight());
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpreadSheetDataModelTest {
+
+    public static class Row extends SpreadSheetData {
+
+        @SpreadSheetCell(name = "value", size = 100, position = 1)
+        public int value;
+
+        Row(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final Comparator<Row> BY_VALUE = new Comparator<Row>() {
+        @Override
+        public int compare(Row lhs, Row rhs) {
+            return lhs.value < rhs.value ? -1 : (lhs.value == rhs.value ? 0 : 1);
+        }
+    };
+
+    @Test
+    public void ownerReadsItsOwnWrites() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        model.add(new Row(1));
+        assertTrue(model.hasPending());
+        assertEquals(1, model.getData().size());
+        assertFalse(model.hasPending());
+    }
+
+    @Test
+    public void appendsShareTheBackingArray() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        model.add(new Row(1));
+        DataSnapshot<Row> first = model.publish();
+        model.add(new Row(2));
+        DataSnapshot<Row> second = model.publish();
+
+        assertTrue(second.isAppendOf(first));
+        assertEquals(1, first.size());
+        assertEquals(Arrays.asList(1, 2), values(second));
+    }
+
+    @Test
+    public void ringBufferKeepsTheLastRows() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        final List<Integer> evicted = new ArrayList<>();
+        model.setOnRowsEvictedListener(new OnRowsEvictedListener<Row>() {
+            @Override
+            public void onRowsEvicted(List<Row> rows) {
+                for (Row row : rows) {
+                    assertTrue(row.mEvicted);
+                    evicted.add(row.value);
+                }
+            }
+        });
+        model.setCapacity(3);
+
+        for (int value = 0; value < 10; value++) {
+            model.add(new Row(value));
+            model.publish();
+        }
+
+        DataSnapshot<Row> data = model.getData();
+        assertEquals(Arrays.asList(7, 8, 9), values(data));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6), evicted);
+        assertEquals(7, data.getEvictedCount());
+        // Row ids are recycled, caches by row id stay bounded
+        assertEquals(3, data.getRowIdCount());
+        for (int position = 0; position < data.size(); position++) {
+            Row row = data.get(position);
+            assertFalse(row.mEvicted);
+            assertEquals(position, data.getPosition(row.mRowId));
+        }
+    }
+
+    @Test
+    public void batchLargerThanCapacity() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        model.setCapacity(2);
+        for (int value = 0; value < 5; value++) {
+            model.add(new Row(value));
+        }
+        assertEquals(Arrays.asList(3, 4), values(model.publish()));
+    }
+
+    @Test
+    public void shrinkingTheCapacityEvictsTheOldestRows() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        for (int value = 0; value < 5; value++) {
+            model.add(new Row(value));
+        }
+        model.publish();
+
+        DataSnapshot<Row> data = model.setCapacity(2);
+        assertEquals(Arrays.asList(3, 4), values(data));
+        assertEquals(3, data.getEvictedCount());
+    }
+
+    @Test
+    public void sortIsStable() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        Row first = new Row(1);
+        Row second = new Row(1);
+        model.addAll(Arrays.asList(new Row(3), first, new Row(0), second));
+
+        DataSnapshot<Row> sorted = model.sort(BY_VALUE);
+        assertEquals(Arrays.asList(0, 1, 1, 3), values(sorted));
+        assertTrue(sorted.get(1) == first);
+        assertTrue(sorted.get(2) == second);
+    }
+
+    @Test
+    public void sortMergesRowsPublishedMeanwhile() {
+        final SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        model.setCapacity(6);
+        for (int value : new int[]{5, 3, 9, 1, 7, 2}) {
+            model.add(new Row(value));
+        }
+        model.publish();
+
+        final boolean[] published = {false};
+        DataSnapshot<Row> sorted = model.sort(new Comparator<Row>() {
+            @Override
+            public int compare(Row lhs, Row rhs) {
+                if (!published[0]) {
+                    published[0] = true;
+                    publishFromOtherThread(model, 4, 0);
+                }
+                return BY_VALUE.compare(lhs, rhs);
+            }
+        });
+
+        // 5 and 3 were evicted by the rows published during the sort
+        assertEquals(Arrays.asList(0, 1, 2, 4, 7, 9), values(sorted));
+    }
+
+    @Test
+    public void clearRestartsTheRowIds() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        model.add(new Row(1));
+        model.publish();
+
+        DataSnapshot<Row> data = model.clear();
+        assertEquals(0, data.size());
+        model.add(new Row(2));
+        assertEquals(0, model.publish().get(0).mRowId);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rowCannotBeAddedTwice() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        Row row = new Row(1);
+        model.add(row);
+        model.add(row);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rowCannotBeAddedToTwoModels() {
+        Row row = new Row(1);
+        new SpreadSheetDataModel<Row>().add(row);
+        new SpreadSheetDataModel<Row>().add(row);
+    }
+
+    @Test
+    public void failedAddAllAddsNothing() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        Row added = new Row(1);
+        Row first = new Row(2);
+        model.add(added);
+        try {
+            model.addAll(Arrays.asList(first, added));
+        } catch (IllegalStateException expected) {
+            // first is released
+        }
+        model.add(first);
+        assertEquals(Arrays.asList(1, 2), values(model.publish()));
+    }
+
+    @Test
+    public void evictedOrClearedRowsCanBeAddedAgain() {
+        SpreadSheetDataModel<Row> model = new SpreadSheetDataModel<>();
+        model.setCapacity(1);
+        Row evicted = new Row(1);
+        model.add(evicted);
+        model.add(new Row(2));
+        model.publish();
+        model.add(evicted);
+        assertEquals(Arrays.asList(1), values(model.publish()));
+
+        model.clear();
+        model.add(evicted);
+        assertEquals(Arrays.asList(1), values(model.publish()));
+    }
+
+    private static void publishFromOtherThread(final SpreadSheetDataModel<Row> model, final int... values) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (int value : values) {
+                    model.add(new Row(value));
+                }
+                model.publish();
+            }
+        };
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<Integer> values(List<Row> rows) {
+        List<Integer> values = new ArrayList<>();
+        for (Row row : rows) {
+            values.add(row.value);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cell views created ahead of time, by column and view type. The sheet takes
+ * a view from here and binds it with {@link SpreadSheetAdaptor#bindCellView}
+ * instead of asking the adaptor for a new one.
+ */
+final class CellViewPool implements MemoryBudget.Component {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    // Rough size of an idle cell view with its text layout
+    private static final int VIEW_BYTES = 1024;
+
+    private final Map<CellInformation, SparseArray<ArrayList<View>>> mViews;
+    private int mCapacity;
+    private int mSize;
+
+    CellViewPool() {
+        mViews = new HashMap<>();
+        mCapacity = DEFAULT_CAPACITY;
+    }
+
+    /**
+     * @return a pooled view, null if there is none left
+     */
+    synchronized View acquire(CellInformation cell, int viewType) {
+        ArrayList<View> views = views(cell, viewType, false);
+        if (views == null || views.isEmpty()) {
+            return null;
+        }
+        mSize--;
+        return views.remove(views.size() - 1);
+    }
+
+    /**
+     * @return false if the pool of this column and type is full
+     */
+    synchronized boolean release(CellInformation cell, int viewType, View view) {
+        ArrayList<View> views = views(cell, viewType, true);
+        if (views.size() >= mCapacity || view.getParent() != null) {
+            return false;
+        }
+        views.add(view);
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Views kept by column and view type.
+     */
+    synchronized void setCapacity(int capacity) {
+        mCapacity = capacity;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    synchronized void clear() {
+        mViews.clear();
+        mSize = 0;
+    }
+
+    @Override
+    public synchronized long getMemoryUsage() {
+        return (long) mSize * VIEW_BYTES;
+    }
+
+    @Override
+    public void trim() {
+        clear();
+    }
+
+    private ArrayList<View> views(CellInformation cell, int viewType, boolean create) {
+        SparseArray<ArrayList<View>> types = mViews.get(cell);
+        if (types == null) {
+            if (!create) return null;
+            types = new SparseArray<>();
+            mViews.put(cell, types);
+        }
+
+        ArrayList<View> views = types.get(viewType);
+        if (views == null && create) {
+            views = new ArrayList<>();
+            types.put(viewType, views);
+        }
+        return views;
+    }
+
+}
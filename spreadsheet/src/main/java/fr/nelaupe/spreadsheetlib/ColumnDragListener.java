@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Touch handling of the header cells: dragging the right edge of a cell
+ * resizes its column, a long press then a drag moves the column.
+ */
+class ColumnDragListener implements View.OnTouchListener, View.OnLongClickListener {
+
+    private static final int IDLE = 0;
+    private static final int RESIZING = 1;
+    private static final int MOVING = 2;
+
+    private final SpreadSheetView mView;
+    private final int mEdge;
+    private final int mMinWidth;
+
+    private int mMode;
+    private float mDownX;
+    private float mDownRawX;
+    private int mStartWidth;
+    private int mAnchor;
+
+    ColumnDragListener(SpreadSheetView view) {
+        mView = view;
+        float density = view.getResources().getDisplayMetrics().density;
+        mEdge = (int) (16 * density);
+        mMinWidth = (int) (32 * density);
+    }
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+                mDownX = event.getX();
+                mDownRawX = event.getRawX();
+                if (mDownX >= v.getWidth() - mEdge) {
+                    mMode = RESIZING;
+                    mStartWidth = v.getWidth();
+                    v.getParent().requestDisallowInterceptTouchEvent(true);
+                    return true;
+                }
+                return false;
+
+            case MotionEvent.ACTION_MOVE:
+                if (mMode == RESIZING) {
+                    int width = Math.max(mMinWidth, mStartWidth + (int) (event.getRawX() - mDownRawX));
+                    mView.resizeColumn(displayIndex(v), width);
+                    return true;
+                }
+                if (mMode == MOVING) {
+                    // Offsets come from the widths, the cells may not be laid out at their new place yet
+                    int x = mAnchor + (int) (event.getRawX() - mDownRawX);
+                    int to = displayIndexAt((ViewGroup) v.getParent(), x);
+                    mView.moveColumn(displayIndex(v), to);
+                    return true;
+                }
+                return false;
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (mMode != IDLE) {
+                    mMode = IDLE;
+                    v.getParent().requestDisallowInterceptTouchEvent(false);
+                    return true;
+                }
+                return false;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onLongClick(View v) {
+        if (mMode != IDLE) return false;
+
+        mMode = MOVING;
+        mAnchor = v.getLeft() + (int) mDownX;
+        v.getParent().requestDisallowInterceptTouchEvent(true);
+        return true;
+    }
+
+    private static int displayIndex(View cell) {
+        return ((ViewGroup) cell.getParent()).indexOfChild(cell);
+    }
+
+    private static int displayIndexAt(ViewGroup row, int x) {
+        int right = 0;
+        for (int i = 0; i < row.getChildCount(); i++) {
+            right += row.getChildAt(i).getWidth();
+            if (x < right) {
+                return i;
+            }
+        }
+        return row.getChildCount() - 1;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Display order and width of the columns of a {@link SpreadSheetView}.
+ * Columns are identified by their index in {@link SpreadSheetAdaptor#getFields()},
+ * their display index is the index of their cell in a row.
+ */
+@SuppressWarnings("unused")
+public class ColumnLayout {
+
+    public static final int DEFAULT_WIDTH = 0;
+
+    private int[] mOrder;
+    private int[] mDisplay;
+    private int[] mWidths;
+
+    public ColumnLayout() {
+        reset(0);
+    }
+
+    public ColumnLayout(ColumnLayout other) {
+        set(other);
+    }
+
+    public void set(ColumnLayout other) {
+        mOrder = other.mOrder.clone();
+        mDisplay = other.mDisplay.clone();
+        mWidths = other.mWidths.clone();
+    }
+
+    /**
+     * Goes back to the order of the fields and their default width.
+     */
+    public void reset(int count) {
+        mOrder = new int[count];
+        mDisplay = new int[count];
+        mWidths = new int[count];
+        for (int i = 0; i < count; i++) {
+            mOrder[i] = i;
+            mDisplay[i] = i;
+        }
+    }
+
+    public int size() {
+        return mOrder.length;
+    }
+
+    /**
+     * @return the column shown at this display index
+     */
+    public int getColumn(int displayIndex) {
+        return mOrder[displayIndex];
+    }
+
+    public int getDisplayIndex(int column) {
+        return mDisplay[column];
+    }
+
+    /**
+     * Moves the column at display index `from` to display index `to`, shifting the columns in between.
+     */
+    public void move(int from, int to) {
+        int column = mOrder[from];
+        if (from < to) {
+            System.arraycopy(mOrder, from + 1, mOrder, from, to - from);
+        } else {
+            System.arraycopy(mOrder, to, mOrder, to + 1, from - to);
+        }
+        mOrder[to] = column;
+
+        for (int i = Math.min(from, to); i <= Math.max(from, to); i++) {
+            mDisplay[mOrder[i]] = i;
+        }
+    }
+
+    /**
+     * @return the width set for the column in pixels, {@link #DEFAULT_WIDTH} if none
+     */
+    public int getWidth(int column) {
+        return mWidths[column];
+    }
+
+    public void setWidth(int column, int width) {
+        mWidths[column] = width;
+    }
+
+}
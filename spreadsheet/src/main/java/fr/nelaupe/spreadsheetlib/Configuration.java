@@ -19,18 +19,21 @@ public class Configuration {
     private final float screenDensity;
 
     private final TableRow.LayoutParams wrapWrapTableRowParams;
-    private final Context mContext;
+    private Context mContext;
     private float mRowHeight;
     private float mHeaderTextSize;
     private float mTextSize;
     private float mMinFixedRowWidth;
     private float mHeaderRowHeight;
     private int mHeaderBackgroundColor;
+    private int mGroupBackgroundColor;
     private int mHeaderTextColor;
     private int mTextColor;
     private int mTextGravity;
     private int mTextPaddingLeft;
     private int mTextPaddingRight;
+    private boolean mVariableRowHeight;
+    private boolean mFixedLayout;
 
     public Configuration(Context context) {
         mContext = context;
@@ -50,6 +53,14 @@ public class Configuration {
         mHeaderBackgroundColor = color;
     }
 
+    public int getGroupColor() {
+        return (mGroupBackgroundColor == 0) ? mContext.getResources().getColor(R.color.group_color) : mGroupBackgroundColor;
+    }
+
+    public void setGroupBackgroundColor(int color) {
+        mGroupBackgroundColor = color;
+    }
+
     public float getTextSize() {
         return (mTextSize == 0) ? mContext.getResources().getDimension(R.dimen.text) : mTextSize;
     }
@@ -90,6 +101,31 @@ public class Configuration {
         mRowHeight = computeSize(rowHeight);
     }
 
+    /**
+     * When enabled, {@link #getRowHeight()} is the minimum height of a row and
+     * rows grow to fit multi-line cells.
+     */
+    public boolean isVariableRowHeight() {
+        return mVariableRowHeight;
+    }
+
+    public void setVariableRowHeight(boolean variableRowHeight) {
+        mVariableRowHeight = variableRowHeight;
+    }
+
+    public boolean isFixedLayout() {
+        return mFixedLayout;
+    }
+
+    /**
+     * Lays rows out with the column widths and row height of the configuration
+     * instead of measuring every cell, only the rows near the viewport are
+     * measured. Ignored with a variable row height.
+     */
+    public void setFixedLayout(boolean fixedLayout) {
+        mFixedLayout = fixedLayout;
+    }
+
     public int getHeaderRowHeight() {
         return (int) ((mHeaderRowHeight == 0) ? mContext.getResources().getDimension(R.dimen.rowHeight) : mHeaderRowHeight);
     }
@@ -139,6 +175,13 @@ public class Configuration {
         return wrapWrapTableRowParams;
     }
 
+    /**
+     * Resources are read from the context of the new activity once a retained sheet is restored.
+     */
+    void setContext(Context context) {
+        mContext = context;
+    }
+
     public Context getContext() {
         return mContext;
     }
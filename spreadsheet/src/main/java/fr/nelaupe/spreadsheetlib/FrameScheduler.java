@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a task on the handler thread at most once per frame, however many
+ * times it is scheduled in between. {@link #schedule()} is thread safe.
+ */
+final class FrameScheduler implements Runnable {
+
+    static final long FRAME_INTERVAL = 16;
+
+    private final Handler mHandler;
+    private final Runnable mTask;
+    private final AtomicBoolean mScheduled;
+    private long mLastRun;
+
+    FrameScheduler(Handler handler, Runnable task) {
+        mHandler = handler;
+        mTask = task;
+        mScheduled = new AtomicBoolean();
+    }
+
+    void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            long delay = mLastRun + FRAME_INTERVAL - SystemClock.uptimeMillis();
+            mHandler.postDelayed(this, Math.max(0, delay));
+        }
+    }
+
+    void cancel() {
+        mHandler.removeCallbacks(this);
+        mScheduled.set(false);
+    }
+
+    boolean isScheduled() {
+        return mScheduled.get();
+    }
+
+    @Override
+    public void run() {
+        mScheduled.set(false);
+        mLastRun = SystemClock.uptimeMillis();
+        mTask.run();
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accounts the memory held by the caches of a sheet and evicts them under
+ * pressure. Each component is registered with the
+ * {@link ComponentCallbacks2#onTrimMemory(int)} level from which it is
+ * evicted: components with a lower level are the cheapest to rebuild and go
+ * first, both on trim and when the usage exceeds the budget.
+ */
+@SuppressWarnings("unused")
+public class MemoryBudget {
+
+    public interface Component {
+
+        /**
+         * @return the approximate memory held, in bytes
+         */
+        long getMemoryUsage();
+
+        /**
+         * Gives back the memory, the component rebuilds on demand.
+         */
+        void trim();
+    }
+
+    private static class Entry {
+        final String name;
+        final int level;
+        final Component component;
+
+        Entry(String name, int level, Component component) {
+            this.name = name;
+            this.level = level;
+            this.component = component;
+        }
+    }
+
+    private final List<Entry> mEntries;
+    private long mBudget;
+
+    public MemoryBudget(long budget) {
+        mEntries = new ArrayList<>();
+        mBudget = budget;
+    }
+
+    /**
+     * @param level the trim level from which the component is evicted
+     */
+    public synchronized void register(String name, int level, Component component) {
+        unregister(name);
+        int index = 0;
+        while (index < mEntries.size() && mEntries.get(index).level <= level) {
+            index++;
+        }
+        mEntries.add(index, new Entry(name, level, component));
+    }
+
+    public synchronized void unregister(String name) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).name.equals(name)) {
+                mEntries.remove(i);
+                return;
+            }
+        }
+    }
+
+    public synchronized void setBudget(long budget) {
+        mBudget = budget;
+        enforce();
+    }
+
+    public synchronized long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * @return the usage of every component, in eviction order
+     */
+    public synchronized Map<String, Long> getUsage() {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        for (Entry entry : mEntries) {
+            usage.put(entry.name, entry.component.getMemoryUsage());
+        }
+        return usage;
+    }
+
+    public synchronized long getUsed() {
+        long used = 0;
+        for (Entry entry : mEntries) {
+            used += entry.component.getMemoryUsage();
+        }
+        return used;
+    }
+
+    /**
+     * Evicts components in order until the usage fits in the budget.
+     */
+    public synchronized void enforce() {
+        long used = getUsed();
+        for (int i = 0; i < mEntries.size() && used > mBudget; i++) {
+            Component component = mEntries.get(i).component;
+            long usage = component.getMemoryUsage();
+            if (usage == 0) continue;
+
+            component.trim();
+            used -= usage - component.getMemoryUsage();
+        }
+    }
+
+    /**
+     * Evicts every component registered at or below the level.
+     */
+    public synchronized void onTrimMemory(int level) {
+        for (Entry entry : mEntries) {
+            if (entry.level > level) break;
+            entry.component.trim();
+        }
+    }
+
+    /**
+     * Callbacks forwarding the trim levels to this budget, to register on API 14 and above.
+     */
+    public ComponentCallbacks createCallbacks() {
+        return new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                MemoryBudget.this.onTrimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                MemoryBudget.this.onTrimMemory(TRIM_MEMORY_COMPLETE);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        };
+    }
+
+    /**
+     * Default budget, an eighth of the heap the application may use.
+     */
+    public static long defaultBudget() {
+        return Runtime.getRuntime().maxMemory() / 8;
+    }
+
+}
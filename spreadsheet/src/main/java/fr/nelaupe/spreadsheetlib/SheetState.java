@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib;
+
+/**
+ * Built state of a sheet, kept across configuration changes so the recreated
+ * view does not add, reflect and sort the rows again. The adaptor keeps the
+ * fields, the rows in their sorted order, the sort caches and the selection;
+ * the view state is copied here. It holds no view, only the context of the
+ * adaptor, which is replaced on restore.
+ *
+ * <pre>
+ * public Object onRetainNonConfigurationInstance() {
+ *     return spreadSheetView.retainState();
+ * }
+ *
+ * SheetState state = (SheetState) getLastNonConfigurationInstance();
+ * if (state != null) {
+ *     spreadSheetView.restoreState(state);
+ * }
+ * </pre>
+ */
+@SuppressWarnings("unused")
+public class SheetState {
+
+    private final SpreadSheetAdaptor<SpreadSheetData> mAdaptor;
+    private final ColumnLayout mColumns;
+    private final int mSortColumn;
+    private final boolean mSortDescending;
+    private final int mScrollX;
+    private final int mScrollY;
+
+    SheetState(SpreadSheetAdaptor<SpreadSheetData> adaptor, ColumnLayout columns, int sortColumn, boolean sortDescending, int scrollX, int scrollY) {
+        mAdaptor = adaptor;
+        mColumns = columns;
+        mSortColumn = sortColumn;
+        mSortDescending = sortDescending;
+        mScrollX = scrollX;
+        mScrollY = scrollY;
+    }
+
+    public SpreadSheetAdaptor<SpreadSheetData> getAdaptor() {
+        return mAdaptor;
+    }
+
+    /**
+     * @return the order and widths of the columns
+     */
+    public ColumnLayout getColumns() {
+        return mColumns;
+    }
+
+    public int getSortColumn() {
+        return mSortColumn;
+    }
+
+    public boolean isSortDescending() {
+        return mSortDescending;
+    }
+
+    public int getScrollX() {
+        return mScrollX;
+    }
+
+    public int getScrollY() {
+        return mScrollY;
+    }
+
+}
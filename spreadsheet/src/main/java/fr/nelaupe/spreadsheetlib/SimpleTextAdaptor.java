@@ -9,6 +9,7 @@ import android.view.Gravity;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.TextView;
 
 import fr.nelaupe.spreadsheetlib.view.ArrowButton;
@@ -27,15 +28,99 @@ public class SimpleTextAdaptor extends SpreadSheetAdaptor<SpreadSheetData> {
     @Override
     public View getCellView(CellInformation cell, Object object) {
         TextView recyclableTextView = new TextView(getContext());
-        recyclableTextView.setText((object == null ? "" : object.toString()));
+        setValue(recyclableTextView, object);
         recyclableTextView.setTextColor(getConfiguration().getTextColor());
         recyclableTextView.setGravity(getConfiguration().getTextGravity());
         recyclableTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, getConfiguration().getTextSize());
         recyclableTextView.setWidth(getConfiguration().computeSize(cell.getSize()));
-        recyclableTextView.setHeight(getConfiguration().getRowHeight());
+        if (getConfiguration().isVariableRowHeight()) {
+            recyclableTextView.setMinHeight(getConfiguration().getRowHeight());
+        } else {
+            recyclableTextView.setHeight(getConfiguration().getRowHeight());
+        }
         return recyclableTextView;
     }
 
+    @Override
+    public boolean bindCellView(View view, CellInformation cell, Object object) {
+        if (view.getClass() != TextView.class) return false;
+
+        setValue((TextView) view, object);
+        return true;
+    }
+
+    @Override
+    public boolean bindLong(View view, CellInformation cell, long value) {
+        if (view.getClass() != TextView.class) return false;
+
+        char[] buffer = buffer((TextView) view);
+        ((TextView) view).setText(buffer, 0, CharFormatter.formatLong(value, buffer));
+        return true;
+    }
+
+    @Override
+    public boolean bindFloat(View view, CellInformation cell, float value) {
+        if (view.getClass() != TextView.class) return false;
+
+        char[] buffer = buffer((TextView) view);
+        ((TextView) view).setText(buffer, 0, CharFormatter.formatDouble(value, CharFormatter.FLOAT_DIGITS, buffer));
+        return true;
+    }
+
+    @Override
+    public boolean bindDouble(View view, CellInformation cell, double value) {
+        if (view.getClass() != TextView.class) return false;
+
+        char[] buffer = buffer((TextView) view);
+        ((TextView) view).setText(buffer, 0, CharFormatter.formatDouble(value, CharFormatter.DOUBLE_DIGITS, buffer));
+        return true;
+    }
+
+    @Override
+    public boolean bindBoolean(View view, CellInformation cell, boolean value) {
+        if (view.getClass() != TextView.class) return false;
+
+        // Never written, the arrays can be shared
+        char[] text = value ? CharFormatter.TRUE : CharFormatter.FALSE;
+        ((TextView) view).setText(text, 0, text.length);
+        return true;
+    }
+
+    @Override
+    public boolean bindText(View view, CellInformation cell, CharSequence text) {
+        if (view.getClass() != TextView.class) return false;
+
+        ((TextView) view).setText(text);
+        return true;
+    }
+
+    /**
+     * Numbers are written in the buffer of the view, the same way they are bound later.
+     */
+    private void setValue(TextView view, Object object) {
+        if (object instanceof Double) {
+            bindDouble(view, null, (Double) object);
+        } else if (object instanceof Float) {
+            bindFloat(view, null, (Float) object);
+        } else if (object instanceof Long || object instanceof Integer || object instanceof Short || object instanceof Byte) {
+            bindLong(view, null, ((Number) object).longValue());
+        } else {
+            view.setText(object == null ? "" : object.toString());
+        }
+    }
+
+    /**
+     * TextView keeps the array given to setText, every view needs its own.
+     */
+    private static char[] buffer(TextView view) {
+        char[] buffer = (char[]) view.getTag(R.id.cell_text_buffer);
+        if (buffer == null) {
+            buffer = new char[CharFormatter.BUFFER_SIZE];
+            view.setTag(R.id.cell_text_buffer, buffer);
+        }
+        return buffer;
+    }
+
     @Override
     public ArrowButton getHeaderCellView(CellInformation cell) {
         ArrowButton button = new ArrowButton(getContext());
@@ -75,7 +160,36 @@ public class SimpleTextAdaptor extends SpreadSheetAdaptor<SpreadSheetData> {
         CheckBox checkBox = new CheckBox(getContext());
         checkBox.setWidth(getConfiguration().getMinFixedRowWidth());
         checkBox.setHeight(getConfiguration().getRowHeight());
+        bindFixedCellView(checkBox, name, position);
         return checkBox;
     }
 
+    @Override
+    public void bindFixedCellView(View view, String name, int position) {
+        if (!(view instanceof CheckBox)) return;
+
+        final int rowId = getRowId(position);
+        CheckBox checkBox = (CheckBox) view;
+        checkBox.setOnCheckedChangeListener(null);
+        checkBox.setChecked(getSelection().isSelected(rowId));
+        checkBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                getSelection().setSelected(rowId, isChecked);
+            }
+        });
+    }
+
+    @Override
+    public View getGroupFixedCellView(String name, RowGroup group) {
+        TextView textView = new TextView(getContext());
+        textView.setText((group.isExpanded() ? "- " : "+ ") + group.size());
+        textView.setTextColor(getConfiguration().getTextColor());
+        textView.setGravity(getConfiguration().getTextGravity());
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, getConfiguration().getTextSize());
+        textView.setWidth(getConfiguration().getMinFixedRowWidth());
+        textView.setHeight(getConfiguration().getRowHeight());
+        return textView;
+    }
+
 }
\ No newline at end of file
@@ -6,13 +6,7 @@ package fr.nelaupe.spreadsheetlib;
 import android.content.Context;
 import android.view.View;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import fr.nelaupe.spreadsheetlib.view.ArrowButton;
@@ -23,53 +17,20 @@ import fr.nelaupe.spreadsheetlib.view.ArrowButton;
  * Date 26/03/15
  */
 @SuppressWarnings({"unused", "unchecked"})
-public abstract class SpreadSheetAdaptor<TSelf extends SpreadSheetData> {
+public abstract class SpreadSheetAdaptor<TSelf extends SpreadSheetData> extends SpreadSheetTable<TSelf> {
+
+    // By BindType, the values are allocated once
+    private static final Object[] SAMPLE_VALUES = {0, 0L, 0f, 0d, Boolean.FALSE, "", null};
 
-    private List<TSelf> mData;
     private Configuration mConfiguration;
     private Set<String> mFixedViewData;
-    private List<AnnotationFields> mFields;
-    private List<Integer> mDisplayOnly;
 
     private OnItemClickListener<TSelf> mItemClickListener;
     private OnSortingListener mSortingListener;
 
     public SpreadSheetAdaptor(Context context) {
         mConfiguration = new Configuration(context);
-        mData = new ArrayList<>();
         mFixedViewData = new HashSet<>();
-        mFields = new ArrayList<>();
-        mDisplayOnly = new ArrayList<>();
-    }
-
-    public void displayColumn(ArrayList<Integer> columnNumber) {
-        mDisplayOnly.clear();
-        mDisplayOnly.addAll(columnNumber);
-    }
-
-    public void displayColumn(Integer... columnNumber) {
-        mDisplayOnly.clear();
-        mDisplayOnly.addAll(Arrays.asList(columnNumber));
-    }
-
-    public void add(TSelf data) {
-        mData.add(data);
-    }
-
-    public void addAll(List<TSelf> data) {
-        mData.addAll(data);
-    }
-
-    public List<TSelf> getData() {
-        return mData;
-    }
-
-    public TSelf get(int position) {
-        return mData.get(position);
-    }
-
-    public void clearData() {
-        mData = new ArrayList<>();
     }
 
     public void setOnSortingListener(OnSortingListener mSortingListener) {
@@ -110,72 +71,102 @@ public abstract class SpreadSheetAdaptor<TSelf extends SpreadSheetData> {
         return mConfiguration.getContext();
     }
 
+    /**
+     * Moves the adaptor to the context of a recreated activity, see {@link SheetState}.
+     */
+    public void setContext(Context context) {
+        mConfiguration.setContext(context);
+    }
+
     public abstract View getCellView(CellInformation cell, Object object);
 
-    public abstract ArrowButton getHeaderCellView(CellInformation cell);
+    /**
+     * Kind of view {@link #getCellView(CellInformation, Object)} returns for
+     * this value. Views created ahead of time are only bound to values of the
+     * same type.
+     */
+    public int getCellViewType(CellInformation cell, Object object) {
+        return 0;
+    }
 
-    public abstract View getFixedHeaderView(String name);
+    /**
+     * Kind of view for the values of a column of primitive fields, chosen without
+     * boxing them. By default the kind for a value of the same type, override it
+     * along with {@link #getCellViewType(CellInformation, Object)} when the kind
+     * depends on the value itself.
+     */
+    public int getCellViewType(CellInformation cell, AnnotationFields.BindType type) {
+        return getCellViewType(cell, sampleValue(type));
+    }
 
-    public abstract View getFixedCellView(String name, int position);
+    /**
+     * @return a shared value of the type, standing for all the values of the type
+     */
+    static Object sampleValue(AnnotationFields.BindType type) {
+        return SAMPLE_VALUES[type.ordinal()];
+    }
 
-    private void inspectFields() {
+    /**
+     * Updates a view returned by {@link #getCellView(CellInformation, Object)}
+     * with a new value.
+     *
+     * @return false if the view cannot be reused, a new one is then created
+     */
+    public boolean bindCellView(View view, CellInformation cell, Object object) {
+        return false;
+    }
 
-        if (getData().isEmpty()) {
-            return;
-        }
+    /*
+     *  Typed variants of bindCellView, called for the columns of primitive and
+     *  String fields so the value is not boxed. When they return false the
+     *  value is boxed and given to bindCellView.
+     */
 
-        mFields.clear();
-        mFields.addAll(get(0).defineField());
+    public boolean bindInt(View view, CellInformation cell, int value) {
+        return bindLong(view, cell, value);
+    }
 
-        Collections.sort(mFields, new Comparator<AnnotationFields>() {
-            @Override
-            public int compare(AnnotationFields lhs, AnnotationFields rhs) {
-                Integer positionL = lhs.getAnnotation().getPosition();
-                Integer positionR = rhs.getAnnotation().getPosition();
+    public boolean bindLong(View view, CellInformation cell, long value) {
+        return false;
+    }
 
-                return positionL.compareTo(positionR);
-            }
-        });
+    public boolean bindFloat(View view, CellInformation cell, float value) {
+        return bindDouble(view, cell, value);
     }
 
-    public List<AnnotationFields> getFields() {
-        if (mFields.isEmpty()) {
-            inspectFields();
-        }
+    public boolean bindDouble(View view, CellInformation cell, double value) {
+        return false;
+    }
 
-        if (mDisplayOnly.isEmpty()) {
-            return mFields;
-        } else {
-            List<AnnotationFields> returned = new ArrayList<>();
-            for (AnnotationFields field : mFields) {
-                if (mDisplayOnly.contains(field.getAnnotation().getPosition())) {
-                    returned.add(field);
-                }
-            }
-
-            return returned;
-        }
+    public boolean bindBoolean(View view, CellInformation cell, boolean value) {
+        return false;
+    }
 
+    /**
+     * @param text the value, empty for null
+     */
+    public boolean bindText(View view, CellInformation cell, CharSequence text) {
+        return false;
     }
 
-    public Comparator<TSelf> sortBy(final Field field) {
+    public abstract ArrowButton getHeaderCellView(CellInformation cell);
 
-        return new Comparator<TSelf>() {
-            @Override
-            public int compare(TSelf lhs, TSelf rhs) {
+    public abstract View getFixedHeaderView(String name);
 
-                try {
-                    Comparable lComparable = (Comparable) field.get(lhs);
-                    Comparable rComparable = (Comparable) field.get(rhs);
+    public abstract View getFixedCellView(String name, int position);
+
+    /**
+     * Refreshes a fixed cell from the adaptor state, e.g. after the selection changed.
+     */
+    public void bindFixedCellView(View view, String name, int position) {
+    }
 
-                    return lComparable.compareTo(rComparable);
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                    return 0;
-                }
-            }
-        };
+    public View getGroupCellView(CellInformation cell, Object value) {
+        return getCellView(cell, value);
     }
 
+    public View getGroupFixedCellView(String name, RowGroup group) {
+        return getFixedHeaderView((group.isExpanded() ? "- " : "+ ") + group.size());
+    }
 
 }
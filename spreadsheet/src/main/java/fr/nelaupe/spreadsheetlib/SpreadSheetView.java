@@ -16,22 +16,36 @@
 package fr.nelaupe.spreadsheetlib;
 
 import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.LinearLayout;
-import android.widget.TableLayout;
+import android.widget.ScrollView;
 import android.widget.TableRow;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import fr.nelaupe.spreadsheetlib.view.ArrowButton;
 import fr.nelaupe.spreadsheetlib.view.DispatcherHorizontalScrollView;
+import fr.nelaupe.spreadsheetlib.view.FixedRowLayout;
+import fr.nelaupe.spreadsheetlib.view.FixedTableLayout;
 
 /**
  * Created with IntelliJ
@@ -39,17 +53,80 @@ import fr.nelaupe.spreadsheetlib.view.DispatcherHorizontalScrollView;
  * Date 26/03/15
  */
 @SuppressWarnings({"unused", "unchecked"})
-public class SpreadSheetView extends LinearLayout implements View.OnClickListener {
+public class SpreadSheetView extends LinearLayout implements View.OnClickListener, OnSelectionChangedListener, OnPendingDataListener {
 
     private int mColumnSortSelected;
     private boolean mIsDESC;
 
-    private TableLayout mHeader;
-    private TableLayout mTable;
-    private TableLayout mFixed;
-    private TableLayout mFixedHeader;
+    private FixedTableLayout mHeader;
+    private FixedTableLayout mTable;
+    private FixedTableLayout mFixed;
+    private FixedTableLayout mFixedHeader;
+    private ScrollView mVerticalScroll;
+    private DispatcherHorizontalScrollView mHorizontalScroll;
+    private SheetState mRestoredState;
+    // Handed over by retainState(), work still running here must not touch the adaptor
+    private boolean mRetained;
 
     private boolean mAutoSorting;
+    private boolean mProgressiveSorting;
+    private boolean mFollowTail;
+    private ProgressiveSort<SpreadSheetData> mPendingSort;
+
+    private List<Integer> mGroupColumns;
+    private List<RowGroup> mGroups;
+    private DataSnapshot<SpreadSheetData> mGroupData;
+    // Rows the groups were computed from, the data or its filtered rows, and how
+    private List<SpreadSheetData> mGroupSource;
+    private GroupBy mGroupBy;
+    private Set<List<Object>> mExpandedGroups;
+    private int mGroupRequest;
+
+    private RowIndexView<SpreadSheetData> mFiltered;
+    private int mFilterRequest;
+    private boolean mFilterRunning;
+    private boolean mFilterAgain;
+    private AnnotationFields mFilterSortField;
+
+    private DataSnapshot<SpreadSheetData> mRendered;
+    // Rows keep the tag they were added with, evicted rows shift the positions of the others
+    private int mPositionBase;
+    private final DirtyCellSet mChangedCells = new DirtyCellSet();
+    // Ids of the rows changed while off screen
+    private final BitSet mStaleRows = new BitSet();
+    private RowHeightIndex mRowHeights;
+    private final ColumnLayout mColumns = new ColumnLayout();
+    // Fields the column layout was made for
+    private List<AnnotationFields> mLayoutFields;
+    private ColumnDragListener mColumnDragListener;
+
+    private volatile boolean mRebuildRequested;
+
+    private MemoryBudget mMemoryBudget;
+    private ComponentCallbacks mMemoryCallbacks;
+    // Caches may have grown since the budget was last enforced
+    private boolean mBudgetCheckRequested;
+    private final CellViewPool mViewPool = new CellViewPool();
+    private SnapshotCursor<SpreadSheetData> mCursor;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final FrameScheduler mFrameScheduler = new FrameScheduler(mHandler, new Runnable() {
+        @Override
+        public void run() {
+            if (mRetained) return;
+
+            if (mRebuildRequested) {
+                mRebuildRequested = false;
+                rebuild();
+            }
+            publishPending();
+            rebindChangedCells();
+            if (mBudgetCheckRequested) {
+                mBudgetCheckRequested = false;
+                mMemoryBudget.enforce();
+            }
+        }
+    });
 
     private SpreadSheetAdaptor<SpreadSheetData> mAdaptor;
 
@@ -120,14 +197,22 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
 
     private void init() {
         mIsDESC = false;
+        mProgressiveSorting = true;
+        mAdaptor.getSelection().addOnSelectionChangedListener(this);
+        mAdaptor.getDataModel().setOnPendingDataListener(this);
+        mAdaptor.getDataModel().setPublishOnRead(false);
+        mAdaptor.getDirtyCells().setOnPendingDataListener(this);
+        mExpandedGroups = new HashSet<>();
+        mRowHeights = new RowHeightIndex(mAdaptor.getConfiguration().getRowHeight());
+        mColumnDragListener = new ColumnDragListener(this);
 
         LayoutInflater inflater = (LayoutInflater) getContext().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         View inflatedView = inflater.inflate(R.layout.spread_sheet_layout, this, true);
 
-        mHeader = (TableLayout) inflatedView.findViewById(R.id.table_header);
-        mTable = (TableLayout) inflatedView.findViewById(R.id.scrollable_part);
-        mFixed = (TableLayout) inflatedView.findViewById(R.id.fixed_column);
-        mFixedHeader = (TableLayout) inflatedView.findViewById(R.id.fixed_column_header);
+        mHeader = (FixedTableLayout) inflatedView.findViewById(R.id.table_header);
+        mTable = (FixedTableLayout) inflatedView.findViewById(R.id.scrollable_part);
+        mFixed = (FixedTableLayout) inflatedView.findViewById(R.id.fixed_column);
+        mFixedHeader = (FixedTableLayout) inflatedView.findViewById(R.id.fixed_column_header);
 
         DispatcherHorizontalScrollView scrollViewTab = (DispatcherHorizontalScrollView) inflatedView.findViewById(R.id.scrollViewHorizontal);
         DispatcherHorizontalScrollView scrollViewHeader = (DispatcherHorizontalScrollView) inflatedView.findViewById(R.id.scrollViewHorizontalHeader);
@@ -136,6 +221,28 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
         scrollViewTab.setTarget(scrollViewHeader);
         scrollViewHeader.setTarget(scrollViewTab);
         scrollViewTab.setHorizontalScrollBarEnabled(true);
+        mHorizontalScroll = scrollViewTab;
+        initMemoryBudget(scrollViewTab);
+
+        mVerticalScroll = (ScrollView) inflatedView.findViewById(R.id.scrollViewVertical);
+        mVerticalScroll.getViewTreeObserver().addOnScrollChangedListener(new ViewTreeObserver.OnScrollChangedListener() {
+            @Override
+            public void onScrollChanged() {
+                updateViewport();
+                rebindStaleRows();
+            }
+        });
+        mVerticalScroll.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                restoreScroll();
+                updateViewport();
+                measureRows();
+            }
+        });
+        int screenHeight = getResources().getDisplayMetrics().heightPixels;
+        mTable.setViewport(0, screenHeight);
+        mFixed.setViewport(0, screenHeight);
     }
 
     @Deprecated
@@ -170,8 +277,9 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
 
             if (mAutoSorting) {
                 try {
-                    if (annotationFields.getField().get(mAdaptor.getData().get(0)) instanceof Comparable) {
-                        doSorting(columnPosition, mAdaptor.sortBy(annotationFields.getField()), annotationFields);
+                    SpreadSheetData first = renderedRow(0);
+                    if (first != null && annotationFields.get(first) instanceof Comparable) {
+                        doSorting(columnPosition, annotationFields);
                     }
                 } catch (IllegalAccessException e1) {
                     e1.printStackTrace();
@@ -184,9 +292,19 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
             }
 
         } else if (i == R.id.item) {
-            Integer position = (Integer) v.getTag(R.id.item_number);
-            if (mAdaptor.getItemClickListener() != null) {
-                mAdaptor.getItemClickListener().onItemClick(mAdaptor.get(position));
+            Integer position = positionOf(v);
+            SpreadSheetData row = position == null ? null : renderedRow(position);
+            if (row != null && mAdaptor.getItemClickListener() != null) {
+                mAdaptor.getItemClickListener().onItemClick(row);
+            }
+        } else if (i == R.id.group) {
+            int groupNumber = (Integer) v.getTag(R.id.group_number);
+            if (!hasGroup(groupNumber)) return;
+
+            if (mGroups.get(groupNumber).isExpanded()) {
+                collapseGroup(groupNumber);
+            } else {
+                expandGroup(groupNumber);
             }
         }
     }
@@ -197,7 +315,7 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
     private void addFixedHeader() {
         if (mAdaptor.getFixedViews().size() == 0) return;
 
-        TableRow row = new TableRow(getContext());
+        TableRow row = new FixedRowLayout(getContext());
         row.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
         row.setGravity(mAdaptor.getConfiguration().getTextGravity());
         row.setBackgroundColor(mAdaptor.getConfiguration().getHeaderColor());
@@ -213,38 +331,40 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
     }
 
     private void addHeader() {
-        TableRow row = new TableRow(getContext());
+        TableRow row = new FixedRowLayout(getContext());
         row.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
         row.setGravity(mAdaptor.getConfiguration().getTextGravity());
         row.setBackgroundColor(mAdaptor.getConfiguration().getHeaderColor());
 
-        int column = 0;
-
-        for (AnnotationFields field : mAdaptor.getFields()) {
-            CellInformation spreadSheetCell = field.getAnnotation();
+        for (int display = 0; display < mColumns.size(); display++) {
+            int column = mColumns.getColumn(display);
+            CellInformation spreadSheetCell = mAdaptor.getFields().get(column).getAnnotation();
             ArrowButton button = mAdaptor.getHeaderCellView(spreadSheetCell);
             button.setPadding(mAdaptor.getConfiguration().getTextPaddingLeft(), 0, mAdaptor.getConfiguration().getTextPaddingRight(), 0);
             button.setOnClickListener(this);
+            button.setOnTouchListener(mColumnDragListener);
+            button.setOnLongClickListener(mColumnDragListener);
             button.setId(R.id.filter);
-            button.setMinimumWidth(mAdaptor.getConfiguration().computeSize(spreadSheetCell.getSize()));
+            applyColumnWidth(button, column);
             button.setMinimumHeight(mAdaptor.getConfiguration().getHeaderRowHeight());
             button.setPadding(mAdaptor.getConfiguration().getTextPaddingLeft(), 0, mAdaptor.getConfiguration().getTextPaddingRight(), 0);
             button.setTag(R.id.filter_column_position, column);
-            column++;
 
             row.addView(button);
         }
 
         mHeader.addView(row);
+        applyFixedLayout();
     }
 
-    private void AddFixedRow(boolean colorBool, int position) {
+    private void AddFixedRow(boolean colorBool, int position, int index) {
         if (mAdaptor.getFixedViews().size() == 0) return;
 
-        TableRow row = new TableRow(getContext());
+        TableRow row = new FixedRowLayout(getContext());
         row.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
         row.setGravity(mAdaptor.getConfiguration().getTextGravity());
         row.setBackgroundColor(getResources().getColor(colorBool ? R.color.white : R.color.grey_cell));
+        row.setTag(R.id.item_number, mPositionBase + position);
 
         for (String name : mAdaptor.getFixedViews()) {
             View view = mAdaptor.getFixedCellView(name, position);
@@ -254,68 +374,1125 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
             row.addView(view);
         }
 
-        mFixed.addView(row);
+        mFixed.addView(row, index);
     }
 
     private void addRow() {
+        if (mGroupColumns != null) {
+            addGroupRows();
+            appendRowHeights();
+            return;
+        }
+
+        mRendered = mAdaptor.getDataModel().getPublished();
+        RowIndexView<SpreadSheetData> filtered = filteredRows(mRendered);
+        if (filtered != null) {
+            for (int i = 0; i < filtered.size(); i++) {
+                addRow(filtered.get(i), i % 2 == 0, filtered.getPosition(i), -1);
+            }
+            appendRowHeights();
+            return;
+        }
+
         Boolean colorBool = true;
         int position = 0;
 
-        for (SpreadSheetData resource : mAdaptor.getData()) {
+        for (SpreadSheetData resource : mRendered) {
+            addRow(resource, colorBool, position, -1);
+            colorBool = !colorBool;
+            position++;
+        }
+        appendRowHeights();
+    }
+
+    @Override
+    public void onPendingData() {
+        mFrameScheduler.schedule();
+    }
+
+    private void publishPending() {
+        if (mPendingSort != null) return;
+
+        DataSnapshot<SpreadSheetData> data = mAdaptor.getDataModel().publish();
+        if (mHeader.getChildCount() == 0 || data == mRendered) return;
+
+        mBudgetCheckRequested = true;
+        boolean follow = mFollowTail && isAtBottom();
+        if (mGroupColumns != null && mAdaptor.getFilter() == null && mGroups != null
+                && mGroupSource == mRendered && data.isAppendOf(mRendered)) {
+            appendToGroups(data, mRendered.size());
+            mRendered = data;
+        } else if (mGroupColumns != null && mAdaptor.getFilter() != null && data.isAppendOf(mRendered)) {
+            // The new rows are added to the groups once filtered
+            mRendered = data;
+            refilter();
+        } else if (mGroupColumns != null) {
+            regroup();
+        } else if (mAdaptor.getFilter() != null && data.isAppendOf(mRendered)) {
+            // Rendered rows keep their position, matching new rows are appended once filtered
+            mRendered = data;
+            refilter();
+        } else if (data.isAppendOf(mRendered)) {
+            for (int position = mRendered.size(); position < data.size(); position++) {
+                addRow(data.get(position), position % 2 == 0, position, -1);
+            }
+            appendRowHeights();
+            mRendered = data;
+        } else if (mAdaptor.getFilter() == null && data.isSlideOf(mRendered)) {
+            slide(data);
+        } else {
+            invalidateContent();
+        }
+
+        if (follow) {
+            mVerticalScroll.post(new Runnable() {
+                @Override
+                public void run() {
+                    mVerticalScroll.fullScroll(View.FOCUS_DOWN);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes the rows evicted from the head of a bounded adaptor and appends
+     * the new ones, the other rows are left as they are.
+     */
+    private void slide(DataSnapshot<SpreadSheetData> data) {
+        int evicted = (int) (data.getEvictedCount() - mRendered.getEvictedCount());
+        int removed = Math.min(evicted, mTable.getChildCount());
+        int kept = mRendered.size() - Math.min(evicted, mRendered.size());
+
+        if (removed > 0) {
+            int height = mRowHeights.getOffset(removed);
+            mTable.removeViews(0, removed);
+            if (mAdaptor.getFixedViews().size() != 0) {
+                mFixed.removeViews(0, removed);
+            }
+            mRowHeights.remove(0, removed);
+
+            // Keeps the rows in view at the same place on screen
+            mVerticalScroll.scrollTo(0, Math.max(0, mVerticalScroll.getScrollY() - height));
+        }
+        mPositionBase += evicted;
+
+        for (int position = kept; position < data.size(); position++) {
+            addRow(data.get(position), (mPositionBase + position) % 2 == 0, position, -1);
+        }
+        appendRowHeights();
+        mRendered = data;
+    }
+
+    private boolean isAtBottom() {
+        return mVerticalScroll.getScrollY() + mVerticalScroll.getHeight() >= mTable.getHeight() - mAdaptor.getConfiguration().getRowHeight();
+    }
+
+    private Integer positionOf(View row) {
+        Integer tag = (Integer) row.getTag(R.id.item_number);
+        return tag == null ? null : tag - mPositionBase;
+    }
+
+    /**
+     * Row shown at this position, read from the snapshot the rows were built
+     * from and not from the adaptor, which may have published rows since.
+     *
+     * @return null if the snapshot has no such position
+     */
+    private SpreadSheetData renderedRow(int position) {
+        if (mRendered == null || position < 0 || position >= mRendered.size()) return null;
+        return mRendered.get(position);
+    }
+
+    private void addRow(SpreadSheetData resource, boolean colorBool, int position, int index) {
+        AddFixedRow(colorBool, position, index);
+
+        TableRow row = new FixedRowLayout(getContext());
+        row.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
+        row.setGravity(mAdaptor.getConfiguration().getTextGravity());
+        row.setBackgroundColor(getResources().getColor(colorBool ? R.color.white : R.color.grey_cell));
+        row.setId(R.id.item);
+        row.setTag(R.id.item_number, mPositionBase + position);
+        row.setOnClickListener(this);
+
+        SnapshotCursor<SpreadSheetData> cursor = cursor();
+        cursor.moveToRow(resource, position);
+        for (int display = 0; display < mColumns.size(); display++) {
+            int column = mColumns.getColumn(display);
+            try {
+                row.addView(createCellView(column, cursor.getColumn(column)));
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+
+        mTable.addView(row, index);
+    }
+
+    /**
+     * @return the cursor over the rendered data, reading the columns of the adaptor
+     */
+    private SnapshotCursor<SpreadSheetData> cursor() {
+        List<AnnotationFields> fields = mAdaptor.getFields();
+        if (mCursor == null || !mCursor.getFields().equals(fields)) {
+            mCursor = new SnapshotCursor<>(fields, mRendered);
+        } else if (mCursor.getData() != mRendered) {
+            mCursor.setData(mRendered);
+        }
+        return mCursor;
+    }
+
+    /**
+     * Binds a cell of the cursor row, the formatted text or else the typed value,
+     * the value is only boxed for adaptors without a typed binding.
+     *
+     * @param text the formatted text of the cell, null if its column has no formatter
+     * @return false if the view cannot be reused
+     */
+    private boolean bindCell(View view, CellInformation cell, int column, String text) {
+        if (text != null) {
+            return mAdaptor.bindText(view, cell, text) || mAdaptor.bindCellView(view, cell, text);
+        }
+        return bindTyped(view, cell, column) || mAdaptor.bindCellView(view, cell, mCursor.getObject(column));
+    }
+
+    /**
+     * Binds the value of a primitive or String column of the cursor row without boxing it.
+     *
+     * @return false if the adaptor has no typed binding for the view
+     */
+    private boolean bindTyped(View view, CellInformation cell, int column) {
+        switch (mCursor.getType(column)) {
+            case INT:
+                return mAdaptor.bindInt(view, cell, mCursor.getInt(column));
+            case LONG:
+                return mAdaptor.bindLong(view, cell, mCursor.getLong(column));
+            case FLOAT:
+                return mAdaptor.bindFloat(view, cell, mCursor.getFloat(column));
+            case DOUBLE:
+                return mAdaptor.bindDouble(view, cell, mCursor.getDouble(column));
+            case BOOLEAN:
+                return mAdaptor.bindBoolean(view, cell, mCursor.getBoolean(column));
+            case TEXT:
+                String text = mCursor.getString(column);
+                return mAdaptor.bindText(view, cell, text == null ? "" : text);
+            default:
+                return false;
+        }
+    }
 
-            AddFixedRow(colorBool, position);
+    /**
+     * Creates the view of a cell of the cursor row, a pooled view when the adaptor can bind it.
+     */
+    private View createCellView(int column, CellInformation spreadSheetCell) throws IllegalAccessException {
+        String text = mAdaptor.getFormattedText(mCursor.getRow(), column);
+        View view = mViewPool.acquire(spreadSheetCell, cellViewType(mAdaptor, mCursor, column, text));
+        if (view == null || !bindCell(view, spreadSheetCell, column, text)) {
+            view = mAdaptor.getCellView(spreadSheetCell, text != null ? text : mCursor.getObject(column));
+        }
+        applyColumnWidth(view, column);
+        view.setMinimumHeight(mAdaptor.getConfiguration().getRowHeight());
+        view.setPadding(mAdaptor.getConfiguration().getTextPaddingLeft(), 0, mAdaptor.getConfiguration().getTextPaddingRight(), 0);
+        return view;
+    }
 
-            TableRow row = new TableRow(getContext());
-            row.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
-            row.setGravity(mAdaptor.getConfiguration().getTextGravity());
-            row.setBackgroundColor(getResources().getColor(colorBool ? R.color.white : R.color.grey_cell));
-            row.setId(R.id.item);
-            row.setTag(R.id.item_number, position);
-            row.setOnClickListener(this);
+    /*
+     *  Cell updates
+     */
+    private void rebindChangedCells() {
+        mAdaptor.getDirtyCells().drainTo(mChangedCells);
+        if (mChangedCells.isEmpty() || mTable.getChildCount() == 0) return;
+
+        if (mAdaptor.getFilter() != null) {
+            // Changed values may move rows in or out of the filter
+            refilter();
+        }
+
+        // Off-screen changes only leave a stale flag, rebound when the row scrolls in
+        for (int i = 0; i < mChangedCells.size(); i++) {
+            mStaleRows.set(mChangedCells.getRowId(i));
+        }
+
+        int first = firstVisibleRow();
+        int last = lastVisibleRow(first);
+
+        for (int i = first; i <= last; i++) {
+            TableRow row = (TableRow) mTable.getChildAt(i);
+            Integer position = positionOf(row);
+            SpreadSheetData data = position == null ? null : renderedRow(position);
+            if (data == null) continue;
+
+            int rowId = data.mRowId;
+            long mask = mChangedCells.get(rowId);
+            if (mask != 0) {
+                mStaleRows.clear(rowId);
+                rebindRow(row, position, mask);
+                remeasureRow(i);
+            }
+        }
+
+        mChangedCells.clear();
+    }
+
+    private void rebindStaleRows() {
+        if (mStaleRows.isEmpty() || mTable.getChildCount() == 0) return;
+
+        int first = firstVisibleRow();
+        int last = lastVisibleRow(first);
+
+        for (int i = first; i <= last; i++) {
+            TableRow row = (TableRow) mTable.getChildAt(i);
+            Integer position = positionOf(row);
+            SpreadSheetData data = position == null ? null : renderedRow(position);
+            if (data == null) continue;
+
+            int rowId = data.mRowId;
+            if (mStaleRows.get(rowId)) {
+                mStaleRows.clear(rowId);
+                rebindRow(row, position, DirtyCellSet.ALL_COLUMNS);
+                remeasureRow(i);
+            }
+        }
+    }
+
+    private void rebindRow(TableRow row, int position, long mask) {
+        SnapshotCursor<SpreadSheetData> cursor = cursor();
+        if (!cursor.moveToPosition(position)) return;
+
+        for (int column = 0; column < cursor.getColumnCount(); column++) {
+            if ((mask & DirtyCellSet.columnMask(column)) == 0) continue;
+
+            CellInformation spreadSheetCell = cursor.getColumn(column);
+            try {
+                int display = mColumns.getDisplayIndex(column);
+                String text = mAdaptor.getFormattedText(cursor.getRow(), column);
+                if (!bindCell(row.getChildAt(display), spreadSheetCell, column, text)) {
+                    row.removeViewAt(display);
+                    row.addView(createCellView(column, spreadSheetCell), display);
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     *  Row heights
+     */
+    private int firstVisibleRow() {
+        return Math.max(0, mRowHeights.getRowAt(mVerticalScroll.getScrollY()));
+    }
+
+    private int lastVisibleRow(int first) {
+        int bottom = mVerticalScroll.getScrollY() + mVerticalScroll.getHeight();
+        return Math.max(first, mRowHeights.getRowAt(bottom - 1));
+    }
+
+    private void appendRowHeights() {
+        mRowHeights.append(mTable.getChildCount() - mRowHeights.size());
+        // Binding the rows fills the caches
+        requestBudgetCheck();
+    }
+
+    /**
+     * Measures the rows around the screen laid out since they were added or
+     * rebound, making the fixed row and the body row as high as the highest of
+     * the two. Rows further away keep their estimated height until scrolled to.
+     */
+    private void measureRows() {
+        int count = Math.min(mTable.getChildCount(), mRowHeights.size());
+        boolean fixed = mFixed.getChildCount() == mTable.getChildCount();
+
+        // Same margin of one screen as the rows laid out by the fixed layout
+        int top = mVerticalScroll.getScrollY();
+        int margin = mVerticalScroll.getHeight();
+        int first = Math.max(0, mRowHeights.getRowAt(top - margin));
+        int last = Math.min(count - 1, mRowHeights.getRowAt(top + 2 * margin));
+
+        for (int i = mRowHeights.nextUnmeasured(first); i >= 0 && i <= last; i = mRowHeights.nextUnmeasured(i + 1)) {
+            View row = mTable.getChildAt(i);
+            int height = row.getHeight();
+            if (height == 0) continue;
+
+            if (fixed) {
+                View fixedRow = mFixed.getChildAt(i);
+                if (fixedRow.getHeight() != height) {
+                    // Measured on the next layout pass, once both rows have the same height
+                    height = Math.max(height, fixedRow.getHeight());
+                    row.setMinimumHeight(height);
+                    fixedRow.setMinimumHeight(height);
+                    continue;
+                }
+            }
+            mRowHeights.setHeight(i, height);
+        }
+
+        // Stale since a column was resized, measured on the next layout pass
+        for (int i = first; i <= last; i++) {
+            if (mRowHeights.isStale(i)) {
+                remeasureRow(i);
+            }
+        }
+    }
+
+    private void remeasureRow(int index) {
+        mRowHeights.invalidate(index);
+        if (mAdaptor.getConfiguration().isVariableRowHeight()) {
+            mTable.getChildAt(index).setMinimumHeight(0);
+            if (mFixed.getChildCount() == mTable.getChildCount()) {
+                mFixed.getChildAt(index).setMinimumHeight(0);
+            }
+        }
+    }
+
+    private void clearRows() {
+        mTable.removeAllViews();
+        mFixed.removeAllViews();
+        mStaleRows.clear();
+        mPositionBase = 0;
+        mRowHeights.clear();
+        mRowHeights.setEstimatedHeight(mAdaptor.getConfiguration().getRowHeight());
+    }
+
+    @Override
+    public void onSelectionChanged(int fromRowId, int toRowId) {
+        for (int i = 0; i < mFixed.getChildCount(); i++) {
+            TableRow row = (TableRow) mFixed.getChildAt(i);
+            Integer position = positionOf(row);
+            SpreadSheetData data = position == null ? null : renderedRow(position);
+            if (data == null) continue;
+
+            int rowId = data.mRowId;
+            if (rowId < fromRowId || rowId >= toRowId) continue;
+
+            int cell = 0;
+            for (String name : mAdaptor.getFixedViews()) {
+                mAdaptor.bindFixedCellView(row.getChildAt(cell++), name, position);
+            }
+        }
+    }
+
+    /*
+     *  Columns
+     */
+
+    /**
+     * Moves the column shown at display index {@code from} to display index {@code to}.
+     * The cells are moved in place, nothing is read from the adaptor.
+     */
+    public void moveColumn(int from, int to) {
+        if (from == to) return;
+
+        mColumns.move(from, to);
+        moveCell((TableRow) mHeader.getChildAt(0), from, to);
+        for (int i = 0; i < mTable.getChildCount(); i++) {
+            moveCell((TableRow) mTable.getChildAt(i), from, to);
+        }
+        applyFixedLayout();
+    }
+
+    /**
+     * Sets the width in pixels of the column shown at this display index.
+     * The cells are resized in place, nothing is read from the adaptor.
+     */
+    public void resizeColumn(int displayIndex, int width) {
+        int column = mColumns.getColumn(displayIndex);
+        mColumns.setWidth(column, width);
+
+        applyColumnWidth(((TableRow) mHeader.getChildAt(0)).getChildAt(displayIndex), column);
+        for (int i = 0; i < mTable.getChildCount(); i++) {
+            TableRow row = (TableRow) mTable.getChildAt(i);
+            if (displayIndex < row.getChildCount()) {
+                applyColumnWidth(row.getChildAt(displayIndex), column);
+            }
+        }
+        // Rows off screen are measured again when scrolled to
+        mRowHeights.invalidateAll();
+        if (mTable.getChildCount() > 0) {
+            int first = firstVisibleRow();
+            int last = Math.min(lastVisibleRow(first), mRowHeights.size() - 1);
+            for (int i = first; i <= last; i++) {
+                remeasureRow(i);
+            }
+        }
+        applyFixedLayout();
+    }
+
+    public ColumnLayout getColumnLayout() {
+        return mColumns;
+    }
+
+    private static void moveCell(TableRow row, int from, int to) {
+        if (Math.max(from, to) >= row.getChildCount()) return;
+
+        View cell = row.getChildAt(from);
+        row.removeViewAt(from);
+        row.addView(cell, to);
+    }
+
+    /**
+     * Gives the column widths and row heights to the tables, in fixed layout
+     * they lay the rows out with them instead of measuring the cells.
+     */
+    private void applyFixedLayout() {
+        Configuration configuration = mAdaptor.getConfiguration();
+        boolean fixed = configuration.isFixedLayout() && !configuration.isVariableRowHeight();
+
+        int[] widths = new int[mColumns.size()];
+        for (int display = 0; display < widths.length; display++) {
+            int column = mColumns.getColumn(display);
+            int width = mColumns.getWidth(column);
+            widths[display] = width != ColumnLayout.DEFAULT_WIDTH ? width : configuration.computeSize(mAdaptor.getFields().get(column).getAnnotation().getSize());
+        }
+        mHeader.setFixedLayout(fixed, widths, configuration.getHeaderRowHeight());
+        mTable.setFixedLayout(fixed, widths, configuration.getRowHeight());
+
+        int[] fixedWidths = new int[mAdaptor.getFixedViews().size()];
+        Arrays.fill(fixedWidths, configuration.getMinFixedRowWidth());
+        mFixedHeader.setFixedLayout(fixed, fixedWidths, configuration.getHeaderRowHeight());
+        mFixed.setFixedLayout(fixed, fixedWidths, configuration.getRowHeight());
+    }
+
+    private void updateViewport() {
+        int top = mVerticalScroll.getScrollY();
+        int bottom = top + mVerticalScroll.getHeight();
+        mTable.setViewport(top, bottom);
+        mFixed.setViewport(top, bottom);
+    }
+
+    private void applyColumnWidth(View cell, int column) {
+        int width = mColumns.getWidth(column);
+        if (width == ColumnLayout.DEFAULT_WIDTH) {
+            cell.setMinimumWidth(mAdaptor.getConfiguration().computeSize(mAdaptor.getFields().get(column).getAnnotation().getSize()));
+            return;
+        }
+
+        cell.setMinimumWidth(width);
+        ViewGroup.LayoutParams params = cell.getLayoutParams();
+        if (params == null) {
+            params = new TableRow.LayoutParams(width, TableRow.LayoutParams.WRAP_CONTENT);
+        }
+        params.width = width;
+        cell.setLayoutParams(params);
+    }
+
+    /*
+     *  Memory
+     */
+
+    private void initMemoryBudget(final DispatcherHorizontalScrollView scrollView) {
+        mMemoryBudget = new MemoryBudget(MemoryBudget.defaultBudget());
+        mMemoryBudget.register("viewPool", ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, mViewPool);
+        mMemoryBudget.register("drawingCache", ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, new MemoryBudget.Component() {
+            @Override
+            public long getMemoryUsage() {
+                return scrollView.getDrawingCacheSize();
+            }
+
+            @Override
+            public void trim() {
+                scrollView.releaseDrawingCache();
+            }
+        });
+        mMemoryBudget.register("sortCache", ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, new MemoryBudget.Component() {
+            @Override
+            public long getMemoryUsage() {
+                return mAdaptor.getSortCache().getUsed();
+            }
+
+            @Override
+            public void trim() {
+                mAdaptor.getSortCache().clear();
+            }
+        });
+        mMemoryBudget.register("formattedText", ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, new MemoryBudget.Component() {
+            @Override
+            public long getMemoryUsage() {
+                return mAdaptor.getFormatters().getMemoryUsage();
+            }
+
+            @Override
+            public void trim() {
+                mAdaptor.getFormatters().trim();
+            }
+        });
+        mMemoryBudget.register("columnCaches", ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, new MemoryBudget.Component() {
+            @Override
+            public long getMemoryUsage() {
+                return mAdaptor.getCacheMemoryUsage();
+            }
+
+            @Override
+            public void trim() {
+                mAdaptor.trimCaches();
+            }
+        });
+        mMemoryBudget.register("indexes", ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, new MemoryBudget.Component() {
+            @Override
+            public long getMemoryUsage() {
+                return mAdaptor.getIndexMemoryUsage();
+            }
+
+            @Override
+            public void trim() {
+                mAdaptor.trimIndexes();
+            }
+        });
+        mMemoryCallbacks = mMemoryBudget.createCallbacks();
+    }
+
+    /**
+     * Enforces the budget on the next frame, rather than on every frame: it
+     * walks every cache.
+     */
+    private void requestBudgetCheck() {
+        mBudgetCheckRequested = true;
+        mFrameScheduler.schedule();
+    }
+
+    /**
+     * Memory accounting of the caches of the sheet. They are evicted when over
+     * budget and when the system asks applications to trim their memory.
+     */
+    public MemoryBudget getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            getContext().getApplicationContext().registerComponentCallbacks(mMemoryCallbacks);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(mMemoryCallbacks);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    /*
+     *  Warm-up
+     */
+
+    /**
+     * Creates the cell views of the first rows of the data while the main
+     * thread is idle, one row per idle pass, so the first render only binds
+     * them. Call it before the sheet is shown, once the data is added.
+     */
+    public void warmUp(int rowCount) {
+        final SpreadSheetAdaptor<SpreadSheetData> adaptor = mAdaptor;
+        final DataSnapshot<SpreadSheetData> data = adaptor.getData();
+        final SnapshotCursor<SpreadSheetData> cursor = new SnapshotCursor<>(adaptor.getFields(), data);
+        final int count = Math.min(rowCount, data.size());
+        mViewPool.setCapacity(Math.max(CellViewPool.DEFAULT_CAPACITY, count));
+
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private int mRow;
+
+            @Override
+            public boolean queueIdle() {
+                // Rendered or replaced meanwhile
+                if (adaptor != mAdaptor || mTable.getChildCount() != 0 || mRow >= count) {
+                    return false;
+                }
 
-            for (AnnotationFields field : mAdaptor.getFields()) {
-                CellInformation spreadSheetCell = field.getAnnotation();
                 try {
-                    Object object = field.getField().get(resource);
-                    View view = mAdaptor.getCellView(spreadSheetCell, object);
-                    view.setMinimumWidth(mAdaptor.getConfiguration().computeSize(spreadSheetCell.getSize()));
-                    view.setMinimumHeight(mAdaptor.getConfiguration().getRowHeight());
-                    view.setPadding(mAdaptor.getConfiguration().getTextPaddingLeft(), 0, mAdaptor.getConfiguration().getTextPaddingRight(), 0);
-                    row.addView(view);
+                    cursor.moveToPosition(mRow);
+                    for (int column = 0; column < cursor.getColumnCount(); column++) {
+                        CellInformation cell = cursor.getColumn(column);
+                        String text = adaptor.getFormattedText(cursor.getRow(), column);
+                        mViewPool.release(cell, cellViewType(adaptor, cursor, column, text),
+                                adaptor.getCellView(cell, warmUpValue(cursor, column, text)));
+                    }
                 } catch (IllegalAccessException e) {
                     e.printStackTrace();
+                    return false;
                 }
+                return ++mRow < count;
             }
+        });
+    }
 
+    /**
+     * @return the kind of view of a cell of the cursor row, typed values are not boxed
+     */
+    private static int cellViewType(SpreadSheetAdaptor<SpreadSheetData> adaptor, RowCursor cursor, int column, String text) {
+        CellInformation cell = cursor.getColumn(column);
+        if (text != null) {
+            return adaptor.getCellViewType(cell, (Object) text);
+        }
+        AnnotationFields.BindType type = cursor.getType(column);
+        if (type == AnnotationFields.BindType.TEXT || type == AnnotationFields.BindType.OBJECT) {
+            return adaptor.getCellViewType(cell, cursor.getObject(column));
+        }
+        return adaptor.getCellViewType(cell, type);
+    }
 
-            colorBool = !colorBool;
-            mTable.addView(row);
-            position++;
+    /**
+     * @return the value a warmed up view is created with, pooled views are bound before being shown
+     */
+    private static Object warmUpValue(RowCursor cursor, int column, String text) {
+        if (text != null) {
+            return text;
+        }
+        AnnotationFields.BindType type = cursor.getType(column);
+        if (type == AnnotationFields.BindType.TEXT || type == AnnotationFields.BindType.OBJECT) {
+            return cursor.getObject(column);
         }
+        return SpreadSheetAdaptor.sampleValue(type);
     }
 
-    @Override
-    public void invalidate() {
-        super.invalidate();
+    /**
+     * Same as {@link #warmUp(int)} on a background looper thread, for adaptors
+     * whose {@link SpreadSheetAdaptor#getCellView} can run off the main thread,
+     * e.g. inflating layouts with their own {@link LayoutInflater}.
+     */
+    public void warmUpInBackground(int rowCount) {
+        final SpreadSheetAdaptor<SpreadSheetData> adaptor = mAdaptor;
+        final DataSnapshot<SpreadSheetData> data = adaptor.getData();
+        final SnapshotCursor<SpreadSheetData> cursor = new SnapshotCursor<>(adaptor.getFields(), data);
+        final int count = Math.min(rowCount, data.size());
+        mViewPool.setCapacity(Math.max(CellViewPool.DEFAULT_CAPACITY, count));
+
+        final HandlerThread thread = new HandlerThread("SpreadSheet-WarmUp");
+        thread.start();
+        new Handler(thread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                final List<CellInformation> cells = new ArrayList<>();
+                final List<Integer> types = new ArrayList<>();
+                final List<View> views = new ArrayList<>();
+                try {
+                    for (int row = 0; row < count; row++) {
+                        cursor.moveToPosition(row);
+                        for (int column = 0; column < cursor.getColumnCount(); column++) {
+                            CellInformation cell = cursor.getColumn(column);
+                            String text = adaptor.getFormattedText(cursor.getRow(), column);
+                            cells.add(cell);
+                            types.add(cellViewType(adaptor, cursor, column, text));
+                            views.add(adaptor.getCellView(cell, warmUpValue(cursor, column, text)));
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                } finally {
+                    thread.quit();
+                }
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (adaptor != mAdaptor) return;
+
+                        for (int i = 0; i < views.size(); i++) {
+                            mViewPool.release(cells.get(i), types.get(i), views.get(i));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /*
+     *  Filtering
+     */
+
+    /**
+     * Shows only the rows matching the filter. The filter is evaluated in the background,
+     * then again whenever rows are published or cell values change.
+     */
+    public void setFilter(RowFilter filter) {
+        mAdaptor.setFilter(filter);
+        mFiltered = null;
+        mFilterRequest++;
+        mFilterRunning = false;
+        if (filter == null && mFilterSortField != null) {
+            // Only the filtered rows were sorted, the data follows now
+            mAdaptor.sort(mFilterSortField);
+            if (mIsDESC) {
+                mAdaptor.reverse();
+            }
+            mFilterSortField = null;
+        }
+        if (filter != null) {
+            refilter();
+        } else if (mGroupColumns != null) {
+            regroup();
+        } else {
+            invalidateContent();
+        }
+    }
+
+    public void clearFilter() {
+        setFilter(null);
+    }
+
+    /**
+     * @return the rows of the data passing the filter, null if every row is shown
+     */
+    private RowIndexView<SpreadSheetData> filteredRows(DataSnapshot<SpreadSheetData> data) {
+        if (mAdaptor.getFilter() == null) return null;
+
+        if (mFiltered == null || mFiltered.getData().getRowIdEpoch() != data.getRowIdEpoch()) {
+            // Nothing to show until the filter has been evaluated
+            mFiltered = new RowIndexView<>(data, new int[0], 0, 0, 0);
+        } else if (mFiltered.getData() != data) {
+            mFiltered = mFiltered.reindex(data);
+        }
+
+        if (!mFiltered.isEvaluated(data)) {
+            refilter();
+        }
+        return mFiltered;
+    }
+
+    private void refilter() {
+        if (mFilterRunning) {
+            mFilterAgain = true;
+            return;
+        }
+        mFilterRunning = true;
+        mFilterAgain = false;
+
+        final int request = mFilterRequest;
+        final DataSnapshot<SpreadSheetData> snapshot = mAdaptor.getDataModel().getPublished();
+        final AnnotationFields sortField = mFilterSortField;
+        final boolean descending = mIsDESC;
+
+        BackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                RowIndexView<SpreadSheetData> rows = mAdaptor.filter(snapshot);
+                if (rows != null && sortField != null) {
+                    rows = mAdaptor.sort(rows, sortField, descending);
+                }
+                final RowIndexView<SpreadSheetData> filtered = rows;
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request != mFilterRequest) return;
+                        mFilterRunning = false;
+
+                        // Sorted again meanwhile
+                        if (sortField != mFilterSortField || descending != mIsDESC) {
+                            refilter();
+                            return;
+                        }
+
+                        RowIndexView<SpreadSheetData> previous = mFiltered;
+                        mFiltered = filtered;
+                        if (mHeader.getChildCount() != 0 && filtered != null) {
+                            showFiltered(previous, filtered);
+                        }
+
+                        if (mFilterAgain) {
+                            refilter();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void showFiltered(RowIndexView<SpreadSheetData> previous, RowIndexView<SpreadSheetData> filtered) {
+        if (mGroupColumns != null && mGroups != null && mGroupSource == previous && filtered.isAppendOf(previous)) {
+            appendToGroups(filtered, previous.size());
+        } else if (mGroupColumns != null) {
+            regroup();
+        } else if (mPendingSort == null && filtered.isAppendOf(previous) && mTable.getChildCount() == previous.size()
+                && filtered.getData().getGeneration() == mRendered.getGeneration()) {
+            for (int i = previous.size(); i < filtered.size(); i++) {
+                addRow(filtered.get(i), i % 2 == 0, filtered.getPosition(i), -1);
+            }
+            appendRowHeights();
+        } else {
+            invalidateContent();
+        }
+    }
+
+    /*
+     *  Grouping
+     */
+    private void addGroupRows() {
+        if (mGroups == null) return;
+
+        for (int groupNumber = 0; groupNumber < mGroups.size(); groupNumber++) {
+            addGroupHeader(groupNumber, -1);
+            if (mGroups.get(groupNumber).isExpanded()) {
+                addGroupChildren(mGroups.get(groupNumber), 0, -1);
+            }
+        }
+    }
+
+    /**
+     * Adds the rows appended to the grouped rows to their groups. Only the headers
+     * of the changed groups, the new rows of expanded groups and the new groups are
+     * added to the table, a full regroup only runs when the rows are not an append.
+     *
+     * @param rows the data or its filtered rows, the groups hold the rows before from
+     */
+    private void appendToGroups(List<SpreadSheetData> rows, int from) {
+        int count = mGroups.size();
+        int[] sizes = new int[count];
+        for (int groupNumber = 0; groupNumber < count; groupNumber++) {
+            sizes[groupNumber] = mGroups.get(groupNumber).size();
+        }
+        BitSet changed = mGroupBy.append(mGroups, rows, from);
+        mGroupData = rows instanceof RowIndexView ? ((RowIndexView<SpreadSheetData>) rows).getData() : (DataSnapshot<SpreadSheetData>) rows;
+        mGroupSource = rows;
+        if (changed.isEmpty()) return;
+
+        int index = 0;
+        for (int groupNumber = 0; groupNumber < mGroups.size(); groupNumber++) {
+            RowGroup group = mGroups.get(groupNumber);
+            if (groupNumber >= count) {
+                group.setExpanded(mExpandedGroups.contains(group.getKey()));
+                addGroupHeader(groupNumber, index);
+                mRowHeights.insert(index, 1);
+                if (group.isExpanded()) {
+                    addGroupChildren(group, 0, index + 1);
+                    mRowHeights.insert(index + 1, group.size());
+                }
+            } else if (changed.get(groupNumber)) {
+                // The aggregates of the header changed
+                replaceGroupHeader(groupNumber, index);
+                if (group.isExpanded()) {
+                    addGroupChildren(group, sizes[groupNumber], index + 1 + sizes[groupNumber]);
+                    mRowHeights.insert(index + 1 + sizes[groupNumber], group.size() - sizes[groupNumber]);
+                }
+            }
+            index += 1 + (group.isExpanded() ? group.size() : 0);
+        }
+        requestBudgetCheck();
+    }
+
+    private void addGroupHeader(int groupNumber, int index) {
+        RowGroup group = mGroups.get(groupNumber);
+
+        if (mAdaptor.getFixedViews().size() != 0) {
+            TableRow fixedRow = new FixedRowLayout(getContext());
+            fixedRow.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
+            fixedRow.setGravity(mAdaptor.getConfiguration().getTextGravity());
+            fixedRow.setBackgroundColor(mAdaptor.getConfiguration().getGroupColor());
+            fixedRow.setId(R.id.group);
+            fixedRow.setTag(R.id.group_number, groupNumber);
+            fixedRow.setOnClickListener(this);
+
+            for (String name : mAdaptor.getFixedViews()) {
+                View view = mAdaptor.getGroupFixedCellView(name, group);
+                view.setMinimumWidth(mAdaptor.getConfiguration().getMinFixedRowWidth());
+                view.setMinimumHeight(mAdaptor.getConfiguration().getRowHeight());
+                view.setPadding(mAdaptor.getConfiguration().getTextPaddingLeft(), 0, mAdaptor.getConfiguration().getTextPaddingRight(), 0);
+                fixedRow.addView(view);
+            }
+
+            mFixed.addView(fixedRow, index);
+        }
+
+        TableRow row = new FixedRowLayout(getContext());
+        row.setLayoutParams(mAdaptor.getConfiguration().getTableLayoutParams());
+        row.setGravity(mAdaptor.getConfiguration().getTextGravity());
+        row.setBackgroundColor(mAdaptor.getConfiguration().getGroupColor());
+        row.setId(R.id.group);
+        row.setTag(R.id.group_number, groupNumber);
+        row.setOnClickListener(this);
+
+        for (int display = 0; display < mColumns.size(); display++) {
+            int column = mColumns.getColumn(display);
+            CellInformation spreadSheetCell = mAdaptor.getFields().get(column).getAnnotation();
+            View view = mAdaptor.getGroupCellView(spreadSheetCell, group.getHeaderValue(column));
+            applyColumnWidth(view, column);
+            view.setMinimumHeight(mAdaptor.getConfiguration().getRowHeight());
+            view.setPadding(mAdaptor.getConfiguration().getTextPaddingLeft(), 0, mAdaptor.getConfiguration().getTextPaddingRight(), 0);
+            row.addView(view);
+        }
+
+        mTable.addView(row, index);
+    }
+
+    /**
+     * Adds the rows of the group from the from-th one at this index of the table, -1 to append them.
+     */
+    private void addGroupChildren(RowGroup group, int from, int index) {
+        for (int i = from; i < group.size(); i++) {
+            int position = group.getRow(i);
+            addRow(mGroupData.get(position), i % 2 == 0, position, index < 0 ? -1 : index + i - from);
+        }
+    }
+
+    private void replaceGroupHeader(int groupNumber, int index) {
+        mTable.removeViewAt(index);
+        if (mAdaptor.getFixedViews().size() != 0) {
+            mFixed.removeViewAt(index);
+        }
+        addGroupHeader(groupNumber, index);
+        mRowHeights.invalidate(index);
+    }
+
+    private int groupRowIndex(int groupNumber) {
+        int index = 0;
+        for (int i = 0; i < groupNumber; i++) {
+            RowGroup group = mGroups.get(i);
+            index += 1 + (group.isExpanded() ? group.size() : 0);
+        }
+        return index;
+    }
+
+    private void regroup() {
+        final int request = ++mGroupRequest;
+
+        List<AnnotationFields> keys = new ArrayList<>();
+        for (Integer position : mGroupColumns) {
+            AnnotationFields field = mAdaptor.getField(position);
+            if (field != null) {
+                keys.add(field);
+            }
+        }
+
+        mRendered = mAdaptor.getDataModel().getPublished();
+
+        if (keys.isEmpty()) {
+            mGroups = new ArrayList<>();
+            mGroupData = mRendered;
+            mGroupSource = null;
+            invalidateContent();
+            return;
+        }
+
+        final GroupBy groupBy = new GroupBy(keys, mAdaptor.getFields());
+        final DataSnapshot<SpreadSheetData> snapshot = mRendered;
+        final RowIndexView<SpreadSheetData> filtered = filteredRows(snapshot);
+        final Set<List<Object>> expanded = new HashSet<>(mExpandedGroups);
+
+        BackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<RowGroup> groups = groupBy.compute(filtered != null ? filtered : snapshot);
+                for (RowGroup group : groups) {
+                    group.setExpanded(expanded.contains(group.getKey()));
+                    if (filtered != null) {
+                        group.remap(filtered);
+                    }
+                }
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request == mGroupRequest) {
+                            mGroups = groups;
+                            mGroupData = snapshot;
+                            mGroupSource = filtered != null ? filtered : snapshot;
+                            mGroupBy = groupBy;
+                            invalidateContent();
+                        }
+                    }
+                });
+            }
+        });
+    }
 
+    /**
+     * Groups the rows on the given {@link SpreadSheetCell#position()} columns.
+     * Groups are computed in the background and start collapsed.
+     */
+    public void groupBy(Integer... columnPosition) {
+        mGroupColumns = new ArrayList<>(Arrays.asList(columnPosition));
+        mExpandedGroups.clear();
+        // The headers of the previous grouping are removed until the new groups are computed
+        mGroups = null;
+        invalidateContent();
+        regroup();
+    }
+
+    public void clearGrouping() {
+        mGroupColumns = null;
+        mGroups = null;
+        mExpandedGroups.clear();
+        mGroupRequest++;
+        invalidateContent();
+    }
+
+    public List<RowGroup> getGroups() {
+        return mGroups;
+    }
+
+    private boolean hasGroup(int groupNumber) {
+        return mGroups != null && groupNumber >= 0 && groupNumber < mGroups.size();
+    }
+
+    public void expandGroup(int groupNumber) {
+        if (!hasGroup(groupNumber)) return;
+
+        RowGroup group = mGroups.get(groupNumber);
+        if (group.isExpanded()) return;
+
+        group.setExpanded(true);
+        mExpandedGroups.add(group.getKey());
+
+        int index = groupRowIndex(groupNumber);
+        replaceGroupHeader(groupNumber, index);
+        addGroupChildren(group, 0, index + 1);
+        mRowHeights.insert(index + 1, group.size());
+    }
+
+    public void collapseGroup(int groupNumber) {
+        if (!hasGroup(groupNumber)) return;
+
+        RowGroup group = mGroups.get(groupNumber);
+        if (!group.isExpanded()) return;
+
+        int index = groupRowIndex(groupNumber);
+        mTable.removeViews(index + 1, group.size());
+        if (mAdaptor.getFixedViews().size() != 0) {
+            mFixed.removeViews(index + 1, group.size());
+        }
+        mRowHeights.remove(index + 1, group.size());
+
+        group.setExpanded(false);
+        mExpandedGroups.remove(group.getKey());
+        replaceGroupHeader(groupNumber, index);
+    }
+
+    /**
+     * Rebuilds the table from the adaptor on the next frame. Calls made before
+     * the rebuild runs are coalesced into it. Safe to call from any thread.
+     */
+    public void notifyDataSetChanged() {
+        mRebuildRequested = true;
+        mFrameScheduler.schedule();
+    }
+
+    private void rebuild() {
         if (mAdaptor.getFields().isEmpty()) return;
 
         mFixedHeader.removeAllViews();
         mHeader.removeAllViews();
-        mFixed.removeAllViews();
-        mTable.removeAllViews();
+        clearRows();
+        if (!mAdaptor.getFields().equals(mLayoutFields)) {
+            mColumns.reset(mAdaptor.getFields().size());
+            mLayoutFields = new ArrayList<>(mAdaptor.getFields());
+        }
+        mPendingSort = null;
 
         addFixedHeader();
 
         addHeader();
+        if (mGroupColumns != null) {
+            mGroups = null;
+            regroup();
+        }
         addRow();
 
         putArrow(mColumnSortSelected);
     }
 
     private void invalidateContent() {
-        mTable.removeAllViews();
-        mFixed.removeAllViews();
+        mPendingSort = null;
+        clearRows();
 
         addRow();
     }
@@ -324,26 +1501,110 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
      *  Sorting
      */
     private void invert(int columnId) {
-        Collections.reverse(mAdaptor.getData());
+        mAdaptor.reverse();
     }
 
-    private void sort(int columnId, Comparator comparator) {
-        Collections.sort(mAdaptor.getData(), comparator);
+    private void sort(int columnId, AnnotationFields annotationFields) {
+        mAdaptor.sort(annotationFields);
     }
 
-    private void doSorting(int columnId, Comparator<? extends SpreadSheetData> comparator, AnnotationFields annotationFields) {
+    private void doSorting(int columnId, AnnotationFields annotationFields) {
+        if (mFiltered != null && mGroupColumns == null) {
+            sortFiltered(columnId, annotationFields);
+            return;
+        }
+
         if (mColumnSortSelected == columnId) {
             invert(columnId);
             mIsDESC = !mIsDESC;
+        } else if (mProgressiveSorting && mGroupColumns == null && mAdaptor.getFilter() == null
+                && !mAdaptor.getSortCache().contains(annotationFields)) {
+            mIsDESC = false;
+            putArrow(columnId);
+            mAdaptor.onSort(annotationFields, mIsDESC);
+            sortProgressive(annotationFields);
+            return;
         } else {
-            sort(columnId, comparator);
+            sort(columnId, annotationFields);
             mIsDESC = false;
         }
         putArrow(columnId);
         mAdaptor.onSort(annotationFields, mIsDESC);
+        if (mGroupColumns != null) {
+            regroup();
+        } else {
+            invalidateContent();
+        }
+    }
+
+    /**
+     * Sorts the filtered rows only, the data is sorted when the filter is cleared.
+     */
+    private void sortFiltered(int columnId, AnnotationFields annotationFields) {
+        if (mColumnSortSelected == columnId && mFilterSortField == annotationFields) {
+            mIsDESC = !mIsDESC;
+            mFiltered = mFiltered.reversed();
+        } else {
+            mIsDESC = false;
+            mFiltered = mAdaptor.sort(mFiltered, annotationFields, false);
+        }
+        mFilterSortField = annotationFields;
+        putArrow(columnId);
+        mAdaptor.onSort(annotationFields, mIsDESC);
         invalidateContent();
     }
 
+    /**
+     * Shows the rows down to the bottom of the viewport as soon as they are known,
+     * the rest of the table is sorted in the background and appended below them.
+     */
+    private void sortProgressive(final AnnotationFields annotationFields) {
+        int count = mTable.getChildCount() == 0 ? 0 : lastVisibleRow(firstVisibleRow()) + 1;
+        final ProgressiveSort<SpreadSheetData> sort = mAdaptor.sortProgressive(annotationFields, count);
+        if (count == 0 || count >= mRendered.size() || sort.start() == null) {
+            mAdaptor.sort(annotationFields);
+            invalidateContent();
+            return;
+        }
+
+        mPendingSort = sort;
+        clearRows();
+        mRendered = sort.getPartial();
+        for (int position = 0; position < count; position++) {
+            addRow(mRendered.get(position), position % 2 == 0, position, -1);
+        }
+        appendRowHeights();
+
+        BackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sort.run();
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (sort != mPendingSort) return;
+                        mPendingSort = null;
+
+                        DataSnapshot<SpreadSheetData> sorted = sort.finish();
+                        if (sorted == null) {
+                            mAdaptor.sort(annotationFields);
+                            invalidateContent();
+                            return;
+                        }
+
+                        for (int position = sort.getCount(); position < sorted.size(); position++) {
+                            addRow(sorted.get(position), position % 2 == 0, position, -1);
+                        }
+                        appendRowHeights();
+                        mRendered = sorted;
+                        mFrameScheduler.schedule();
+                    }
+                });
+            }
+        });
+    }
+
     private void putArrow(int column) {
         TableRow row = (TableRow) (mHeader).getChildAt(0);
         for (int i = 0; i < row.getChildCount(); ++i) {
@@ -376,11 +1637,104 @@ public class SpreadSheetView extends LinearLayout implements View.OnClickListene
             adaptor.setConfiguration(mAdaptor.getConfiguration());
         }
 
+        mAdaptor.getSelection().removeOnSelectionChangedListener(this);
+        mAdaptor.getDataModel().setOnPendingDataListener(null);
+        mAdaptor.getDataModel().setPublishOnRead(true);
+        mAdaptor.getDirtyCells().setOnPendingDataListener(null);
         mAdaptor = adaptor;
+        mAdaptor.getSelection().addOnSelectionChangedListener(this);
+        mAdaptor.getDataModel().setOnPendingDataListener(this);
+        mAdaptor.getDataModel().setPublishOnRead(false);
+        mAdaptor.getDirtyCells().setOnPendingDataListener(this);
+        mRendered = null;
+        mPendingSort = null;
+        mViewPool.clear();
+        mCursor = null;
+        mColumns.reset(0);
+        mLayoutFields = null;
+        mFiltered = null;
+        mFilterRequest++;
+        mFilterRunning = false;
+        mFilterSortField = null;
+    }
+
+    /*
+     *  Configuration changes
+     */
+
+    /**
+     * Hands the sheet over to the view of the recreated activity, e.g. from
+     * {@link android.app.Activity#onRetainNonConfigurationInstance()}. This view
+     * stops following the adaptor. The adaptor is retained with the state, it
+     * must not hold on to the activity itself.
+     */
+    public SheetState retainState() {
+        mRetained = true;
+        mFrameScheduler.cancel();
+        mFilterRequest++;
+        mFilterRunning = false;
+        mGroupRequest++;
+        if (mPendingSort != null) {
+            // The rows are only partly sorted, the sort is completed before they are handed over
+            mAdaptor.sort(mPendingSort.getField());
+            mPendingSort = null;
+        }
+
+        mAdaptor.getSelection().removeOnSelectionChangedListener(this);
+        mAdaptor.getDataModel().setOnPendingDataListener(null);
+        mAdaptor.getDataModel().setPublishOnRead(true);
+        mAdaptor.getDirtyCells().setOnPendingDataListener(null);
+        return new SheetState(mAdaptor, new ColumnLayout(mColumns), mColumnSortSelected, mIsDESC,
+                mHorizontalScroll.getScrollX(), mVerticalScroll.getScrollY());
+    }
+
+    /**
+     * Shows a sheet retained by {@link #retainState()}. The rows are rebuilt in
+     * their retained order, then scrolled back to the retained position.
+     */
+    public void restoreState(SheetState state) {
+        mRetained = false;
+        state.getAdaptor().setContext(getContext());
+        setAdaptor(state.getAdaptor());
+        mColumns.set(state.getColumns());
+        mLayoutFields = new ArrayList<>(mAdaptor.getFields());
+        mColumnSortSelected = state.getSortColumn();
+        mIsDESC = state.isSortDescending();
+        mRestoredState = state;
+        notifyDataSetChanged();
+    }
+
+    private void restoreScroll() {
+        // Scrolled once the rebuilt rows are laid out
+        if (mRestoredState == null || mTable.getChildCount() == 0 || mTable.getHeight() == 0) return;
+
+        mVerticalScroll.scrollTo(0, mRestoredState.getScrollY());
+        mHorizontalScroll.scrollTo(mRestoredState.getScrollX(), 0);
+        mRestoredState = null;
     }
 
     public void setAutoSorting(boolean isAutoSort) {
         mAutoSorting = isAutoSort;
     }
 
+    /**
+     * When enabled, the rows in view are sorted and shown first and the rest of the table
+     * is sorted in the background. Enabled by default.
+     */
+    public void setProgressiveSorting(boolean isProgressive) {
+        mProgressiveSorting = isProgressive;
+    }
+
+    /**
+     * When enabled, the sheet scrolls to the new rows as they are added, as
+     * long as it was scrolled to the bottom. Disabled by default.
+     */
+    public void setFollowTail(boolean followTail) {
+        mFollowTail = followTail;
+    }
+
+    public boolean isFollowTail() {
+        return mFollowTail;
+    }
+
 }
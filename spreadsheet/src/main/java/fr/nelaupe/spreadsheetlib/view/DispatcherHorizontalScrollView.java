@@ -47,6 +47,30 @@ public class DispatcherHorizontalScrollView extends HorizontalScrollView {
         setDrawingCacheEnabled(true);
     }
 
+    /**
+     * @return the approximate memory of the drawing caches of this view and its target
+     */
+    public long getDrawingCacheSize() {
+        long size = 0;
+        if (isDrawingCacheEnabled()) {
+            size += (long) getWidth() * getHeight() * 4;
+        }
+        if (target != null && target.isDrawingCacheEnabled()) {
+            size += (long) target.getWidth() * target.getHeight() * 4;
+        }
+        return size;
+    }
+
+    /**
+     * Drops the drawing caches, they are built again on the next draw.
+     */
+    public void releaseDrawingCache() {
+        destroyDrawingCache();
+        if (target != null) {
+            target.destroyDrawingCache();
+        }
+    }
+
     @Override
     protected void onScrollChanged(int l, int t, int oldl, int oldt) {
         if (target != null) {
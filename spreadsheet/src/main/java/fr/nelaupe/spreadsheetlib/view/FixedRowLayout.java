@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib.view;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.TableRow;
+
+/**
+ * {@link TableRow} whose cells take the column widths of its
+ * {@link FixedTableLayout} when it is in fixed layout, instead of being
+ * measured against every other row of the table.
+ */
+public class FixedRowLayout extends TableRow {
+
+    public FixedRowLayout(Context context) {
+        super(context);
+    }
+
+    public FixedRowLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        FixedTableLayout table = fixedTable();
+        if (table == null) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        int[] widths = table.getColumnWidths();
+        int height = MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.EXACTLY ? MeasureSpec.getSize(heightMeasureSpec) : table.getRowHeight();
+        int width = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            int cellWidth = i < widths.length ? widths[i] : 0;
+            getChildAt(i).measure(MeasureSpec.makeMeasureSpec(cellWidth, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+            width += cellWidth;
+        }
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (fixedTable() == null) {
+            super.onLayout(changed, l, t, r, b);
+            return;
+        }
+
+        int left = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            View cell = getChildAt(i);
+            cell.layout(left, 0, left + cell.getMeasuredWidth(), cell.getMeasuredHeight());
+            left += cell.getMeasuredWidth();
+        }
+    }
+
+    private FixedTableLayout fixedTable() {
+        ViewParent parent = getParent();
+        if (parent instanceof FixedTableLayout && ((FixedTableLayout) parent).isFixedLayout()) {
+            return (FixedTableLayout) parent;
+        }
+        return null;
+    }
+
+}
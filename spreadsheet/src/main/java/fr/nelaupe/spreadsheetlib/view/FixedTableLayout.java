@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015-present Lucas Nelaupe
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fr.nelaupe.spreadsheetlib.view;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.TableLayout;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * {@link TableLayout} that can trust column widths and a row height known in
+ * advance instead of measuring every cell of every row. In fixed layout its
+ * size comes from the widths and the row count, and only the rows around the
+ * viewport are measured and laid out, the others as they scroll into it.
+ * Rows leaving that range are parked with an empty frame, so a layout pass
+ * only touches the rows entering or leaving it. Rows are expected to be
+ * {@link FixedRowLayout}s.
+ */
+@SuppressWarnings("unused")
+public class FixedTableLayout extends TableLayout {
+
+    private boolean mFixed;
+    private int[] mColumnWidths;
+    private int mRowWidth;
+    private int mRowHeight;
+
+    private int mViewportTop;
+    private int mViewportBottom;
+    private int mFirstMeasured;
+    private int mLastMeasured;
+    private BitSet mLaidOut;
+    // Rows laid out with a frame, the others have an empty one
+    private ArrayList<View> mPlaced;
+    private ArrayList<View> mPlacing;
+
+    public FixedTableLayout(Context context) {
+        super(context);
+        init();
+    }
+
+    public FixedTableLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        mColumnWidths = new int[0];
+        mLaidOut = new BitSet();
+        mPlaced = new ArrayList<>();
+        mPlacing = new ArrayList<>();
+    }
+
+    /**
+     * @param columnWidths width of every cell of a row, in display order
+     * @param rowHeight    height of every row
+     */
+    public void setFixedLayout(boolean fixed, int[] columnWidths, int rowHeight) {
+        mFixed = fixed;
+        mColumnWidths = columnWidths;
+        mRowHeight = rowHeight;
+        mRowWidth = 0;
+        for (int width : columnWidths) {
+            mRowWidth += width;
+        }
+
+        // Every row laid out so far is placed again or parked by the next pass
+        mPlaced.clear();
+        for (int i = 0; i < getChildCount(); i++) {
+            View row = getChildAt(i);
+            row.requestLayout();
+            if (row.getHeight() != 0) {
+                mPlaced.add(row);
+            }
+        }
+        requestLayout();
+    }
+
+    public boolean isFixedLayout() {
+        return mFixed;
+    }
+
+    public int[] getColumnWidths() {
+        return mColumnWidths;
+    }
+
+    public int getRowHeight() {
+        return mRowHeight;
+    }
+
+    /**
+     * Visible part of the table, in its own coordinates. In fixed layout the
+     * rows coming into it are measured and laid out right away, without a
+     * layout pass of the whole table.
+     */
+    public void setViewport(int top, int bottom) {
+        mViewportTop = top;
+        mViewportBottom = bottom;
+        if (!mFixed || mRowHeight <= 0 || isLayoutRequested()) return;
+
+        int last = lastRow();
+        for (int i = firstRow(); i <= last; i++) {
+            if (!mLaidOut.get(i)) {
+                measureRow(getChildAt(i));
+                layoutRow(i);
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!mFixed || mRowHeight <= 0) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        int width = getPaddingLeft() + mRowWidth + getPaddingRight();
+        int height = getPaddingTop() + getChildCount() * mRowHeight + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+
+        mFirstMeasured = firstRow();
+        mLastMeasured = lastRow();
+        for (int i = mFirstMeasured; i <= mLastMeasured; i++) {
+            measureRow(getChildAt(i));
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (!mFixed || mRowHeight <= 0) {
+            super.onLayout(changed, l, t, r, b);
+            return;
+        }
+
+        mLaidOut.clear();
+        ArrayList<View> placed = mPlaced;
+        mPlaced = mPlacing;
+        mPlacing = placed;
+
+        int last = Math.min(mLastMeasured, getChildCount() - 1);
+        for (int i = mFirstMeasured; i <= last; i++) {
+            layoutRow(i);
+        }
+
+        // Rows placed before that are not at their place in the range anymore, moved out
+        // of it or shifted by rows added or removed above them, get an empty frame
+        for (int i = 0; i < placed.size(); i++) {
+            View row = placed.get(i);
+            if (row.getParent() != this || row.getHeight() == 0) continue;
+
+            int index = (row.getTop() - getPaddingTop()) / mRowHeight;
+            if (index < mFirstMeasured || index > last || getChildAt(index) != row) {
+                row.layout(0, 0, 0, 0);
+            }
+        }
+        placed.clear();
+    }
+
+    private void measureRow(View row) {
+        row.measure(MeasureSpec.makeMeasureSpec(mRowWidth, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(mRowHeight, MeasureSpec.EXACTLY));
+    }
+
+    private void layoutRow(int i) {
+        int left = getPaddingLeft();
+        int top = getPaddingTop() + i * mRowHeight;
+        View row = getChildAt(i);
+        row.layout(left, top, left + mRowWidth, top + mRowHeight);
+        mLaidOut.set(i);
+        mPlaced.add(row);
+    }
+
+    /*
+     *  Rows of the viewport, with a screen of margin above and below
+     */
+    private int firstRow() {
+        int margin = mViewportBottom - mViewportTop;
+        return Math.max(0, (mViewportTop - margin - getPaddingTop()) / mRowHeight);
+    }
+
+    private int lastRow() {
+        int margin = mViewportBottom - mViewportTop;
+        return Math.min(getChildCount() - 1, (mViewportBottom + margin - getPaddingTop()) / mRowHeight);
+    }
+
+}